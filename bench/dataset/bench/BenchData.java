@@ -0,0 +1,158 @@
+package dataset.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Synthetic inputs of the benchmarks. The data is generated from a fixed seed
+ * so every run and every version measures the same input.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class BenchData {
+    public static final long SEED = 20120801L;
+    private static final String[] STATES = { "CA", "NY", "TX", "FL", "IL",
+	    "WA", "MA", "GA", "CO", "AZ" };
+    private static final String[] TIME_ZONES = { "EST", "CST", "MST", "PST",
+	    "EDT", "CDT", "MDT", "PDT", "GMT", "BST" };
+    private static final int NUM_CITIES = 500;
+
+    /**
+     * @return The [city, state] map of the generated profiles.
+     */
+    public static Map<String, String> cityStateMap() {
+	Map<String, String> map = Maps.newHashMap();
+	for (int i = 0; i < NUM_CITIES; i++) {
+	    map.put(city(i), STATES[i % STATES.length]);
+	}
+	return map;
+    }
+
+    /**
+     * @return Tab separated profile lines, one of ten has a city which is not
+     *         in the city state map.
+     */
+    public static List<String> profileLines(int numProfiles) {
+	Random random = new Random(SEED);
+	List<String> lines = Lists.newArrayListWithCapacity(numProfiles);
+	for (int id = 0; id < numProfiles; id++) {
+	    String city = random.nextInt(10) == 0 ? "Unknown " + id
+		    : city(random.nextInt(NUM_CITIES));
+	    lines.add(id + "\tuser" + id + "\t" + random.nextInt(2000) + "\t"
+		    + followers(random) + "\t" + random.nextInt(50000) + "\t"
+		    + random.nextInt(1000) + "\t" + random.nextInt(2000) + "\t"
+		    + city);
+	}
+	return lines;
+    }
+
+    public static void writeProfiles(File file, int numProfiles)
+	    throws IOException {
+	writeLines(file, profileLines(numProfiles));
+    }
+
+    /**
+     * Write the [user ID, follower ID] network of the users to the files of
+     * the dir, the users have a long tailed number of followers.
+     *
+     * @return Number of edges written.
+     */
+    public static long writeNetwork(File dir, int numUsers, int numFiles)
+	    throws IOException {
+	Random random = new Random(SEED);
+	long numEdges = 0;
+	List<BufferedWriter> writers = Lists.newArrayList();
+	try {
+	    for (int i = 0; i < numFiles; i++) {
+		File file = new File(dir, String.format("network-%03d.txt", i));
+		Files.createParentDirs(file);
+		writers.add(new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(file), Charset.defaultCharset())));
+	    }
+	    for (int userId = 0; userId < numUsers; userId++) {
+		BufferedWriter writer = writers.get(userId % numFiles);
+		int numFollowers = Math.min(followers(random), numUsers);
+		for (int i = 0; i < numFollowers; i++) {
+		    writer.write(userId + "\t" + random.nextInt(numUsers) + "\n");
+		}
+		numEdges += numFollowers;
+	    }
+	} finally {
+	    for (BufferedWriter writer : writers) {
+		writer.close();
+	    }
+	}
+	return numEdges;
+    }
+
+    /**
+     * @return Tweets records of one user with the Time record of each tweet.
+     */
+    public static byte[] tweets(int numTweets) {
+	Random random = new Random(SEED);
+	StringBuilder builder = new StringBuilder(numTweets * 96);
+	builder.append("ID: 23018800500\n");
+	for (int i = 0; i < numTweets; i++) {
+	    builder.append("Time: Wed Dec 15 08:30:53 ")
+		    .append(TIME_ZONES[random.nextInt(TIME_ZONES.length)])
+		    .append(" 2010\n");
+	    builder.append("Text: tweet number ").append(i).append('\n');
+	}
+	return builder.toString().getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * @return [Key, value] results of the size with long tailed keys, like
+     *         the distributions of the analyses. The first half of the keys
+     *         is dense, the gaps between the keys of the tail grow, so the
+     *         keys are distinct without drawing them again.
+     */
+    public static Map<Integer, Integer> results(int size) {
+	Random random = new Random(SEED);
+	Map<Integer, Integer> results = Maps.newHashMapWithExpectedSize(size);
+	int dense = size / 2;
+	for (int i = 0; i < size; i++) {
+	    long tail = Math.max(i - dense, 0);
+	    int key = (int) (i + tail * tail / Math.max(dense, 1));
+	    results.put(key, random.nextInt(100000));
+	}
+	return results;
+    }
+
+    public static void writeLines(File file, List<String> lines)
+	    throws IOException {
+	Files.createParentDirs(file);
+	BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+		new FileOutputStream(file), Charset.defaultCharset()));
+	try {
+	    for (String line : lines) {
+		writer.write(line);
+		writer.write('\n');
+	    }
+	} finally {
+	    writer.close();
+	}
+    }
+
+    // Pareto distributed number of followers, most users have a few.
+    private static int followers(Random random) {
+	double value = 2 / Math.pow(1 - random.nextDouble(), 1 / 1.2);
+	return (int) Math.min(value, 1000000);
+    }
+
+    private static String city(int index) {
+	return "City " + index;
+    }
+}
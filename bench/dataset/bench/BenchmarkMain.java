@@ -0,0 +1,40 @@
+package dataset.bench;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the JMH command line options, for example
+ * "-t 4 -p size=100000 ProfileParsing". Unless -rf and -rff are given, the
+ * results are exported as JSON to output/bench/ with the time of the run in
+ * the file name, so the results of two versions could be compared.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+	CommandLineOptions commandLine = new CommandLineOptions(args);
+	ChainedOptionsBuilder options = new OptionsBuilder()
+		.parent(commandLine);
+	ResultFormatType format = commandLine.getResultFormat().orElse(
+		ResultFormatType.JSON);
+	options.resultFormat(format);
+	if (!commandLine.getResult().hasValue()) {
+	    File resultDir = new File("output" + File.separator + "bench");
+	    resultDir.mkdirs();
+	    String runTime = new SimpleDateFormat("yyyyMMdd-HHmmss")
+		    .format(new Date());
+	    options.result(new File(resultDir, "jmh-" + runTime + "."
+		    + format.toString().toLowerCase()).getPath());
+	}
+	new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,50 @@
+package dataset.chart;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dataset.bench.BenchData;
+
+/**
+ * Draw a line chart of a large series to output/, headless.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChartBenchmark {
+    // Number of points of the series.
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private Map<Integer, Integer> dataSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	dataSet = BenchData.results(size);
+    }
+
+    @Benchmark
+    public void drawChart() {
+	ChartUtils.drawChart("", "Benchmark chart", "Key", "Value",
+		"bench_chart_" + size, dataSet);
+    }
+}
@@ -0,0 +1,89 @@
+package dataset.twitter.analysis;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dataset.bench.BenchData;
+import dataset.utils.IntIntMap;
+
+/**
+ * Collect the follower regions of a synthetic network and aggregate them by
+ * the number of followers, the two steps of the follower region distribution.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int NUM_REGIONS = 50;
+
+    // Number of users of the network.
+    @Param({ "10000", "100000" })
+    public int size;
+
+    private IntIntMap idLocationIndex;
+    private int[][] followers;
+    private FollowerDistributionAnalyze.FollowerRegionAccumulator accumulator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	Random random = new Random(BenchData.SEED);
+	idLocationIndex = new IntIntMap(size, UserProfileStore.UNKNOWN_LOCATION);
+	for (int userId = 0; userId < size; userId++) {
+	    if (random.nextInt(10) != 0) {
+		idLocationIndex.put(userId, random.nextInt(NUM_REGIONS));
+	    }
+	}
+	followers = new int[size][];
+	for (int userId = 0; userId < size; userId++) {
+	    double value = 2 / Math.pow(1 - random.nextDouble(), 1 / 1.2);
+	    followers[userId] = new int[(int) Math.min(value, size)];
+	    for (int i = 0; i < followers[userId].length; i++) {
+		followers[userId][i] = random.nextInt(size);
+	    }
+	}
+	accumulator = newAccumulator();
+    }
+
+    @Benchmark
+    public void collectRegions(Blackhole blackhole) {
+	blackhole.consume(newAccumulator());
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> calcAggFollowerRegions() {
+	return FollowerDistributionAnalyze.calcAggFollowerRegions(accumulator,
+		FollowerDistributionAnalyze.AGG_FACTOR);
+    }
+
+    private FollowerDistributionAnalyze.FollowerRegionAccumulator
+	    newAccumulator() {
+	FollowerDistributionAnalyze.FollowerRegionAccumulator regions =
+		new FollowerDistributionAnalyze.FollowerRegionAccumulator();
+	for (int userId = 0; userId < size; userId++) {
+	    regions.visitSegment(userId, followers[userId],
+		    followers[userId].length, idLocationIndex);
+	}
+	return regions;
+    }
+}
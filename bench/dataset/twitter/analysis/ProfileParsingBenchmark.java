@@ -0,0 +1,79 @@
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dataset.bench.BenchData;
+
+/**
+ * Parse the profiles line by line with UserProfiler, and the profiles file
+ * with the memory mapped UserProfileParser by a number of threads.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProfileParsingBenchmark {
+    @Param({ "10000", "1000000" })
+    public int size;
+
+    private Map<String, String> cityStateMap;
+    private List<String> lines;
+    private File profileFile;
+
+    @State(Scope.Benchmark)
+    public static class Workers {
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+	cityStateMap = BenchData.cityStateMap();
+	lines = BenchData.profileLines(size);
+	profileFile = File.createTempFile("profiles", ".txt");
+	BenchData.writeLines(profileFile, lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+	profileFile.delete();
+    }
+
+    @Benchmark
+    public void userProfiler(Blackhole blackhole) throws Exception {
+	for (String line : lines) {
+	    blackhole.consume(new UserProfiler(line, cityStateMap));
+	}
+    }
+
+    @Benchmark
+    public UserProfileStore userProfileParser(Workers workers)
+	    throws IOException {
+	return new UserProfileParser(cityStateMap, workers.threads)
+		.parse(profileFile);
+    }
+}
@@ -0,0 +1,61 @@
+package dataset.twitter.analysis;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dataset.bench.BenchData;
+
+/**
+ * Count the time zones of the Time records of the tweets of one user, on a
+ * heap and on a direct buffer as the mapped tweets files are.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimeZoneBenchmark {
+    // Number of tweets.
+    @Param({ "100", "10000" })
+    public int size;
+
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+	byte[] tweets = BenchData.tweets(size);
+	heapBuffer = ByteBuffer.wrap(tweets);
+	directBuffer = ByteBuffer.allocateDirect(tweets.length);
+	directBuffer.put(tweets).flip();
+    }
+
+    @Benchmark
+    public UserTweetsLocation scanHeapBuffer() {
+	return TweetLocationAnalyze.scanTimeZones(heapBuffer, 0,
+		heapBuffer.limit(), 1, null);
+    }
+
+    @Benchmark
+    public UserTweetsLocation scanDirectBuffer() {
+	return TweetLocationAnalyze.scanTimeZones(directBuffer, 0,
+		directBuffer.limit(), 1, null);
+    }
+}
@@ -0,0 +1,70 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+
+import dataset.bench.BenchData;
+
+/**
+ * Ingest a synthetic network dir to a FollowerGraph by a number of workers.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IngestBenchmark {
+    private static final int NUM_FILES = 16;
+
+    // Number of users of the network.
+    @Param({ "10000", "100000" })
+    public int size;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    private File networkDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+	networkDir = Files.createTempDir();
+	BenchData.writeNetwork(networkDir, size, NUM_FILES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+	File[] files = networkDir.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		file.delete();
+	    }
+	}
+	networkDir.delete();
+    }
+
+    @Benchmark
+    public FollowerGraph ingest() throws IOException {
+	return new NetworkIngestEngine(threads).ingest(networkDir);
+    }
+}
@@ -0,0 +1,78 @@
+package dataset.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+import dataset.bench.BenchData;
+
+/**
+ * Save and read back the analyzed results, and read the aggregated [ID,
+ * follower ID] text files.
+ *
+ * @author qinjin.wang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultFileBenchmark {
+    // Number of entries of the results and lines of the aggregated file.
+    @Param({ "10000", "1000000" })
+    public int size;
+
+    private Map<Integer, Integer> results;
+    private File resultFile;
+    private File aggregatedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+	results = BenchData.results(size);
+	resultFile = File.createTempFile("results", ".dat");
+	aggregatedFile = File.createTempFile("aggregated", ".txt");
+	List<String> lines = Lists.newArrayListWithCapacity(size);
+	for (int i = 0; i < size; i++) {
+	    lines.add((i / 16) + "\t" + i);
+	}
+	BenchData.writeLines(aggregatedFile, lines);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+	resultFile.delete();
+	aggregatedFile.delete();
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> saveAndReadResults() throws IOException {
+	AnalyzeUtils.saveToFile(results, resultFile);
+	return AnalyzeUtils.readFromFile(resultFile);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> readAggratedFromFile()
+	    throws IOException {
+	return AnalyzeUtils.readAggratedFromFile(aggregatedFile, "\t");
+    }
+}
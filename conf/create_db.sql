@@ -1,2 +1,2 @@
-create database us_cities;
+create database us_cities;
 grant all privileges on us_cities.* to us_cities identified by "us_cities";
\ No newline at end of file
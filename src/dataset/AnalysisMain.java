@@ -1,25 +1,82 @@
-package dataset;
-
-import java.util.List;
-
-import com.google.common.collect.Lists;
-
-import dataset.twitter.analysis.FollowerDistributionAnalyze;
-import dataset.twitter.analysis.IAnalyze;
-import dataset.twitter.analysis.NumTweetsAnalyze;
-import dataset.twitter.analysis.TweetLocationAnalyze;
-
-public class AnalysisMain {
-	public static void main(String[] args){
-		
-		List<IAnalyze> analysis = Lists.newArrayList();
-		analysis.add(new FollowerDistributionAnalyze());
-//		analysis.add(new NumTweetsAnalyze());
-//		analysis.add(new TweetLocationAnalyze());
-		
-		for(IAnalyze analyze: analysis){
-			analyze.executeAnalyze();
-			analyze.drawResult();
-		}
-	}
-}
+package dataset;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import dataset.chart.ChartRenderService;
+import dataset.metrics.Metrics;
+import dataset.twitter.analysis.FollowerDistributionAnalyze;
+import dataset.twitter.analysis.IAnalyze;
+import dataset.twitter.analysis.IScanAnalyze;
+import dataset.twitter.analysis.NumTweetsAnalyze;
+import dataset.twitter.analysis.ScanEngine;
+import dataset.twitter.analysis.TweetLocationAnalyze;
+import dataset.utils.ConfReader;
+
+public class AnalysisMain {
+	public static void main(String[] args){
+		
+		List<IAnalyze> analysis = Lists.newArrayList();
+		analysis.add(new FollowerDistributionAnalyze());
+//		analysis.add(new NumTweetsAnalyze());
+//		analysis.add(new TweetLocationAnalyze());
+//		analysis.add(new FollowerDispersionAnalyze());
+		
+		// Compute all scan based analyses from one pass over the data sets.
+		ConfReader confReader = new ConfReader();
+		ChartRenderService.start(confReader.getChartRenderThreads());
+		ScanEngine scanEngine = new ScanEngine(confReader);
+		for(IAnalyze analyze: analysis){
+			if(analyze instanceof IScanAnalyze){
+				((IScanAnalyze) analyze).registerVisitors(scanEngine);
+			}
+		}
+		Metrics.Timer scanTimer = Metrics.start("scan");
+		try{
+			scanEngine.run();
+		}catch(Exception ex){
+			System.err.println("Scan failed: "+ ex.getMessage());
+			ex.printStackTrace();
+			for(IAnalyze analyze: analysis){
+				if(analyze instanceof IScanAnalyze){
+					((IScanAnalyze) analyze).scanFailed(ex);
+				}
+			}
+		}finally{
+			scanTimer.stop();
+		}
+
+		for(IAnalyze analyze: analysis){
+			String stage = "analyze." + analyze.getClass().getSimpleName();
+			Metrics.Timer timer = Metrics.start(stage + ".execute");
+			analyze.executeAnalyze();
+			timer.stop();
+			timer = Metrics.start(stage + ".draw");
+			analyze.drawResult();
+			timer.stop();
+		}
+
+		// The charts of the last analyses may still be rendered.
+		Metrics.Timer renderTimer = Metrics.start("chart.await");
+		try{
+			int numFailed = ChartRenderService.await();
+			if(numFailed > 0){
+				System.err.println(numFailed + " charts could not be saved");
+			}
+		}catch(InterruptedException ex){
+			System.err.println("Interrupted on rendering charts: "+ ex.getMessage());
+			ex.printStackTrace();
+		}finally{
+			renderTimer.stop();
+		}
+
+		try{
+			Metrics.writePrometheus(confReader.getMetricsFile());
+		}catch(IOException ex){
+			System.err.println("Can not save metrics: "+ ex.getMessage());
+			ex.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package dataset;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import dataset.metrics.Metrics;
+import dataset.twitter.analysis.FollowerDistributionAnalyze;
+import dataset.twitter.analysis.ResidentFollowerDistribution;
+import dataset.utils.AnalyzeUtils;
+import dataset.utils.ConfReader;
+import dataset.utils.ResultSeries;
+
+/**
+ * Keeps the follower distributions in memory and answers queries over HTTP on
+ * the loopback address, so exploring the results does not reload the data
+ * sets for every query. The results are [key, value] lines separated by tabs.
+ * <ul>
+ * <li>GET /followers/number?keyMin=&keyMax=&valueMin=&valueMax= - Number of
+ * users per number of followers, the bounds are exclusive and optional.</li>
+ * <li>GET /followers/atleast?followers= - Number of users with at least the
+ * number of followers.</li>
+ * <li>GET /followers/region?aggFactor=&keyMin=&keyMax=&valueMin=&valueMax= -
+ * Number of regions per aggregated number of followers.</li>
+ * <li>GET /status - The loaded data sets and if the inputs have changed.</li>
+ * <li>POST /reload?force= - Scan the inputs again if they have changed.</li>
+ * </ul>
+ *
+ * @author qinjin.wang
+ *
+ */
+public class AnalysisServer {
+	private static final Logger logger = LogManager.getLogger(AnalysisServer.class);
+
+	private final ConfReader confReader;
+	private volatile ResidentFollowerDistribution followerDistribution;
+	private HttpServer httpServer;
+	private ExecutorService queryExecutor;
+
+	public AnalysisServer(ConfReader confReader){
+		this.confReader = confReader;
+	}
+
+	public static void main(String[] args){
+		ConfReader confReader = new ConfReader();
+		AnalysisServer server = new AnalysisServer(confReader);
+		try{
+			server.reload(true);
+			server.start(confReader.getServerPort(), confReader.getServerThreads());
+		}catch(Exception ex){
+			logger.fatal("Can not start the analysis server: "+ ex.getMessage());
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Listen on the loopback address, the queries are answered by the
+	 * threads.
+	 */
+	public void start(int port, int numThreads) throws IOException{
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/followers/number", new QueryHandler(){
+			@Override
+			String query(Map<String, String> params) throws Exception{
+				return format(filter(followerDistribution.getFollowerNumbers(), params));
+			}
+		});
+		httpServer.createContext("/followers/atleast", new QueryHandler(){
+			@Override
+			String query(Map<String, String> params) throws Exception{
+				int numFollowers = getInt(params, "followers", 0);
+				return numFollowers + "\t" + followerDistribution.countAtLeast(numFollowers) + "\n";
+			}
+		});
+		httpServer.createContext("/followers/region", new QueryHandler(){
+			@Override
+			String query(Map<String, String> params) throws Exception{
+				int aggFactor = getInt(params, "aggFactor", FollowerDistributionAnalyze.AGG_FACTOR);
+				return format(filter(followerDistribution.getFollowerRegions(aggFactor), params));
+			}
+		});
+		httpServer.createContext("/status", new QueryHandler(){
+			@Override
+			String query(Map<String, String> params) throws Exception{
+				return status();
+			}
+		});
+		httpServer.createContext("/reload", new QueryHandler(){
+			@Override
+			String query(Map<String, String> params) throws Exception{
+				boolean reloaded = reload(Boolean.parseBoolean(params.get("force")));
+				return (reloaded ? "reloaded\n" : "unchanged\n") + status();
+			}
+
+			@Override
+			boolean isAllowed(String method){
+				return "POST".equals(method);
+			}
+		});
+		queryExecutor = Executors.newFixedThreadPool(numThreads);
+		httpServer.setExecutor(queryExecutor);
+		httpServer.start();
+		logger.info("Analysis server listens on " + httpServer.getAddress());
+	}
+
+	public void stop(){
+		if(httpServer != null){
+			httpServer.stop(0);
+			queryExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Scan the inputs again if they have changed since the last load, the
+	 * loaded distributions answer the queries until the scan is done.
+	 *
+	 * @return If the inputs were scanned.
+	 */
+	public synchronized boolean reload(boolean force) throws Exception{
+		ResidentFollowerDistribution current = followerDistribution;
+		if(!force && current != null && !current.isStale()){
+			return false;
+		}
+		Metrics.Timer timer = Metrics.start("server.load");
+		try{
+			followerDistribution = ResidentFollowerDistribution.load(confReader);
+		}finally{
+			timer.stop();
+		}
+		return true;
+	}
+
+	private String status() throws IOException{
+		ResidentFollowerDistribution current = followerDistribution;
+		return "loaded\t" + new Date(current.getLoadTime()) + "\n"
+				+ "profiles\t" + current.getNumProfiles() + "\n"
+				+ "networkUsers\t" + current.getNumNetworkUsers() + "\n"
+				+ "stale\t" + current.isStale() + "\n";
+	}
+
+	private static ResultSeries filter(ResultSeries series, Map<String, String> params){
+		return AnalyzeUtils.simplefilter(getInt(params, "keyMax", -1), getInt(params, "keyMin", -1),
+				getInt(params, "valueMax", -1), getInt(params, "valueMin", -1), series);
+	}
+
+	private static String format(ResultSeries series){
+		StringBuilder result = new StringBuilder(series.size() * 16);
+		for(int i = 0; i < series.size(); i++){
+			double value = series.getValue(i);
+			result.append(series.getKey(i)).append('\t');
+			if(value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE){
+				result.append((long) value);
+			}else{
+				result.append(value);
+			}
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	private static int getInt(Map<String, String> params, String name, int defaultValue){
+		String value = params.get(name);
+		if(value == null || value.trim().isEmpty()){
+			return defaultValue;
+		}
+		try{
+			return Integer.parseInt(value.trim());
+		}catch(NumberFormatException ex){
+			throw new IllegalArgumentException("Invalid value of " + name + ": " + value);
+		}
+	}
+
+	/**
+	 * Answers a query as plain text, invalid parameters are answered with 400.
+	 */
+	private abstract static class QueryHandler implements HttpHandler{
+
+		abstract String query(Map<String, String> params) throws Exception;
+
+		boolean isAllowed(String method){
+			return "GET".equals(method);
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException{
+			String path = exchange.getHttpContext().getPath();
+			Metrics.Timer timer = Metrics.start("server" + path.replace('/', '.'));
+			int status = 200;
+			String response;
+			try{
+				if(!isAllowed(exchange.getRequestMethod())){
+					status = 405;
+					response = "Method not allowed: " + exchange.getRequestMethod() + "\n";
+				}else{
+					response = query(parseQuery(exchange.getRequestURI().getRawQuery()));
+				}
+			}catch(IllegalArgumentException ex){
+				status = 400;
+				response = ex.getMessage() + "\n";
+			}catch(Exception ex){
+				logger.fatal("Failed to answer " + exchange.getRequestURI() + ": " + ex.getMessage());
+				ex.printStackTrace();
+				status = 500;
+				response = "Failed: " + ex.getMessage() + "\n";
+			}
+
+			byte[] body = response.getBytes(Charsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream out = exchange.getResponseBody();
+			try{
+				out.write(body);
+			}finally{
+				out.close();
+				timer.stop();
+			}
+		}
+
+		private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException{
+			Map<String, String> params = Maps.newHashMap();
+			if(query == null){
+				return params;
+			}
+			for(String param: query.split("&")){
+				int separator = param.indexOf('=');
+				if(separator > 0){
+					params.put(URLDecoder.decode(param.substring(0, separator), "UTF-8"),
+							URLDecoder.decode(param.substring(separator + 1), "UTF-8"));
+				}
+			}
+			return params;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package dataset.chart;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jfree.data.UnknownKeyException;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.general.AbstractDataset;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * CategoryDataset of one row over the arrays of a ResultSeries. The columns
+ * are the keys of the series, or the given keys which are read from the
+ * series and are 0 if the series has no such key.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ArrayCategoryDataset extends AbstractDataset implements
+	CategoryDataset {
+    private static final long serialVersionUID = 1L;
+
+    private final Comparable<?> rowKey;
+    private final ResultSeries series;
+    // Sorted keys of the columns, or null for the keys of the series.
+    private final int[] columns;
+
+    public ArrayCategoryDataset(Comparable<?> rowKey, ResultSeries series) {
+	this(rowKey, series, null);
+    }
+
+    public ArrayCategoryDataset(Comparable<?> rowKey, ResultSeries series,
+	    int[] columns) {
+	this.rowKey = rowKey;
+	this.series = series;
+	this.columns = columns;
+    }
+
+    /**
+     * Columns of the keys 0, interval, 2 * interval ... until max.
+     */
+    public static ArrayCategoryDataset ofInterval(Comparable<?> rowKey,
+	    ResultSeries series, int interval, int max) {
+	int[] columns = new int[Math.max((max + interval - 1) / interval, 0)];
+	for (int i = 0; i < columns.length; i++) {
+	    columns[i] = i * interval;
+	}
+	return new ArrayCategoryDataset(rowKey, series, columns);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getRowKey(int row) {
+	if (row != 0) {
+	    throw new IndexOutOfBoundsException("No row " + row);
+	}
+	return rowKey;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public int getRowIndex(Comparable key) {
+	return rowKey.equals(key) ? 0 : -1;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public List getRowKeys() {
+	return Collections.singletonList(rowKey);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getColumnKey(int column) {
+	return columns == null ? series.getKey(column) : columns[column];
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public int getColumnIndex(Comparable key) {
+	if (!(key instanceof Integer)) {
+	    return -1;
+	}
+	int index = columns == null ? series.indexOf((Integer) key) : Arrays
+		.binarySearch(columns, (Integer) key);
+	return index < 0 ? -1 : index;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public List getColumnKeys() {
+	return new AbstractList<Integer>() {
+	    @Override
+	    public Integer get(int index) {
+		return (Integer) getColumnKey(index);
+	    }
+
+	    @Override
+	    public int size() {
+		return getColumnCount();
+	    }
+	};
+    }
+
+    @Override
+    public int getRowCount() {
+	return 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+	return columns == null ? series.size() : columns.length;
+    }
+
+    @Override
+    public Number getValue(int row, int column) {
+	getRowKey(row);
+	return columns == null ? series.getValue(column) : series.get(
+		columns[column], 0);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Number getValue(Comparable rowKey, Comparable columnKey) {
+	int column = getColumnIndex(columnKey);
+	if (getRowIndex(rowKey) < 0 || column < 0) {
+	    throw new UnknownKeyException("Unknown key " + rowKey + ", "
+		    + columnKey);
+	}
+	return getValue(0, column);
+    }
+}
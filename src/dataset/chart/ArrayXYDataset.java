@@ -0,0 +1,76 @@
+package dataset.chart;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * XYDataset of one line over the arrays of a ResultSeries, the points are
+ * neither copied nor boxed. The items could be a subset of the series, like
+ * the points kept by the downsampling.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ArrayXYDataset extends AbstractXYDataset {
+    private static final long serialVersionUID = 1L;
+
+    private final Comparable<?> seriesKey;
+    private final ResultSeries series;
+    // Indices of the items in the series, or null for all of the series.
+    private final int[] items;
+
+    public ArrayXYDataset(Comparable<?> seriesKey, ResultSeries series) {
+	this(seriesKey, series, null);
+    }
+
+    public ArrayXYDataset(Comparable<?> seriesKey, ResultSeries series,
+	    int[] items) {
+	this.seriesKey = seriesKey;
+	this.series = series;
+	this.items = items;
+    }
+
+    @Override
+    public int getSeriesCount() {
+	return 1;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getSeriesKey(int series) {
+	return seriesKey;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+	// The keys are sorted, so the renderer searches the visible items.
+	return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+	return items == null ? this.series.size() : items.length;
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+	return this.series.getKey(items == null ? item : items[item]);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+	return this.series.getValue(items == null ? item : items[item]);
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+	return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+	return getYValue(series, item);
+    }
+}
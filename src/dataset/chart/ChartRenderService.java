@@ -0,0 +1,142 @@
+package dataset.chart;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+
+import dataset.metrics.Metrics;
+
+/**
+ * Renders the charts of ChartUtils to PNG files. The charts are built on the
+ * thread of the analysis and rendered on a pool of worker threads, so the
+ * next analysis computes while the charts of the last one are encoded. The
+ * queue of the pool is bounded, when it is full the analysis renders the
+ * chart itself. Until start() is called, or after await(), the charts are
+ * rendered on the calling thread.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ChartRenderService {
+    private static final Logger logger = LogManager
+	    .getLogger(ChartRenderService.class);
+    // Charts queued per worker, a chart references the result arrays of its
+    // data set, which are kept until it is rendered.
+    private static final int QUEUED_CHARTS_PER_THREAD = 4;
+    static final int WIDTH = 1000;
+    static final int HEIGHT = 600;
+
+    private static ThreadPoolExecutor executor;
+    private static final AtomicInteger numFailed = new AtomicInteger();
+
+    /**
+     * Start rendering the charts in the background.
+     *
+     * @param numThreads
+     *            Number of worker threads, 0 to render on the calling thread.
+     */
+    public static synchronized void start(int numThreads) {
+	if (executor != null || numThreads <= 0) {
+	    return;
+	}
+	executor = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+		TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+			QUEUED_CHARTS_PER_THREAD * numThreads),
+		new ThreadFactory() {
+		    private final AtomicInteger numThreads = new AtomicInteger();
+
+		    @Override
+		    public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "chart-render-"
+				+ numThreads.incrementAndGet());
+			// Never keep the JVM alive without await().
+			thread.setDaemon(true);
+			return thread;
+		    }
+		}, new RejectedExecutionHandler() {
+		    @Override
+		    public void rejectedExecution(Runnable task,
+			    ThreadPoolExecutor executor) {
+			// The queue is full or the pool is shut down.
+			task.run();
+		    }
+		});
+	logger.debug("Render charts with " + numThreads + " threads");
+    }
+
+    /**
+     * Wait until all submitted charts are saved, the later charts are
+     * rendered on the calling thread.
+     *
+     * @return Number of charts which could not be saved since start().
+     */
+    public static int await() throws InterruptedException {
+	ThreadPoolExecutor finished;
+	synchronized (ChartRenderService.class) {
+	    finished = executor;
+	    executor = null;
+	}
+	if (finished != null) {
+	    finished.shutdown();
+	    while (!finished.awaitTermination(10, TimeUnit.SECONDS)) {
+		logger.info("Waiting for " + finished.getQueue().size()
+			+ " charts to be rendered...");
+	    }
+	}
+	return numFailed.getAndSet(0);
+    }
+
+    /**
+     * Save the chart as a PNG file.
+     *
+     * @param numItems
+     *            Number of items of the chart, for the metrics.
+     */
+    static void submit(final JFreeChart chart, final File file,
+	    final int numItems) {
+	Runnable task = new Runnable() {
+	    @Override
+	    public void run() {
+		render(chart, file, numItems);
+	    }
+	};
+	ThreadPoolExecutor current;
+	synchronized (ChartRenderService.class) {
+	    current = executor;
+	}
+	if (current == null) {
+	    task.run();
+	} else {
+	    current.execute(task);
+	}
+    }
+
+    private static void render(JFreeChart chart, File file, int numItems) {
+	Metrics.Timer timer = Metrics.start("chart.render");
+	try {
+	    ChartUtilities.saveChartAsPNG(file, chart, WIDTH, HEIGHT);
+	} catch (IOException e) {
+	    numFailed.incrementAndGet();
+	    logger.fatal("Problem occurred creating chart: " + e.getMessage());
+	    e.printStackTrace();
+	} catch (RuntimeException e) {
+	    // Would be lost in the executor, so it is counted like the above.
+	    numFailed.incrementAndGet();
+	    logger.fatal("Problem occurred rendering chart " + file + ": "
+		    + e.getMessage());
+	    e.printStackTrace();
+	} finally {
+	    timer.stop(numItems);
+	}
+    }
+}
@@ -1,174 +1,199 @@
-package dataset.chart;
-
-import java.io.File;
-import java.io.IOException;
-import java.math.BigDecimal;
-import java.util.Map;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartUtilities;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
-
-/**
- * This is a utilities class for drawing analyzed results.
- * 
- * @author qinjin.wang
- *
- */
-public class ChartUtils {
-    private static final Logger logger = LogManager
-	    .getLogger(ChartUtils.class);
-
-    /**
-     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
-     * dataSet. The data set should be a map with <x-axis value, y-axis value>
-     * 
-     * @param chartName
-     * @param title
-     * @param xAxisName
-     * @param yAxisName
-     * @param exportedFileName
-     * @param dataSet
-     */
-    public static void drawChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    Map<Integer, Integer> dataSet) {
-	XYSeries series = new XYSeries(chartName);
-	for (Map.Entry<Integer, Integer> entry : dataSet.entrySet()) {
-	    series.add(entry.getKey(), entry.getValue());
-	}
-
-	doDrawChat(title, xAxisName, yAxisName, exportedFileName, series);
-    }
-
-    /**
-     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
-     * dataSet.
-     * 
-     * @param chartName
-     * @param title
-     * @param xAxisName
-     * @param yAxisName
-     * @param exportedFileName
-     * @param dataSet
-     */
-    public static void drawDecimalChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    Map<Integer, BigDecimal> dataSet) {
-
-	XYSeries series = new XYSeries(chartName);
-	for (Map.Entry<Integer, BigDecimal> entry : dataSet.entrySet()) {
-	    series.add(entry.getKey().doubleValue(), entry.getValue()
-		    .doubleValue());
-	}
-
-	doDrawChat(title, xAxisName, yAxisName, exportedFileName, series);
-    }
-
-    /**
-     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
-     * dataSet.
-     * 
-     * @param chartName
-     * @param title
-     * @param xAxisName
-     * @param yAxisName
-     * @param exportedFileName
-     * @param dataSet
-     */
-    public static void drawDoubleChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    Map<Integer, Double> dataSet) {
-
-	XYSeries series = new XYSeries(chartName);
-	for (Map.Entry<Integer, Double> entry : dataSet.entrySet()) {
-	    series.add(entry.getKey().doubleValue(), entry.getValue()
-		    .doubleValue());
-	}
-
-	doDrawChat(title, xAxisName, yAxisName, exportedFileName, series);
-    }
-
-    private static void doDrawChat(String title, String xAxisName,
-	    String yAxisName, String exportedFileName, XYSeries series) {
-	XYSeriesCollection dataset = new XYSeriesCollection();
-	dataset.addSeries(series);
-
-	JFreeChart chart = ChartFactory.createXYLineChart(title, // Title
-		xAxisName, // x-axis Label
-		yAxisName, // y-axis Label
-		dataset, // Data set
-		PlotOrientation.VERTICAL, // Plot Orientation
-		true, // Show Legend
-		false, // Use tool tips
-		false // Configure chart to generate URLs?
-		);
-	try {
-	    ChartUtilities.saveChartAsPNG(new File("output" + File.separator
-		    + exportedFileName + ".png"), chart, 1000, 600);
-	} catch (IOException e) {
-	    logger.fatal("Problem occurred creating chart: " + e.getMessage());
-	    e.printStackTrace();
-	}
-    }
-
-    /**
-     * Draw a bar chart with specified name, title, x-axis, y-axis, exported,
-     * and dataSet. The data set should be a map with <x-axis value, y-axis
-     * value>.
-     * 
-     * @param chartName
-     * @param title
-     * @param xAxisName
-     * @param yAxisName
-     * @param exportedFileName
-     * @param dataSet
-     */
-    public static void drawBarChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    Map<Integer, Integer> dataSet, int interval, int max) {
-	DefaultCategoryDataset dcd = new DefaultCategoryDataset();
-
-	for (int i = 0; i < max; i += interval) {
-	    int value = dataSet.get(i) == null ? 0 : dataSet.get(i);
-	    dcd.setValue(value, yAxisName, String.valueOf(i));
-	}
-
-	doDrawBarChart(chartName, title, xAxisName, yAxisName,
-		exportedFileName, dcd);
-
-    }
-    
-
-    public static void drawBarChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    Map<Integer, Integer> dataSet) {
-	DefaultCategoryDataset dcd = new DefaultCategoryDataset();
-	for (Map.Entry<Integer, Integer> entry: dataSet.entrySet()) {
-	    dcd.setValue(entry.getValue(), yAxisName,  entry.getKey());
-	}
-
-	doDrawBarChart(chartName, title, xAxisName, yAxisName,
-		exportedFileName, dcd);
-    }
-
-    private static void doDrawBarChart(String chartName, String title,
-	    String xAxisName, String yAxisName, String exportedFileName,
-	    DefaultCategoryDataset dcd) {
-	JFreeChart chart = ChartFactory.createBarChart3D(title, xAxisName,
-		yAxisName, dcd, PlotOrientation.VERTICAL, false, true, false);
-	try {
-	    ChartUtilities.saveChartAsPNG(new File("output" + File.separator
-		    + exportedFileName + ".png"), chart, 1000, 600);
-	} catch (IOException e) {
-	    logger.fatal("Problem occurred creating chart: " + e.getMessage());
-	    e.printStackTrace();
-	}
-    }
-}
+package dataset.chart;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.data.category.CategoryDataset;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * This is a utilities class for drawing analyzed results. The charts are
+ * saved by the ChartRenderService, in the background if it is started.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class ChartUtils {
+    private static final Logger logger = LogManager
+	    .getLogger(ChartUtils.class);
+    // Points of a line chart above which it is downsampled.
+    static final int DOWNSAMPLE_THRESHOLD = 4 * ChartRenderService.WIDTH;
+
+    /**
+     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
+     * dataSet. The data set should be a map with <x-axis value, y-axis value>
+     * 
+     * @param chartName
+     * @param title
+     * @param xAxisName
+     * @param yAxisName
+     * @param exportedFileName
+     * @param dataSet
+     */
+    public static void drawChart(String chartName, String title,
+	    String xAxisName, String yAxisName, String exportedFileName,
+	    Map<Integer, Integer> dataSet) {
+	drawChart(chartName, title, null, xAxisName, yAxisName,
+		exportedFileName, dataSet);
+    }
+
+    /**
+     * Draw a chart as drawChart() with a subtitle below the title, like the
+     * error bounds of an approximate result.
+     * 
+     * @param subtitle
+     *            The subtitle, or null for none.
+     */
+    public static void drawChart(String chartName, String title,
+	    String subtitle, String xAxisName, String yAxisName,
+	    String exportedFileName, Map<Integer, Integer> dataSet) {
+	drawChart(chartName, title, subtitle, xAxisName, yAxisName,
+		exportedFileName, ResultSeries.of(dataSet));
+    }
+
+    /**
+     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
+     * dataSet.
+     * 
+     * @param chartName
+     * @param title
+     * @param xAxisName
+     * @param yAxisName
+     * @param exportedFileName
+     * @param dataSet
+     */
+    public static void drawDecimalChart(String chartName, String title,
+	    String xAxisName, String yAxisName, String exportedFileName,
+	    Map<Integer, BigDecimal> dataSet) {
+	drawChart(chartName, title, null, xAxisName, yAxisName,
+		exportedFileName, ResultSeries.of(dataSet));
+    }
+
+    /**
+     * Draw a chart with specified name, title, x-axis, y-axis, exported, and
+     * dataSet.
+     * 
+     * @param chartName
+     * @param title
+     * @param xAxisName
+     * @param yAxisName
+     * @param exportedFileName
+     * @param dataSet
+     */
+    public static void drawDoubleChart(String chartName, String title,
+	    String xAxisName, String yAxisName, String exportedFileName,
+	    Map<Integer, Double> dataSet) {
+	drawChart(chartName, title, null, xAxisName, yAxisName,
+		exportedFileName, ResultSeries.of(dataSet));
+    }
+
+    /**
+     * Draw a chart as drawChart() over the arrays of the series. A series of
+     * more than DOWNSAMPLE_THRESHOLD points is downsampled to about one point
+     * per pixel column of the chart, which keeps the shape of the line.
+     */
+    public static void drawChart(String chartName, String title,
+	    String subtitle, String xAxisName, String yAxisName,
+	    String exportedFileName, ResultSeries series) {
+	int[] items = null;
+	if (series.size() > DOWNSAMPLE_THRESHOLD) {
+	    items = Downsampler.largestTriangleThreeBuckets(series,
+		    ChartRenderService.WIDTH);
+	    logger.debug("Downsample series of " + series.size()
+		    + " points to " + items.length + " points");
+	}
+	ArrayXYDataset dataset = new ArrayXYDataset(chartName, series, items);
+
+	JFreeChart chart = ChartFactory.createXYLineChart(title, // Title
+		xAxisName, // x-axis Label
+		yAxisName, // y-axis Label
+		dataset, // Data set
+		PlotOrientation.VERTICAL, // Plot Orientation
+		true, // Show Legend
+		false, // Use tool tips
+		false // Configure chart to generate URLs?
+		);
+	if (subtitle != null) {
+	    chart.addSubtitle(new TextTitle(subtitle));
+	}
+	ChartRenderService.submit(chart, getExportedFile(exportedFileName),
+		dataset.getItemCount(0));
+    }
+
+    /**
+     * Draw a bar chart with specified name, title, x-axis, y-axis, exported,
+     * and dataSet. The data set should be a map with <x-axis value, y-axis
+     * value>.
+     * 
+     * @param chartName
+     * @param title
+     * @param xAxisName
+     * @param yAxisName
+     * @param exportedFileName
+     * @param dataSet
+     */
+    public static void drawBarChart(String chartName, String title,
+	    String xAxisName, String yAxisName, String exportedFileName,
+	    Map<Integer, Integer> dataSet, int interval, int max) {
+	drawBarChart(chartName, title, null, xAxisName, yAxisName,
+		exportedFileName, dataSet, interval, max);
+    }
+
+    /**
+     * Draw a bar chart as drawBarChart() with a subtitle below the title.
+     * 
+     * @param subtitle
+     *            The subtitle, or null for none.
+     */
+    public static void drawBarChart(String chartName, String title,
+	    String subtitle, String xAxisName, String yAxisName,
+	    String exportedFileName, Map<Integer, Integer> dataSet,
+	    int interval, int max) {
+	drawBarChart(chartName, title, subtitle, xAxisName, yAxisName,
+		exportedFileName, ResultSeries.of(dataSet), interval, max);
+    }
+
+    /**
+     * Draw a bar chart as drawBarChart() over the arrays of the series, of
+     * the keys 0, interval, 2 * interval ... until max.
+     */
+    public static void drawBarChart(String chartName, String title,
+	    String subtitle, String xAxisName, String yAxisName,
+	    String exportedFileName, ResultSeries series, int interval, int max) {
+	doDrawBarChart(chartName, title, subtitle, xAxisName, yAxisName,
+		exportedFileName, ArrayCategoryDataset.ofInterval(yAxisName,
+			series, interval, max));
+    }
+
+    public static void drawBarChart(String chartName, String title,
+	    String xAxisName, String yAxisName, String exportedFileName,
+	    Map<Integer, Integer> dataSet) {
+	doDrawBarChart(chartName, title, null, xAxisName, yAxisName,
+		exportedFileName, new ArrayCategoryDataset(yAxisName,
+			ResultSeries.of(dataSet)));
+    }
+
+    private static void doDrawBarChart(String chartName, String title,
+	    String subtitle, String xAxisName, String yAxisName,
+	    String exportedFileName, CategoryDataset dcd) {
+	JFreeChart chart = ChartFactory.createBarChart3D(title, xAxisName,
+		yAxisName, dcd, PlotOrientation.VERTICAL, false, true, false);
+	if (subtitle != null) {
+	    chart.addSubtitle(new TextTitle(subtitle));
+	}
+	ChartRenderService.submit(chart, getExportedFile(exportedFileName),
+		dcd.getColumnCount());
+    }
+
+    private static File getExportedFile(String exportedFileName) {
+	return new File("output" + File.separator + exportedFileName + ".png");
+    }
+}
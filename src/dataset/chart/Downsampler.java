@@ -0,0 +1,109 @@
+package dataset.chart;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * Largest triangle three buckets downsampling of a line series. The points
+ * between the first and the last one are split to buckets, and of each bucket
+ * the point is kept which forms the largest triangle with the point kept of
+ * the last bucket and the mean of the next bucket. The peaks and the shape of
+ * the line are kept, while the series is cut to about the pixels of the
+ * chart.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class Downsampler {
+
+    /**
+     * @param series
+     *            The line, whose keys are the x values.
+     * @param numPoints
+     *            Number of points to keep, at least 3.
+     * @return The indices of the points kept, in order. All indices if the
+     *         series has no more than numPoints points.
+     */
+    public static int[] largestTriangleThreeBuckets(ResultSeries series,
+	    int numPoints) {
+	int size = series.size();
+	if (numPoints >= size || numPoints < 3) {
+	    int[] all = new int[size];
+	    for (int i = 0; i < size; i++) {
+		all[i] = i;
+	    }
+	    return all;
+	}
+
+	int[] kept = new int[numPoints];
+	int numKept = 0;
+	kept[numKept++] = 0;
+	// The first and the last points are kept, the rest are in buckets.
+	double bucketSize = (double) (size - 2) / (numPoints - 2);
+	int last = 0;
+	for (int bucket = 0; bucket < numPoints - 2; bucket++) {
+	    int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+	    int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+	    double meanX = 0;
+	    double meanY = 0;
+	    for (int i = nextStart; i < nextEnd; i++) {
+		meanX += series.getKey(i);
+		meanY += series.getValue(i);
+	    }
+	    meanX /= nextEnd - nextStart;
+	    meanY /= nextEnd - nextStart;
+
+	    int start = (int) (bucket * bucketSize) + 1;
+	    int end = nextStart;
+	    double lastX = series.getKey(last);
+	    double lastY = series.getValue(last);
+	    double maxArea = -1;
+	    int maxIndex = start;
+	    for (int i = start; i < end; i++) {
+		// Twice the area, which is enough to compare.
+		double area = Math.abs((lastX - meanX)
+			* (series.getValue(i) - lastY)
+			- (lastX - series.getKey(i)) * (meanY - lastY));
+		if (area > maxArea) {
+		    maxArea = area;
+		    maxIndex = i;
+		}
+	    }
+	    kept[numKept++] = maxIndex;
+	    last = maxIndex;
+	}
+	kept[numKept++] = size - 1;
+	return kept;
+    }
+
+    @Test
+    public void testLargestTriangleThreeBuckets() {
+	int size = 10000;
+	int[] xs = new int[size];
+	double[] ys = new double[size];
+	for (int i = 0; i < size; i++) {
+	    xs[i] = i;
+	    ys[i] = i % 1000 == 500 ? 100 : 0;
+	}
+	int[] kept = largestTriangleThreeBuckets(new ResultSeries(xs, ys), 100);
+	Assert.assertEquals(100, kept.length);
+	Assert.assertEquals(0, kept[0]);
+	Assert.assertEquals(size - 1, kept[kept.length - 1]);
+	int numPeaks = 0;
+	for (int i = 0; i < kept.length; i++) {
+	    if (i > 0) {
+		Assert.assertTrue(kept[i] > kept[i - 1]);
+	    }
+	    if (ys[kept[i]] == 100) {
+		numPeaks++;
+	    }
+	}
+	// Every spike survives.
+	Assert.assertEquals(10, numPeaks);
+
+	Assert.assertEquals(3, largestTriangleThreeBuckets(new ResultSeries(
+		new int[] { 1, 2, 3 }, new double[] { 1, 2, 3 }), 100).length);
+    }
+}
@@ -0,0 +1,302 @@
+package dataset.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Immutable dictionary of the Zips table. It is parsed from the INSERT
+ * statements of the database dump database/us_cities.sql, so the analyses
+ * could run without a MySQL service, or built from the Zips entities read by
+ * JPA. The zips are kept column wise with the states interned, the city to
+ * state map is shared by all analyses.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class CityStateDictionary {
+	private static final String INSERT = "INSERT INTO `zips`";
+	private static final String COLUMNS = "(`zip`, `state`, `city`, `lat`, `lng`)";
+
+	private final int[] zips;
+	private final String[] states;
+	private final String[] cities;
+	private final double[] lats;
+	private final double[] lngs;
+	private final ImmutableMap<String, String> cityStateMap;
+
+	private CityStateDictionary(int[] zips, String[] states, String[] cities,
+			double[] lats, double[] lngs) {
+		this.zips = zips;
+		this.states = states;
+		this.cities = cities;
+		this.lats = lats;
+		this.lngs = lngs;
+		// A city found in more than one state is mapped to the last one, as
+		// the map of the Zips entities was.
+		Map<String, String> map = Maps.newHashMapWithExpectedSize(cities.length);
+		for (int i = 0; i < cities.length; i++) {
+			if (cities[i] != null && states[i] != null) {
+				map.put(cities[i], states[i]);
+			}
+		}
+		this.cityStateMap = ImmutableMap.copyOf(map);
+	}
+
+	/**
+	 * Build the dictionary from the Zips entities.
+	 */
+	public static CityStateDictionary fromZips(List<Zips> allZips) {
+		Builder builder = new Builder(allZips.size());
+		for (Zips zip : allZips) {
+			builder.add(zip.getZip(), zip.getState(), zip.getCity(),
+					zip.getLat() == null ? Double.NaN : zip.getLat().doubleValue(),
+					zip.getLng() == null ? Double.NaN : zip.getLng().doubleValue());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Parse the rows of the zips table from the SQL dump.
+	 */
+	public static CityStateDictionary load(File sqlFile) throws IOException {
+		return parse(Files.toString(sqlFile, Charsets.UTF_8), sqlFile.getPath());
+	}
+
+	static CityStateDictionary parse(String sql, String source) throws IOException {
+		Builder builder = new Builder(32 * 1024);
+		SqlScanner scanner = new SqlScanner(sql, source);
+		int statement = 0;
+		while ((statement = sql.indexOf(INSERT, statement)) >= 0) {
+			scanner.pos = statement + INSERT.length();
+			scanner.skipWhitespace();
+			if (!sql.startsWith(COLUMNS, scanner.pos)) {
+				throw scanner.error("Unexpected columns of the zips table");
+			}
+			scanner.pos += COLUMNS.length();
+			scanner.skipWhitespace();
+			scanner.expectWord("VALUES");
+			while (true) {
+				scanner.skipWhitespace();
+				scanner.expect('(');
+				int zip = (int) scanner.nextNumber();
+				scanner.expect(',');
+				String state = scanner.nextString();
+				scanner.expect(',');
+				String city = scanner.nextString();
+				scanner.expect(',');
+				double lat = scanner.nextNumber();
+				scanner.expect(',');
+				double lng = scanner.nextNumber();
+				scanner.skipWhitespace();
+				scanner.expect(')');
+				builder.add(zip, state, city, lat, lng);
+				scanner.skipWhitespace();
+				if (scanner.peek() == ';') {
+					break;
+				}
+				scanner.expect(',');
+			}
+			statement = scanner.pos;
+		}
+		if (builder.size == 0) {
+			throw new IOException("No zips found in " + source);
+		}
+		return builder.build();
+	}
+
+	public Map<String, String> getCityStateMap() {
+		return cityStateMap;
+	}
+
+	public int getNumZips() {
+		return zips.length;
+	}
+
+	public int getZip(int index) {
+		return zips[index];
+	}
+
+	public String getState(int index) {
+		return states[index];
+	}
+
+	public String getCity(int index) {
+		return cities[index];
+	}
+
+	/**
+	 * @return The latitude of the zip, NaN if unknown.
+	 */
+	public double getLat(int index) {
+		return lats[index];
+	}
+
+	/**
+	 * @return The longitude of the zip, NaN if unknown.
+	 */
+	public double getLng(int index) {
+		return lngs[index];
+	}
+
+	private static class Builder {
+		private final Map<String, String> internedStates = Maps.newHashMap();
+		private int[] zips;
+		private String[] states;
+		private String[] cities;
+		private double[] lats;
+		private double[] lngs;
+		private int size;
+
+		Builder(int expectedSize) {
+			int capacity = Math.max(expectedSize, 16);
+			zips = new int[capacity];
+			states = new String[capacity];
+			cities = new String[capacity];
+			lats = new double[capacity];
+			lngs = new double[capacity];
+		}
+
+		void add(int zip, String state, String city, double lat, double lng) {
+			if (size == zips.length) {
+				int capacity = size * 2;
+				zips = Arrays.copyOf(zips, capacity);
+				states = Arrays.copyOf(states, capacity);
+				cities = Arrays.copyOf(cities, capacity);
+				lats = Arrays.copyOf(lats, capacity);
+				lngs = Arrays.copyOf(lngs, capacity);
+			}
+			if (state != null) {
+				String interned = internedStates.get(state);
+				if (interned == null) {
+					internedStates.put(state, state);
+				} else {
+					state = interned;
+				}
+			}
+			zips[size] = zip;
+			states[size] = state;
+			cities[size] = city;
+			lats[size] = lat;
+			lngs[size] = lng;
+			size++;
+		}
+
+		CityStateDictionary build() {
+			return new CityStateDictionary(Arrays.copyOf(zips, size),
+					Arrays.copyOf(states, size), Arrays.copyOf(cities, size),
+					Arrays.copyOf(lats, size), Arrays.copyOf(lngs, size));
+		}
+	}
+
+	/**
+	 * Scanner of the values of an INSERT statement.
+	 */
+	private static class SqlScanner {
+		private final String sql;
+		private final String source;
+		private int pos;
+
+		SqlScanner(String sql, String source) {
+			this.sql = sql;
+			this.source = source;
+		}
+
+		char peek() throws IOException {
+			if (pos >= sql.length()) {
+				throw error("Unexpected end");
+			}
+			return sql.charAt(pos);
+		}
+
+		void skipWhitespace() {
+			while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		void expect(char expected) throws IOException {
+			skipWhitespace();
+			if (peek() != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+			pos++;
+		}
+
+		void expectWord(String word) throws IOException {
+			if (!sql.startsWith(word, pos)) {
+				throw error("Expected " + word);
+			}
+			pos += word.length();
+		}
+
+		/**
+		 * @return The quoted string, or null for NULL.
+		 */
+		String nextString() throws IOException {
+			skipWhitespace();
+			if (sql.startsWith("NULL", pos)) {
+				pos += 4;
+				return null;
+			}
+			expect('\'');
+			StringBuilder value = new StringBuilder();
+			while (true) {
+				char current = peek();
+				pos++;
+				if (current == '\\') {
+					value.append(peek());
+					pos++;
+				} else if (current == '\'') {
+					if (pos < sql.length() && sql.charAt(pos) == '\'') {
+						value.append('\'');
+						pos++;
+					} else {
+						return value.toString();
+					}
+				} else {
+					value.append(current);
+				}
+			}
+		}
+
+		/**
+		 * @return The number, or NaN for NULL.
+		 */
+		double nextNumber() throws IOException {
+			skipWhitespace();
+			int start = pos;
+			while (pos < sql.length() && sql.charAt(pos) != ','
+					&& sql.charAt(pos) != ')') {
+				pos++;
+			}
+			String token = sql.substring(start, pos).trim();
+			if (token.equals("NULL")) {
+				return Double.NaN;
+			}
+			try {
+				return Double.parseDouble(token);
+			} catch (NumberFormatException ex) {
+				throw error("Invalid number " + token);
+			}
+		}
+
+		IOException error(String message) {
+			int line = 1;
+			for (int i = 0; i < pos && i < sql.length(); i++) {
+				if (sql.charAt(i) == '\n') {
+					line++;
+				}
+			}
+			return new IOException(message + " at " + source + ":" + line);
+		}
+	}
+}
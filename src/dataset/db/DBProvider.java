@@ -1,66 +1,142 @@
-package dataset.db;
-
-import java.io.FileInputStream;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
-
-import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-
-import com.google.common.collect.Maps;
-
-public class DBProvider {
-	public final static String PERSISTENT_UNIT = "us_cities"; 
-	
-	private static DBProvider instance;
-	
-	private final EntityManager entityManager;
-
-	private DBProvider() {
-		final EntityManagerFactory factory = Persistence
-				.createEntityManagerFactory(PERSISTENT_UNIT, loadDBProperties());
-		this.entityManager = factory.createEntityManager();
-	}
-
-	private Map<String, String> loadDBProperties() {
-		final Map<String, String> properties = Maps.newHashMap();
-		
-		System.out.println("DB properties:");
-		try{
-			Properties configuration = new Properties();
-			configuration.load(new FileInputStream("conf/db.conf"));
-			for(Map.Entry<Object, Object> entry: configuration.entrySet()){
-				properties.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
-				System.out.println(entry.getKey()+" = "+entry.getValue());
-			}
-		}catch(Exception ex){
-			System.err.println("Database configuration load error: "+ ex.getMessage());
-			ex.printStackTrace();
-		}
-		return properties;
-	}
-
-	public static DBProvider getInstance() {
-		if (instance == null) {
-			instance = new DBProvider();
-		}
-
-		return instance;
-	}
-	
-	@SuppressWarnings("rawtypes")
-	public List<Zips> getAllZips(){
-		return entityManager.createNamedQuery("findAllZips",Zips.class).getResultList();
-	}
-	
-	public Map<String, String> getCityStateMap(){
-		 Map<String, String>  map = Maps.newHashMap();
-		 List<Zips> zips = getAllZips();
-		 for(Zips zip: zips){
-			 map.put(zip.getCity(), zip.getState());
-		 }
-		 return map;
-	}
-}
+package dataset.db;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.collect.Maps;
+
+import dataset.metrics.Metrics;
+
+/**
+ * Provider of the us_cities data. In the embedded mode the zips are parsed
+ * from the SQL dump, otherwise they are read from the database by JPA, which
+ * is only bootstrapped on the first query. The city dictionary is loaded once
+ * and shared by all analyses.
+ */
+public class DBProvider {
+	public final static String PERSISTENT_UNIT = "us_cities"; 
+	// Keys of db.conf which are not passed to JPA.
+	private final static String EMBEDDED_KEY = "dataset.db.embedded";
+	private final static String CITIES_FILE_KEY = "dataset.db.cities.file";
+	private final static String DEFAULT_CITIES_FILE = "database/us_cities.sql";
+	
+	private static DBProvider instance;
+	
+	private final Map<String, String> dbProperties;
+	private final boolean embedded;
+	private final File citiesFile;
+	private EntityManager entityManager;
+	private CityStateDictionary cityDictionary;
+
+	private DBProvider() {
+		Properties configuration = loadDBConfiguration();
+		this.embedded = Boolean.parseBoolean(configuration.getProperty(EMBEDDED_KEY, "false"));
+		this.citiesFile = new File(configuration.getProperty(CITIES_FILE_KEY, DEFAULT_CITIES_FILE));
+		this.dbProperties = Maps.newHashMap();
+		for(Map.Entry<Object, Object> entry: configuration.entrySet()){
+			String key = String.valueOf(entry.getKey());
+			if(!key.startsWith("dataset.")){
+				dbProperties.put(key, String.valueOf(entry.getValue()));
+			}
+		}
+	}
+
+	private Properties loadDBConfiguration() {
+		Properties configuration = new Properties();
+		
+		System.out.println("DB properties:");
+		try{
+			configuration.load(new FileInputStream("conf/db.conf"));
+			for(Map.Entry<Object, Object> entry: configuration.entrySet()){
+				System.out.println(entry.getKey()+" = "+entry.getValue());
+			}
+		}catch(Exception ex){
+			System.err.println("Database configuration load error: "+ ex.getMessage());
+			ex.printStackTrace();
+		}
+		return configuration;
+	}
+
+	public static synchronized DBProvider getInstance() {
+		if (instance == null) {
+			instance = new DBProvider();
+		}
+
+		return instance;
+	}
+
+	private synchronized EntityManager getEntityManager() {
+		if (entityManager == null) {
+			final EntityManagerFactory factory = Persistence
+					.createEntityManagerFactory(PERSISTENT_UNIT, dbProperties);
+			entityManager = factory.createEntityManager();
+		}
+		return entityManager;
+	}
+
+	/**
+	 * @return If the zips are parsed from the SQL dump instead of the
+	 *         database.
+	 */
+	public boolean isEmbedded() {
+		return embedded;
+	}
+
+	/**
+	 * @return The SQL dump of the embedded mode.
+	 */
+	public File getCitiesFile() {
+		return citiesFile;
+	}
+	
+	@SuppressWarnings("rawtypes")
+	public List<Zips> getAllZips(){
+		return getEntityManager().createNamedQuery("findAllZips",Zips.class).getResultList();
+	}
+
+	/**
+	 * @return The city dictionary, which is loaded on the first call.
+	 */
+	public synchronized CityStateDictionary getCityDictionary() throws IOException {
+		if (cityDictionary == null) {
+			long startTime = System.currentTimeMillis();
+			Metrics.Timer timer = Metrics.start("db.cities");
+			try {
+				if (embedded) {
+					cityDictionary = CityStateDictionary.load(citiesFile);
+				} else {
+					cityDictionary = CityStateDictionary.fromZips(getAllZips());
+				}
+				timer.stop(cityDictionary.getNumZips());
+			} finally {
+				timer.stop();
+			}
+			System.out.println("Loaded " + cityDictionary.getNumZips() + " zips"
+					+ (embedded ? " from " + citiesFile : " from database")
+					+ " in " + (System.currentTimeMillis() - startTime) + "ms");
+		}
+		return cityDictionary;
+	}
+	
+	/**
+	 * Drop the loaded city dictionary, so the next call loads it again.
+	 */
+	public synchronized void forgetCityDictionary() {
+		cityDictionary = null;
+	}
+	
+	/**
+	 * @return The immutable [city, state] map shared by all callers.
+	 */
+	public Map<String, String> getCityStateMap() throws IOException {
+		 return getCityDictionary().getCityStateMap();
+	}
+}
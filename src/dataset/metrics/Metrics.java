@@ -0,0 +1,240 @@
+package dataset.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Registry of the stage metrics of a run. A stage is timed by
+ *
+ * <pre>
+ * Metrics.Timer timer = Metrics.start(&quot;network.ingest&quot;);
+ * try {
+ *     ...
+ *     timer.stop(numEdges);
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ *
+ * A timer is only counted once, so a failed run is counted without records
+ * and its run is not left active.
+ *
+ * Every stage is registered as a JMX MBean dataset:type=Stage,name=[stage]
+ * when it is first started, so a live run could be watched with jconsole.
+ * At the end of the run all stages are dumped to a file in the Prometheus
+ * text format for the batch monitoring.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class Metrics {
+    private static final Logger logger = LogManager.getLogger(Metrics.class);
+    private static final String JMX_DOMAIN = "dataset";
+    // Sorted by stage, so the dumps of two runs could be diffed.
+    private static final Map<String, StageMetrics> stages = Maps.newTreeMap();
+
+    /**
+     * Start a run of the stage, the stage is created at the first run.
+     */
+    public static Timer start(String stage) {
+	StageMetrics metrics = getStage(stage);
+	metrics.start();
+	return new Timer(metrics);
+    }
+
+    public static synchronized StageMetrics getStage(String stage) {
+	StageMetrics metrics = stages.get(stage);
+	if (metrics == null) {
+	    metrics = new StageMetrics(stage);
+	    stages.put(stage, metrics);
+	    register(metrics);
+	}
+	return metrics;
+    }
+
+    private static void register(StageMetrics metrics) {
+	try {
+	    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	    ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Stage,name="
+		    + ObjectName.quote(metrics.getStage()));
+	    if (!server.isRegistered(name)) {
+		server.registerMBean(metrics, name);
+	    }
+	} catch (JMException e) {
+	    logger.warn("Can not register MBean of stage "
+		    + metrics.getStage() + ": " + e.getMessage());
+	}
+    }
+
+    /**
+     * Write all stages and the heap to the file in the Prometheus text
+     * format.
+     */
+    public static void writePrometheus(File file) throws IOException {
+	StringBuilder text = new StringBuilder();
+	synchronized (Metrics.class) {
+	    appendFamily(text, "dataset_stage_runs_total", "counter",
+		    "Finished runs of the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_runs_total", stage,
+			stage.getRuns());
+	    }
+	    appendFamily(text, "dataset_stage_seconds_total", "counter",
+		    "Wall time of all runs of the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_seconds_total", stage,
+			stage.getWallTimeSeconds());
+	    }
+	    appendFamily(text, "dataset_stage_records_total", "counter",
+		    "Records, edges or points processed by the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_records_total", stage,
+			stage.getRecords());
+	    }
+	    appendFamily(text, "dataset_stage_rejected_total", "counter",
+		    "Records rejected by the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_rejected_total", stage,
+			stage.getRejected());
+	    }
+	    appendFamily(text, "dataset_stage_records_per_second", "gauge",
+		    "Throughput of the last run of the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_records_per_second", stage,
+			stage.getRecordsPerSecond());
+	    }
+	    appendFamily(text, "dataset_stage_heap_used_bytes", "gauge",
+		    "Heap in use at the end of the last run of the stage.");
+	    for (StageMetrics stage : stages.values()) {
+		appendSample(text, "dataset_stage_heap_used_bytes", stage,
+			stage.getHeapUsedBytes());
+	    }
+	}
+	MemoryUsage heap = ManagementFactory.getMemoryMXBean()
+		.getHeapMemoryUsage();
+	appendFamily(text, "dataset_heap_used_bytes", "gauge",
+		"Heap in use at the end of the run.");
+	text.append("dataset_heap_used_bytes ").append(heap.getUsed())
+		.append('\n');
+	appendFamily(text, "dataset_heap_max_bytes", "gauge", "Max heap.");
+	text.append("dataset_heap_max_bytes ").append(heap.getMax())
+		.append('\n');
+
+	Files.createParentDirs(file);
+	File tmpFile = new File(file.getPath() + ".tmp");
+	Files.write(text, tmpFile, Charsets.UTF_8);
+	if (file.exists() && !file.delete()) {
+	    throw new IOException("Can not replace metrics file " + file);
+	}
+	if (!tmpFile.renameTo(file)) {
+	    throw new IOException("Can not rename metrics file to " + file);
+	}
+	logger.info("Saved metrics of " + stages.size() + " stages to " + file);
+    }
+
+    private static void appendFamily(StringBuilder text, String name,
+	    String type, String help) {
+	text.append("# HELP ").append(name).append(' ').append(help)
+		.append('\n');
+	text.append("# TYPE ").append(name).append(' ').append(type)
+		.append('\n');
+    }
+
+    private static void appendSample(StringBuilder text, String name,
+	    StageMetrics stage, double value) {
+	text.append(name).append("{stage=\"")
+		.append(stage.getStage().replace("\\", "\\\\")
+			.replace("\"", "\\\"")).append("\"} ");
+	if (value == Math.rint(value) && !Double.isInfinite(value)) {
+	    text.append((long) value);
+	} else {
+	    text.append(value);
+	}
+	text.append('\n');
+    }
+
+    /**
+     * One run of a stage, which is counted when it is stopped.
+     */
+    public static class Timer {
+	private final StageMetrics metrics;
+	private final long startTime;
+	private boolean stopped;
+
+	private Timer(StageMetrics metrics) {
+	    this.metrics = metrics;
+	    this.startTime = System.nanoTime();
+	}
+
+	public void stop() {
+	    stop(0, 0);
+	}
+
+	public void stop(long numRecords) {
+	    stop(numRecords, 0);
+	}
+
+	/**
+	 * Count the run, a timer is only counted once.
+	 */
+	public void stop(long numRecords, long numRejected) {
+	    if (stopped) {
+		return;
+	    }
+	    stopped = true;
+	    long nanos = System.nanoTime() - startTime;
+	    metrics.stop(nanos, numRecords, numRejected);
+	    logger.debug(String.format("Stage %s took %.3fs for %d records",
+		    metrics.getStage(), nanos / 1e9, numRecords));
+	}
+    }
+
+    @Test
+    public void testWritePrometheus() throws Exception {
+	Metrics.start("test.stage").stop(10, 2);
+	Timer timer = Metrics.start("test.stage");
+	timer.stop(5);
+	timer.stop(100);
+	StageMetrics stage = getStage("test.stage");
+	Assert.assertEquals(2, stage.getRuns());
+	Assert.assertEquals(15, stage.getRecords());
+	Assert.assertEquals(2, stage.getRejected());
+	Assert.assertEquals(0, stage.getActiveRuns());
+	Assert.assertTrue(ManagementFactory.getPlatformMBeanServer()
+		.isRegistered(
+			new ObjectName("dataset:type=Stage,name=\"test.stage\"")));
+
+	File dir = Files.createTempDir();
+	try {
+	    File file = new File(dir, "metrics.prom");
+	    writePrometheus(file);
+	    String text = Files.toString(file, Charsets.UTF_8);
+	    Assert.assertTrue(text
+		    .contains("# TYPE dataset_stage_records_total counter\n"));
+	    Assert.assertTrue(text
+		    .contains("dataset_stage_records_total{stage=\"test.stage\"} 15\n"));
+	    Assert.assertTrue(text
+		    .contains("dataset_stage_rejected_total{stage=\"test.stage\"} 2\n"));
+	    Assert.assertTrue(text.contains("dataset_heap_used_bytes "));
+	} finally {
+	    new File(dir, "metrics.prom").delete();
+	    dir.delete();
+	}
+    }
+}
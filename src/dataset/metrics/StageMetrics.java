@@ -0,0 +1,82 @@
+package dataset.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one stage of a run, like parsing the profiles or drawing the
+ * charts. A stage could run many times and from many threads, the counters
+ * are the totals of all runs while the records per second and the heap are
+ * of the last finished run.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class StageMetrics implements StageMetricsMBean {
+    private final String stage;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong activeRuns = new AtomicLong();
+    private final AtomicLong wallTimeNanos = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile double recordsPerSecond;
+    private volatile long heapUsedBytes;
+
+    StageMetrics(String stage) {
+	this.stage = stage;
+    }
+
+    void start() {
+	activeRuns.incrementAndGet();
+    }
+
+    void stop(long nanos, long numRecords, long numRejected) {
+	activeRuns.decrementAndGet();
+	runs.incrementAndGet();
+	wallTimeNanos.addAndGet(nanos);
+	records.addAndGet(numRecords);
+	rejected.addAndGet(numRejected);
+	recordsPerSecond = numRecords / (Math.max(nanos, 1) / 1e9);
+	Runtime runtime = Runtime.getRuntime();
+	heapUsedBytes = runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Override
+    public String getStage() {
+	return stage;
+    }
+
+    @Override
+    public long getRuns() {
+	return runs.get();
+    }
+
+    @Override
+    public long getActiveRuns() {
+	return activeRuns.get();
+    }
+
+    @Override
+    public double getWallTimeSeconds() {
+	return wallTimeNanos.get() / 1e9;
+    }
+
+    @Override
+    public long getRecords() {
+	return records.get();
+    }
+
+    @Override
+    public long getRejected() {
+	return rejected.get();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+	return recordsPerSecond;
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+	return heapUsedBytes;
+    }
+}
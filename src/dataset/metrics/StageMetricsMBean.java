@@ -0,0 +1,25 @@
+package dataset.metrics;
+
+/**
+ * JMX view of the metrics of one stage, see StageMetrics.
+ *
+ * @author qinjin.wang
+ *
+ */
+public interface StageMetricsMBean {
+    public String getStage();
+
+    public long getRuns();
+
+    public long getActiveRuns();
+
+    public double getWallTimeSeconds();
+
+    public long getRecords();
+
+    public long getRejected();
+
+    public double getRecordsPerSecond();
+
+    public long getHeapUsedBytes();
+}
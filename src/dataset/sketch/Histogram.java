@@ -0,0 +1,278 @@
+package dataset.sketch;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * Counts of int keys over the cells of a KeyGrid, in one long[]. The grid
+ * could be the distinct keys, like KeyGrid.of(keys) for exact counts of
+ * sparse keys, linear, or binned logarithmically above an exact limit. Histograms over the same grid are
+ * merged by adding the counts, so every thread could count to its own
+ * histogram. The cumulative counts are kept as prefix sums, which are built
+ * at the first query after a change, so the CDF is a lookup and a percentile
+ * a binary search.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class Histogram {
+    private static final int MAGIC = 0x44534831; // "DSH1"
+
+    private final KeyGrid grid;
+    private final long[] counts;
+    // Weight of the keys without a cell.
+    private long numRejected;
+    // counts[0] + ... + counts[cell - 1] at prefixSums[cell], null after a
+    // change.
+    private long[] prefixSums;
+
+    public Histogram() {
+	this(KeyGrid.linear(1, 0));
+    }
+
+    public Histogram(KeyGrid grid) {
+	this.grid = grid;
+	this.counts = new long[grid.getNumCells()];
+    }
+
+    public KeyGrid getGrid() {
+	return grid;
+    }
+
+    /**
+     * Count the key once, keys without a cell are counted as rejected.
+     */
+    public void add(int key) {
+	add(key, 1);
+    }
+
+    /**
+     * Add the weight to the cell of the key, keys without a cell are counted
+     * as rejected.
+     */
+    public void add(int key, long weight) {
+	int cell = grid.cellOf(key);
+	if (cell >= 0) {
+	    counts[cell] += weight;
+	    prefixSums = null;
+	} else {
+	    numRejected += weight;
+	}
+    }
+
+    /**
+     * Add the counts of the other histogram, which must have the same grid.
+     */
+    public void merge(Histogram other) {
+	if (!grid.equals(other.grid)) {
+	    throw new IllegalArgumentException(
+		    "Can not merge histograms of different grids");
+	}
+	for (int cell = 0; cell < counts.length; cell++) {
+	    counts[cell] += other.counts[cell];
+	}
+	numRejected += other.numRejected;
+	prefixSums = null;
+    }
+
+    public int getNumCells() {
+	return counts.length;
+    }
+
+    public int getCellKey(int cell) {
+	return grid.getCellKey(cell);
+    }
+
+    public long getCount(int cell) {
+	return counts[cell];
+    }
+
+    /**
+     * @return The count of the cell of the key, 0 for negative keys.
+     */
+    public long get(int key) {
+	int cell = grid.cellOf(key);
+	return cell < 0 ? 0 : counts[cell];
+    }
+
+    public long getTotal() {
+	return getPrefixSums()[counts.length];
+    }
+
+    /**
+     * @return Weight of the keys which were not counted, as they have no
+     *         cell in the grid.
+     */
+    public long getNumRejected() {
+	return numRejected;
+    }
+
+    /**
+     * @return The count of the cells which start at the key or above it.
+     */
+    public long countAtLeast(int key) {
+	return getTotal() - countBelow(key);
+    }
+
+    /**
+     * @return The count of the cells which start below the key. It is exact
+     *         if the key starts a cell, or if the grid has the keys of the
+     *         counts.
+     */
+    public long countBelow(int key) {
+	int cell = grid.cellOf(key);
+	if (cell < 0) {
+	    return 0;
+	}
+	return getPrefixSums()[grid.getCellKey(cell) < key ? cell + 1 : cell];
+    }
+
+    /**
+     * @return The fraction of the counts in the cells which start below the
+     *         key, 0 for an empty histogram.
+     */
+    public double cdf(int key) {
+	long total = getTotal();
+	return total == 0 ? 0 : (double) countBelow(key) / total;
+    }
+
+    /**
+     * @param fraction
+     *            Between 0 and 1, like 0.5 for the median.
+     * @return The key of the cell where the counts reach the fraction of the
+     *         total, or -1 for an empty histogram.
+     */
+    public int percentile(double fraction) {
+	long[] sums = getPrefixSums();
+	long total = sums[counts.length];
+	if (total == 0) {
+	    return -1;
+	}
+	long rank = Math.max((long) Math.ceil(fraction * total), 1);
+	// The first cell whose cumulative count reaches the rank.
+	int index = Arrays.binarySearch(sums, 1, sums.length, rank);
+	if (index < 0) {
+	    index = -index - 1;
+	} else {
+	    // The first of the equal sums, empty cells repeat the sum.
+	    while (index > 1 && sums[index - 1] == rank) {
+		index--;
+	    }
+	}
+	return grid.getCellKey(Math.min(index, counts.length) - 1);
+    }
+
+    /**
+     * @return [Cell key, count] of the non empty cells.
+     */
+    public ResultSeries toSeries() {
+	int size = 0;
+	for (long count : counts) {
+	    if (count != 0) {
+		size++;
+	    }
+	}
+	int[] keys = new int[size];
+	double[] values = new double[size];
+	int i = 0;
+	for (int cell = 0; cell < counts.length; cell++) {
+	    if (counts[cell] != 0) {
+		keys[i] = grid.getCellKey(cell);
+		values[i] = counts[cell];
+		i++;
+	    }
+	}
+	return new ResultSeries(keys, values);
+    }
+
+    /**
+     * @return The grid, the rejected weight and the non empty cells as [cell,
+     *         count] pairs. A grid of explicit keys is followed by its keys.
+     */
+    public byte[] toBytes() {
+	int size = 0;
+	for (long count : counts) {
+	    if (count != 0) {
+		size++;
+	    }
+	}
+	int numKeys = grid.hasExplicitKeys() ? counts.length : 0;
+	ByteBuffer buffer = ByteBuffer.allocate(28
+		+ (grid.hasExplicitKeys() ? 4 + 4 * numKeys : 0) + 12 * size);
+	buffer.putInt(MAGIC);
+	buffer.putInt(grid.getExactLimit());
+	buffer.putInt(grid.getStep());
+	buffer.putInt(grid.getCellsPerDecade());
+	if (grid.hasExplicitKeys()) {
+	    buffer.putInt(numKeys);
+	    for (int cell = 0; cell < numKeys; cell++) {
+		buffer.putInt(grid.getCellKey(cell));
+	    }
+	}
+	buffer.putLong(numRejected);
+	buffer.putInt(size);
+	for (int cell = 0; cell < counts.length; cell++) {
+	    if (counts[cell] != 0) {
+		buffer.putInt(cell);
+		buffer.putLong(counts[cell]);
+	    }
+	}
+	return buffer.array();
+    }
+
+    public static Histogram fromBytes(byte[] bytes) {
+	ByteBuffer buffer = ByteBuffer.wrap(bytes);
+	try {
+	    if (buffer.getInt() != MAGIC) {
+		throw new IllegalArgumentException("Not a histogram");
+	    }
+	    int exactLimit = buffer.getInt();
+	    int step = buffer.getInt();
+	    int cellsPerDecade = buffer.getInt();
+	    KeyGrid grid;
+	    if (cellsPerDecade == 0) {
+		int numKeys = buffer.getInt();
+		if (numKeys < 0 || numKeys > buffer.remaining() / 4) {
+		    throw new IllegalArgumentException("Corrupted histogram");
+		}
+		int[] keys = new int[numKeys];
+		for (int i = 0; i < keys.length; i++) {
+		    keys[i] = buffer.getInt();
+		}
+		grid = KeyGrid.of(keys);
+	    } else {
+		grid = new KeyGrid(exactLimit, step, cellsPerDecade);
+	    }
+	    Histogram histogram = new Histogram(grid);
+	    histogram.numRejected = buffer.getLong();
+	    int size = buffer.getInt();
+	    if (buffer.remaining() != 12 * (long) size) {
+		throw new IllegalArgumentException("Corrupted histogram");
+	    }
+	    for (int i = 0; i < size; i++) {
+		histogram.counts[buffer.getInt()] = buffer.getLong();
+	    }
+	    return histogram;
+	} catch (BufferUnderflowException ex) {
+	    throw new IllegalArgumentException("Truncated histogram", ex);
+	} catch (IndexOutOfBoundsException ex) {
+	    // A cell out of the grid.
+	    throw new IllegalArgumentException("Corrupted histogram", ex);
+	}
+    }
+
+    private long[] getPrefixSums() {
+	long[] sums = prefixSums;
+	if (sums == null) {
+	    sums = new long[counts.length + 1];
+	    for (int cell = 0; cell < counts.length; cell++) {
+		sums[cell + 1] = sums[cell] + counts[cell];
+	    }
+	    prefixSums = sums;
+	}
+	return sums;
+    }
+}
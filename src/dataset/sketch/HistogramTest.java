@@ -0,0 +1,93 @@
+package dataset.sketch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dataset.utils.ResultSeries;
+
+/**
+ * Tests of the queries, the merge and the bytes of Histogram.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class HistogramTest {
+
+    @Test
+    public void testQueries() {
+	Histogram histogram = new Histogram(new KeyGrid(100, 1, 10));
+	for (int key = 0; key < 100; key++) {
+	    histogram.add(key);
+	}
+	histogram.add(1000, 50);
+	histogram.add(1000000, 50);
+	histogram.add(-1);
+	Assert.assertEquals(200, histogram.getTotal());
+	Assert.assertEquals(1, histogram.getNumRejected());
+	Assert.assertEquals(190, histogram.countAtLeast(10));
+	Assert.assertEquals(100, histogram.countAtLeast(100));
+	Assert.assertEquals(100, histogram.countAtLeast(1000));
+	Assert.assertEquals(50, histogram.countAtLeast(10000));
+	Assert.assertEquals(0, histogram.countAtLeast(10000000));
+	Assert.assertEquals(0.25, histogram.cdf(50), 0);
+	Assert.assertEquals(49, histogram.percentile(0.25));
+	Assert.assertEquals(99, histogram.percentile(0.5));
+	Assert.assertEquals(1000, histogram.percentile(0.51));
+	Assert.assertEquals(1000000, histogram.percentile(1));
+	Assert.assertEquals(-1, new Histogram().percentile(0.5));
+    }
+
+    @Test
+    public void testMergeAndBytes() {
+	KeyGrid grid = KeyGrid.linear(100, 12000);
+	Histogram first = new Histogram(grid);
+	Histogram second = new Histogram(grid);
+	first.add(150);
+	first.add(250, 3);
+	second.add(199, 2);
+	second.add(20000);
+	first.merge(second);
+	Assert.assertEquals(3, first.get(100));
+	Assert.assertEquals(3, first.get(200));
+	Assert.assertEquals(1, first.countAtLeast(12100));
+
+	Histogram read = Histogram.fromBytes(first.toBytes());
+	Assert.assertEquals(grid, read.getGrid());
+	Assert.assertEquals(7, read.getTotal());
+	ResultSeries series = read.toSeries();
+	Assert.assertArrayEquals(new int[] { 100, 200, 12100 }, series.keys());
+	Assert.assertArrayEquals(new double[] { 3, 3, 1 }, series.values(), 0);
+    }
+
+    @Test
+    public void testExplicitKeys() {
+	// Sparse keys, one of them corrupt, take a cell each.
+	int[] keys = { 7, -3, Integer.MAX_VALUE, 12, 7, 1000 };
+	Histogram histogram = new Histogram(KeyGrid.of(keys));
+	Assert.assertEquals(5, histogram.getNumCells());
+	for (int key : keys) {
+	    histogram.add(key);
+	}
+	histogram.add(-10);
+	Assert.assertEquals(6, histogram.getTotal());
+	Assert.assertEquals(1, histogram.getNumRejected());
+	Assert.assertEquals(2, histogram.get(7));
+	Assert.assertEquals(1, histogram.get(-3));
+	// The thresholds need not be keys.
+	Assert.assertEquals(3, histogram.countAtLeast(10));
+	Assert.assertEquals(2, histogram.countAtLeast(13));
+	Assert.assertEquals(1, histogram.countAtLeast(1001));
+	Assert.assertEquals(0, histogram.countBelow(-3));
+	Assert.assertEquals(7, histogram.percentile(0.5));
+	Assert.assertEquals(Integer.MAX_VALUE, histogram.percentile(1));
+
+	Histogram read = Histogram.fromBytes(histogram.toBytes());
+	Assert.assertEquals(histogram.getGrid(), read.getGrid());
+	Assert.assertEquals(1, read.getNumRejected());
+	ResultSeries series = read.toSeries();
+	Assert.assertArrayEquals(new int[] { -3, 7, 12, 1000,
+		Integer.MAX_VALUE }, series.keys());
+	Assert.assertArrayEquals(new double[] { 1, 2, 1, 1, 1 },
+		series.values(), 0);
+    }
+}
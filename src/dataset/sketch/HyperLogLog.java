@@ -0,0 +1,88 @@
+package dataset.sketch;
+
+/**
+ * HyperLogLog counter of distinct values. The memory is 2^precision bytes no
+ * matter how many values are added, the relative standard error of the
+ * estimate is 1.04 / sqrt(2^precision).
+ *
+ * @author qinjin.wang
+ *
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+	this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+	if (precision < 4 || precision > 18) {
+	    throw new IllegalArgumentException("Invalid precision " + precision);
+	}
+	this.precision = precision;
+	this.registers = new byte[1 << precision];
+    }
+
+    public void add(long value) {
+	long hash = mix(value);
+	int index = (int) (hash >>> (64 - precision));
+	// Position of the first 1 bit after the index bits, the guard bit
+	// limits the rank when all remaining bits are 0.
+	int rank = Long.numberOfLeadingZeros((hash << precision)
+		| (1L << (precision - 1))) + 1;
+	if (rank > registers[index]) {
+	    registers[index] = (byte) rank;
+	}
+    }
+
+    /**
+     * Add all values of the other counter, both must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+	if (other.precision != precision) {
+	    throw new IllegalArgumentException("Precision " + other.precision
+		    + " does not match " + precision);
+	}
+	for (int i = 0; i < registers.length; i++) {
+	    if (other.registers[i] > registers[i]) {
+		registers[i] = other.registers[i];
+	    }
+	}
+    }
+
+    public long cardinality() {
+	int numRegisters = registers.length;
+	double sum = 0;
+	int zeros = 0;
+	for (byte register : registers) {
+	    sum += 1.0 / (1L << register);
+	    if (register == 0) {
+		zeros++;
+	    }
+	}
+	double alpha = 0.7213 / (1 + 1.079 / numRegisters);
+	double estimate = alpha * numRegisters * numRegisters / sum;
+	if (estimate <= 2.5 * numRegisters && zeros > 0) {
+	    // Linear counting is more accurate for small cardinalities.
+	    estimate = numRegisters * Math.log((double) numRegisters / zeros);
+	}
+	return Math.round(estimate);
+    }
+
+    public double getRelativeError() {
+	return 1.04 / Math.sqrt(registers.length);
+    }
+
+    // The finalizer of MurmurHash3, which spreads the IDs over all bits.
+    private static long mix(long value) {
+	value ^= value >>> 33;
+	value *= 0xff51afd7ed558ccdL;
+	value ^= value >>> 33;
+	value *= 0xc4ceb9fe1a85ec53L;
+	value ^= value >>> 33;
+	return value;
+    }
+}
@@ -0,0 +1,172 @@
+package dataset.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Fixed grid of keys for approximate distributions. Keys below the exact
+ * limit have a cell of their own for each step, larger keys are binned to
+ * cells growing geometrically, with a fixed number of cells per decade and
+ * every power of ten starting a cell. The number of cells does not depend on
+ * the data, so counters over the grid take fixed memory.
+ * <p>
+ * A grid could also have a cell for each distinct key of the data, see of(),
+ * which counts sparse keys exactly in memory of the number of keys.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class KeyGrid {
+    private final int exactLimit;
+    private final int step;
+    // 0 for a grid of explicit keys.
+    private final int cellsPerDecade;
+    // Cells below the exact limit, whose keys are multiples of the step.
+    private final int numExactCells;
+    // The first key of each binned cell from the exact limit on, ascending.
+    private final int[] binnedKeys;
+
+    private KeyGrid(int[] cellKeys) {
+	this.exactLimit = 0;
+	this.step = 1;
+	this.cellsPerDecade = 0;
+	this.numExactCells = 0;
+	this.binnedKeys = cellKeys;
+    }
+
+    public KeyGrid(int exactLimit, int step, int cellsPerDecade) {
+	if (step <= 0 || exactLimit < 0 || exactLimit % step != 0
+		|| cellsPerDecade <= 0) {
+	    throw new IllegalArgumentException("Invalid key grid " + exactLimit
+		    + "/" + step + "/" + cellsPerDecade);
+	}
+	this.exactLimit = exactLimit;
+	this.step = step;
+	this.cellsPerDecade = cellsPerDecade;
+	this.numExactCells = exactLimit / step;
+
+	int[] keys = new int[10 * cellsPerDecade + 1];
+	int numCells = 0;
+	keys[numCells++] = exactLimit;
+	for (int i = 0;; i++) {
+	    double value = Math.pow(10, (double) i / cellsPerDecade);
+	    if (value > Integer.MAX_VALUE) {
+		break;
+	    }
+	    // Round to the step, powers of ten stay exact.
+	    long key = Math.round(value / step) * step;
+	    if (key > keys[numCells - 1] && key <= Integer.MAX_VALUE) {
+		keys[numCells++] = (int) key;
+	    }
+	}
+	this.binnedKeys = Arrays.copyOf(keys, numCells);
+    }
+
+    /**
+     * A grid of cells of the step for all keys up to the max key, and one
+     * binned cell per decade above it.
+     */
+    public static KeyGrid linear(int step, int maxKey) {
+	if (step <= 0) {
+	    throw new IllegalArgumentException("Invalid step " + step);
+	}
+	long exactLimit = ((long) Math.max(maxKey, 0) / step + 1) * step;
+	if (exactLimit > Integer.MAX_VALUE) {
+	    exactLimit -= step;
+	}
+	return new KeyGrid((int) exactLimit, step, 1);
+    }
+
+    /**
+     * A grid of a cell for each distinct key, so every count stays at its
+     * key. Keys between the given keys are counted to the cell of the next
+     * smaller key, keys below the smallest one have no cell.
+     */
+    public static KeyGrid of(int[] keys) {
+	int[] cellKeys = keys.clone();
+	Arrays.sort(cellKeys);
+	int numCells = 0;
+	for (int i = 0; i < cellKeys.length; i++) {
+	    if (numCells == 0 || cellKeys[i] != cellKeys[numCells - 1]) {
+		cellKeys[numCells++] = cellKeys[i];
+	    }
+	}
+	return new KeyGrid(Arrays.copyOf(cellKeys, numCells));
+    }
+
+    public int getNumCells() {
+	return numExactCells + binnedKeys.length;
+    }
+
+    /**
+     * @return The first key of the cell, which is used as the key of the
+     *         cell in the results.
+     */
+    public int getCellKey(int cell) {
+	if (cell < numExactCells) {
+	    return cell * step;
+	}
+	return binnedKeys[cell - numExactCells];
+    }
+
+    /**
+     * @return The cell of the key, or -1 for the keys below the first cell,
+     *         which are the negative keys unless the grid has explicit keys.
+     */
+    public int cellOf(int key) {
+	if (key >= 0 && key < exactLimit) {
+	    return key / step;
+	}
+	int index = Arrays.binarySearch(binnedKeys, key);
+	if (index < 0) {
+	    index = -index - 2;
+	}
+	return index < 0 ? -1 : numExactCells + index;
+    }
+
+    /**
+     * @return If the cells are the explicit keys of of().
+     */
+    public boolean hasExplicitKeys() {
+	return cellsPerDecade == 0;
+    }
+
+    /**
+     * @return The largest relative width of the binned cells, NaN for a grid
+     *         of explicit keys.
+     */
+    public double getRelativeCellWidth() {
+	if (hasExplicitKeys()) {
+	    return Double.NaN;
+	}
+	return Math.pow(10, 1.0 / cellsPerDecade) - 1;
+    }
+
+    public int getExactLimit() {
+	return exactLimit;
+    }
+
+    public int getStep() {
+	return step;
+    }
+
+    public int getCellsPerDecade() {
+	return cellsPerDecade;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (!(obj instanceof KeyGrid)) {
+	    return false;
+	}
+	KeyGrid other = (KeyGrid) obj;
+	return exactLimit == other.exactLimit && step == other.step
+		&& cellsPerDecade == other.cellsPerDecade
+		&& Arrays.equals(binnedKeys, other.binnedKeys);
+    }
+
+    @Override
+    public int hashCode() {
+	return ((exactLimit * 31 + step) * 31 + cellsPerDecade) * 31
+		+ Arrays.hashCode(binnedKeys);
+    }
+}
@@ -0,0 +1,170 @@
+package dataset.twitter.analysis;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import dataset.db.CityStateDictionary;
+import dataset.utils.IntIntMap;
+
+/**
+ * Grid index of the cities of a UserProfileStore for the great circle
+ * distance between two users. A city is placed at the mean coordinates of its
+ * zips in the state it is resolved to, and the cities are put to cells of
+ * cellDegrees x cellDegrees. The distances between the centroids of all
+ * occupied cells are computed once, so the distance of two cities in
+ * different cells is one array lookup. Two cities of the same cell are
+ * measured exactly.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class CityGridIndex {
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+    // The distance matrix of 4096 cells takes 64MB.
+    public static final int MAX_CELLS = 4096;
+
+    private final double cellDegrees;
+    // [City code, cell], -1 for the cities without coordinates.
+    private final int[] cityCells;
+    private final double[] cityLats;
+    private final double[] cityLngs;
+    private final int numCells;
+    // [Cell * numCells + cell, km]
+    private final float[] cellDistances;
+
+    public CityGridIndex(UserProfileStore profileStore,
+	    CityStateDictionary dictionary, double cellDegrees) {
+	if (!(cellDegrees > 0)) {
+	    throw new IllegalArgumentException("Invalid cell size "
+		    + cellDegrees);
+	}
+	this.cellDegrees = cellDegrees;
+	int numCities = profileStore.getNumCities();
+	Map<String, Integer> cityCodes = Maps
+		.newHashMapWithExpectedSize(numCities);
+	for (int code = 0; code < numCities; code++) {
+	    cityCodes.put(profileStore.getCityName(code), code);
+	}
+
+	// Mean coordinates of the zips of each city in its resolved state.
+	Map<String, String> cityStateMap = dictionary.getCityStateMap();
+	double[] latSums = new double[numCities];
+	double[] lngSums = new double[numCities];
+	int[] numZips = new int[numCities];
+	for (int i = 0; i < dictionary.getNumZips(); i++) {
+	    Integer code = cityCodes.get(dictionary.getCity(i));
+	    if (code == null || Double.isNaN(dictionary.getLat(i))
+		    || Double.isNaN(dictionary.getLng(i))
+		    || !cityStateMap.get(dictionary.getCity(i)).equals(
+			    dictionary.getState(i))) {
+		continue;
+	    }
+	    latSums[code] += dictionary.getLat(i);
+	    lngSums[code] += dictionary.getLng(i);
+	    numZips[code]++;
+	}
+
+	cityCells = new int[numCities];
+	cityLats = new double[numCities];
+	cityLngs = new double[numCities];
+	IntIntMap cellIndex = new IntIntMap(1024, -1);
+	int columns = (int) Math.ceil(360 / cellDegrees) + 1;
+	int cells = 0;
+	for (int code = 0; code < numCities; code++) {
+	    if (numZips[code] == 0) {
+		cityCells[code] = -1;
+		continue;
+	    }
+	    cityLats[code] = latSums[code] / numZips[code];
+	    cityLngs[code] = lngSums[code] / numZips[code];
+	    int row = (int) Math.floor((cityLats[code] + 90) / cellDegrees);
+	    int column = (int) Math.floor((cityLngs[code] + 180) / cellDegrees);
+	    int cellKey = row * columns + column;
+	    int cell = cellIndex.get(cellKey);
+	    if (cell < 0) {
+		if (cells == MAX_CELLS) {
+		    throw new IllegalArgumentException("More than " + MAX_CELLS
+			    + " cells of " + cellDegrees
+			    + " degrees, use larger cells");
+		}
+		cell = cells++;
+		cellIndex.put(cellKey, cell);
+	    }
+	    cityCells[code] = cell;
+	}
+	numCells = cells;
+
+	// Centroids of the cities of each cell.
+	double[] cellLats = new double[numCells];
+	double[] cellLngs = new double[numCells];
+	int[] cellCities = new int[numCells];
+	for (int code = 0; code < numCities; code++) {
+	    int cell = cityCells[code];
+	    if (cell >= 0) {
+		cellLats[cell] += cityLats[code];
+		cellLngs[cell] += cityLngs[code];
+		cellCities[cell]++;
+	    }
+	}
+	for (int cell = 0; cell < numCells; cell++) {
+	    cellLats[cell] /= cellCities[cell];
+	    cellLngs[cell] /= cellCities[cell];
+	}
+	cellDistances = new float[numCells * numCells];
+	for (int a = 0; a < numCells; a++) {
+	    for (int b = a + 1; b < numCells; b++) {
+		float distance = (float) greatCircleDistance(cellLats[a],
+			cellLngs[a], cellLats[b], cellLngs[b]);
+		cellDistances[a * numCells + b] = distance;
+		cellDistances[b * numCells + a] = distance;
+	    }
+	}
+    }
+
+    /**
+     * @return Distance in km between the cities of the codes of the profile
+     *         store, or -1 if any of them is unknown or has no coordinates.
+     */
+    public double distance(int cityCode, int otherCityCode) {
+	if (cityCode < 0 || otherCityCode < 0) {
+	    return -1;
+	}
+	int cell = cityCells[cityCode];
+	int otherCell = cityCells[otherCityCode];
+	if (cell < 0 || otherCell < 0) {
+	    return -1;
+	}
+	if (cell != otherCell) {
+	    return cellDistances[cell * numCells + otherCell];
+	}
+	if (cityCode == otherCityCode) {
+	    return 0;
+	}
+	return greatCircleDistance(cityLats[cityCode], cityLngs[cityCode],
+		cityLats[otherCityCode], cityLngs[otherCityCode]);
+    }
+
+    public double getCellDegrees() {
+	return cellDegrees;
+    }
+
+    public int getNumCells() {
+	return numCells;
+    }
+
+    /**
+     * @return Distance in km between the coordinates by the haversine
+     *         formula.
+     */
+    public static double greatCircleDistance(double lat, double lng,
+	    double otherLat, double otherLng) {
+	double dLat = Math.toRadians(otherLat - lat);
+	double dLng = Math.toRadians(otherLng - lng);
+	double sinLat = Math.sin(dLat / 2);
+	double sinLng = Math.sin(dLng / 2);
+	double h = sinLat * sinLat + Math.cos(Math.toRadians(lat))
+		* Math.cos(Math.toRadians(otherLat)) * sinLng * sinLng;
+	return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(Math.sqrt(h), 1));
+    }
+}
@@ -0,0 +1,319 @@
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import dataset.chart.ChartUtils;
+import dataset.db.DBProvider;
+import dataset.twitter.network.FollowerGraph;
+import dataset.utils.AnalyzeUtils;
+import dataset.utils.ConfReader;
+import dataset.utils.InputFingerprint;
+import dataset.utils.IntIntMap;
+import dataset.utils.ResultCache;
+import dataset.utils.ResultSeries;
+
+/**
+ * Analyze the geographic dispersion of the followers: the mean and median
+ * great circle distance between the users and their followers by the
+ * aggregated number of followers. The users are located at their cities,
+ * the distances are looked up from a CityGridIndex and the rows of the
+ * follower graph are visited by a fixed number of workers.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class FollowerDispersionAnalyze implements IAnalyze {
+    private static final Logger logger = LogManager
+	    .getLogger(FollowerDispersionAnalyze.class);
+
+    public static final String FOLLOWER_MEAN_DISTANCE = "4_follower_mean_distance";
+    public static final String FOLLOWER_MEDIAN_DISTANCE = "4_follower_median_distance";
+    public static final String CACHED_MEAN_DISTANCE_FILE = "output/"
+	    + FOLLOWER_MEAN_DISTANCE + ".dat";
+    public static final String CACHED_MEDIAN_DISTANCE_FILE = "output/"
+	    + FOLLOWER_MEDIAN_DISTANCE + ".dat";
+    // Bump when the calculation changes, so the cached results are
+    // recomputed.
+    private static final int RESULT_VERSION = 1;
+    // The medians are taken from histograms of 50km bins, the last bin
+    // collects everything from 10000km on.
+    private static final int BIN_KM = 50;
+    private static final int NUM_BINS = 200;
+    // Index of the distance sum in meters and the number of pairs in the
+    // counters of an aggregated key, followed by the histogram.
+    private static final int SUM = 0;
+    private static final int PAIRS = 1;
+    private static final int BINS = 2;
+    // Rows of the follower graph taken by a worker at a time.
+    private static final int CHUNK_ROWS = 4096;
+
+    // [Aggregated num followers, mean distance in km]
+    private ResultSeries meanDistanceDistribution;
+    // [Aggregated num followers, median distance in km]
+    private ResultSeries medianDistanceDistribution;
+    // Grid resolution shown on the charts.
+    private String gridSubtitle;
+
+    public FollowerDispersionAnalyze() {
+	meanDistanceDistribution = new ResultSeries();
+	medianDistanceDistribution = new ResultSeries();
+    }
+
+    @Override
+    public void executeAnalyze() {
+	logger.info("START ANALYZE " + this.getClass().getSimpleName());
+	try {
+	    ConfReader confReader = new ConfReader();
+	    double cellDegrees = confReader.getDispersionCellDegrees();
+	    gridSubtitle = String.format(
+		    "Cities on a grid of %s degrees, medians in bins of %dkm",
+		    cellDegrees, BIN_KM);
+	    String fingerprint = fingerprint(confReader, cellDegrees);
+	    File meanFile = new File(CACHED_MEAN_DISTANCE_FILE);
+	    File medianFile = new File(CACHED_MEDIAN_DISTANCE_FILE);
+	    ResultSeries cachedMeans = ResultCache.readSeries(meanFile,
+		    fingerprint);
+	    ResultSeries cachedMedians = cachedMeans == null ? null
+		    : ResultCache.readSeries(medianFile, fingerprint);
+	    if (cachedMedians != null) {
+		logger.debug("Read follower distances from cached files");
+		meanDistanceDistribution = cachedMeans;
+		medianDistanceDistribution = cachedMedians;
+		return;
+	    }
+
+	    Map<Integer, long[]> counters = calcFollowerDistances(confReader,
+		    cellDegrees);
+	    int[] keys = new int[counters.size()];
+	    double[] means = new double[keys.length];
+	    double[] medians = new double[keys.length];
+	    int size = 0;
+	    for (Map.Entry<Integer, long[]> entry : counters.entrySet()) {
+		long[] counter = entry.getValue();
+		if (counter[PAIRS] == 0) {
+		    // None of the followers has a known city.
+		    continue;
+		}
+		keys[size] = entry.getKey();
+		means[size] = mean(counter);
+		medians[size] = median(counter);
+		size++;
+	    }
+	    meanDistanceDistribution = new ResultSeries(Arrays.copyOf(keys,
+		    size), Arrays.copyOf(means, size));
+	    medianDistanceDistribution = new ResultSeries(Arrays.copyOf(keys,
+		    size), Arrays.copyOf(medians, size));
+	    ResultCache.invalidate(meanFile);
+	    ResultCache.invalidate(medianFile);
+	    AnalyzeUtils.saveToFile(meanDistanceDistribution, meanFile);
+	    AnalyzeUtils.saveToFile(medianDistanceDistribution, medianFile);
+	    ResultCache.commit(meanFile, fingerprint);
+	    ResultCache.commit(medianFile, fingerprint);
+	} catch (Exception ex) {
+	    logger.fatal("Error on " + this.getClass().getSimpleName());
+	    ex.printStackTrace();
+	}
+    }
+
+    /**
+     * @return The fingerprint of the inputs, null if they can not be
+     *         fingerprinted.
+     */
+    private String fingerprint(ConfReader confReader, double cellDegrees) {
+	try {
+	    InputFingerprint inputs = new InputFingerprint().addFile(
+		    confReader.getProfilerFile()).addDir(
+		    confReader.getNetworkDir());
+	    DBProvider dbProvider = DBProvider.getInstance();
+	    if (dbProvider.isEmbedded()) {
+		inputs.addFile(dbProvider.getCitiesFile());
+	    } else {
+		inputs.addParam("cities", "database");
+	    }
+	    return inputs.addParam("analyze", FOLLOWER_MEAN_DISTANCE)
+		    .addParam("aggFactor", FollowerDistributionAnalyze.AGG_FACTOR)
+		    .addParam("cellDegrees", cellDegrees)
+		    .addParam("version", RESULT_VERSION).build();
+	} catch (IOException e) {
+	    logger.fatal("Can not fingerprint the inputs: " + e.getMessage());
+	    return null;
+	}
+    }
+
+    /**
+     * @return [Aggregated num followers, counters] of all users with a known
+     *         city, the counters are indexed by SUM, PAIRS and BINS.
+     */
+    private Map<Integer, long[]> calcFollowerDistances(ConfReader confReader,
+	    double cellDegrees) throws Exception {
+	DBProvider dbProvider = DBProvider.getInstance();
+	UserProfileStore profileStore = confReader
+		.getUserProfileStore(dbProvider.getCityStateMap());
+	long startTime = System.currentTimeMillis();
+	CityGridIndex gridIndex = new CityGridIndex(profileStore,
+		dbProvider.getCityDictionary(), cellDegrees);
+	logger.info("Indexed " + profileStore.getNumCities() + " cities to "
+		+ gridIndex.getNumCells() + " cells in "
+		+ (System.currentTimeMillis() - startTime) + "ms");
+	IntIntMap idCityIndex = profileStore.createIDCityIndex();
+	FollowerGraph followersNetwork = new ScanEngine(confReader)
+		.loadFollowerNetwork();
+
+	startTime = System.currentTimeMillis();
+	int numWorkers = confReader.getNumThreads();
+	ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+	AtomicInteger nextChunk = new AtomicInteger();
+	List<Future<Map<Integer, long[]>>> partials = Lists.newArrayList();
+	try {
+	    for (int i = 0; i < numWorkers; i++) {
+		partials.add(executor.submit(new DistanceWorker(
+			followersNetwork, idCityIndex, gridIndex, nextChunk)));
+	    }
+	    Map<Integer, long[]> counters = Maps.newHashMap();
+	    for (Future<Map<Integer, long[]>> partial : partials) {
+		for (Map.Entry<Integer, long[]> entry : partial.get()
+			.entrySet()) {
+		    long[] counter = counters.get(entry.getKey());
+		    if (counter == null) {
+			counters.put(entry.getKey(), entry.getValue());
+		    } else {
+			long[] other = entry.getValue();
+			for (int i = 0; i < counter.length; i++) {
+			    counter[i] += other[i];
+			}
+		    }
+		}
+	    }
+
+	    long[] total = new long[BINS + NUM_BINS];
+	    for (long[] counter : counters.values()) {
+		for (int i = 0; i < total.length; i++) {
+		    total[i] += counter[i];
+		}
+	    }
+	    logger.info("Measured " + total[PAIRS] + " user follower pairs of "
+		    + followersNetwork.getNumEdges() + " edges in "
+		    + (System.currentTimeMillis() - startTime)
+		    + "ms, mean distance " + mean(total)
+		    + "km, median distance " + median(total) + "km");
+	    return counters;
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    private static int mean(long[] counter) {
+	if (counter[PAIRS] == 0) {
+	    return 0;
+	}
+	return (int) Math.round(counter[SUM] / 1000.0 / counter[PAIRS]);
+    }
+
+    // The middle of the bin of the median pair.
+    private static int median(long[] counter) {
+	long half = (counter[PAIRS] + 1) / 2;
+	long seen = 0;
+	for (int bin = 0; bin < NUM_BINS; bin++) {
+	    seen += counter[BINS + bin];
+	    if (seen >= half) {
+		return bin * BIN_KM + BIN_KM / 2;
+	    }
+	}
+	return 0;
+    }
+
+    @Override
+    public void drawResult() {
+	logger.info("Drawing follower distance distribution...");
+	ChartUtils.drawChart("", "Follower mean distance", gridSubtitle,
+		"Number of followers", "Mean distance (km)",
+		FOLLOWER_MEAN_DISTANCE, AnalyzeUtils.simplefilter(-1, -1, -1,
+			-1, meanDistanceDistribution));
+	ChartUtils.drawChart("", "Follower median distance", gridSubtitle,
+		"Number of followers", "Median distance (km)",
+		FOLLOWER_MEDIAN_DISTANCE, AnalyzeUtils.simplefilter(-1, -1, -1,
+			-1, medianDistanceDistribution));
+	ChartUtils.drawChart("", "Follower mean distance", gridSubtitle,
+		"Number of followers", "Mean distance (km)",
+		FOLLOWER_MEAN_DISTANCE + "_0_2000", AnalyzeUtils.simplefilter(
+			2000, -1, -1, -1, meanDistanceDistribution));
+	logger.info("Done drawing follower distance distribution");
+	logger.info("DONE ANALYZE " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Sum the distances of the followers of the rows of the next chunks to
+     * the counters of the aggregated number of followers of each user. Only
+     * the pairs which both have a city with coordinates are counted.
+     */
+    private static class DistanceWorker implements
+	    Callable<Map<Integer, long[]>> {
+	private final FollowerGraph followersNetwork;
+	private final IntIntMap idCityIndex;
+	private final CityGridIndex gridIndex;
+	private final AtomicInteger nextChunk;
+
+	DistanceWorker(FollowerGraph followersNetwork, IntIntMap idCityIndex,
+		CityGridIndex gridIndex, AtomicInteger nextChunk) {
+	    this.followersNetwork = followersNetwork;
+	    this.idCityIndex = idCityIndex;
+	    this.gridIndex = gridIndex;
+	    this.nextChunk = nextChunk;
+	}
+
+	@Override
+	public Map<Integer, long[]> call() {
+	    Map<Integer, long[]> counters = Maps.newHashMap();
+	    int numUsers = followersNetwork.getNumUsers();
+	    int chunk;
+	    while ((chunk = nextChunk.getAndIncrement()) * (long) CHUNK_ROWS
+		    < numUsers) {
+		int end = Math.min((chunk + 1) * CHUNK_ROWS, numUsers);
+		for (int row = chunk * CHUNK_ROWS; row < end; row++) {
+		    visitRow(row, counters);
+		}
+	    }
+	    return counters;
+	}
+
+	private void visitRow(int row, Map<Integer, long[]> counters) {
+	    int userCity = idCityIndex.get(followersNetwork.getUserId(row));
+	    if (userCity == UserProfileStore.UNKNOWN_LOCATION) {
+		return;
+	    }
+	    int key = FollowerDistributionAnalyze.aggregate(followersNetwork
+		    .getNumFollowers(row));
+	    long[] counter = counters.get(key);
+	    if (counter == null) {
+		counter = new long[BINS + NUM_BINS];
+		counters.put(key, counter);
+	    }
+	    int end = followersNetwork.getFollowersEnd(row);
+	    for (int i = followersNetwork.getFollowersStart(row); i < end; i++) {
+		double distance = gridIndex.distance(userCity,
+			idCityIndex.get(followersNetwork.getFollower(i)));
+		if (distance < 0) {
+		    continue;
+		}
+		counter[SUM] += Math.round(distance * 1000);
+		counter[PAIRS]++;
+		counter[BINS + Math.min((int) (distance / BIN_KM), NUM_BINS - 1)]++;
+	    }
+	}
+    }
+}
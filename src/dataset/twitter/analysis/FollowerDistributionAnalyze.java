@@ -1,382 +1,568 @@
-package dataset.twitter.analysis;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
-
-import dataset.chart.ChartUtils;
-import dataset.db.DBProvider;
-import dataset.utils.ConfReader;
-import dataset.utils.AnalyzeUtils;
-
-/**
- * Analyze locality and Number of followers.
- * 
- * @author qinjin.wang
- *
- */
-public class FollowerDistributionAnalyze implements IAnalyze {
-    private static final Logger logger = LogManager
-	    .getLogger(FollowerDistributionAnalyze.class);
-    
-    public static final String FOLLOWER_NUMBER = "1_follower_number_distribution";
-    public static final String FOLLOWER_REGION = "1_follower_region_distribution";
-    public static final String CACHED_FOLLOWER_NUMBER_FILE = "output/"
-	    + FOLLOWER_NUMBER + ".txt";
-    public static final String CACHED_FOLLOWER_REGION_FILE = "output/"
-	    + FOLLOWER_REGION + ".txt";
-    //Aggregation factor.
-    public static final int AGG_FACTOR= 100;
-    
-    // [Num followers, Num users]
-    private final Map<Integer, Integer> followerNumberDistribution;
-    // [Aggregated num followers, Num regions]
-    Map<Integer, Integer> followerRegionDistribution;
-
-    public FollowerDistributionAnalyze() {
-	followerNumberDistribution = Maps.newHashMap();
-	followerRegionDistribution = Maps.newHashMap();
-    }
-
-    @Override
-    public void executeAnalyze() {
-	logger.info("START ANALYZE " + this.getClass().getSimpleName());
-	ConfReader confReader = new ConfReader();
-	try {
-	    processFollowerNumbers(confReader);
-	    processFollowerRegions(confReader);
-	} catch (Exception ex) {
-	    logger.fatal("Error on " + this.getClass().getSimpleName());
-	    ex.printStackTrace();
-	}
-    }
-
-    private void processFollowerNumbers(ConfReader confReader) throws Exception {
-	final File followerNumberFile = new File(CACHED_FOLLOWER_NUMBER_FILE);
-	if (followerNumberFile.exists()) {
-	    logger.debug("Read follower number distribution from cached file");
-	    followerNumberDistribution.putAll(AnalyzeUtils
-		    .readFromFile(followerNumberFile));
-	} else {
-	    logger.debug("Start to process follower number distribution...");
-	    List<UserProfiler> allProfiles = confReader
-		    .getAllUserProfilers(DBProvider.getInstance()
-			    .getCityStateMap());
-	    followerNumberDistribution
-		    .putAll(calcFollowerNumberDistribution(allProfiles));
-	    AnalyzeUtils.saveToFile(followerNumberDistribution,
-		    followerNumberFile);
-	}
-    }
-
-    private void processFollowerRegions(ConfReader confReader) throws Exception {
-	final File followerRegionFile = new File(CACHED_FOLLOWER_REGION_FILE);
-	if (followerRegionFile.exists()) {
-	    logger.debug("Read follower region distribution from cached file");
-	    followerRegionDistribution.putAll(AnalyzeUtils
-		    .readFromFile(followerRegionFile));
-	} else {
-	    logger.debug("Start to process follower region distribution...");
-	    List<UserProfiler> allProfiles = confReader
-		    .getAllUserProfilers(DBProvider.getInstance()
-			    .getCityStateMap());
-	    File networkDir = confReader.getNetworkDir();
-	    if (networkDir.exists() && networkDir.isDirectory()) {
-		final Map<Integer, List<Integer>> followersNetwork = Maps
-			.newConcurrentMap();
-		processFollowerNetwork(networkDir, followersNetwork);
-		followerRegionDistribution.putAll(calcAggFollowerRegions(
-			allProfiles, followersNetwork));
-		AnalyzeUtils.saveToFile(followerRegionDistribution,
-			followerRegionFile);
-	    } else {
-		throw new Exception("Network dir not found: "
-			+ confReader.getNetworkDir());
-	    }
-	}
-    }
-
-    private void processFollowerNetwork(File networkDir,
-	    final Map<Integer, List<Integer>> followersNetwork)
-	    throws InterruptedException {
-	final ExecutorService executor = Executors.newCachedThreadPool();
-	final CountDownLatch latch = new CountDownLatch(
-		networkDir.list().length);
-	for (final File file : networkDir.listFiles()) {
-	    logger.debug("Start to process follower network file:"
-		    + file.getName());
-	    Runnable task = new Runnable() {
-
-		@Override
-		public void run() {
-		    try {
-			Map<Integer, List<Integer>> aggResult = AnalyzeUtils
-				.readAggratedFromFile(file, "\t");
-			followersNetwork.putAll(aggResult);
-		    } catch (IOException e) {
-			logger.fatal("Error on read aggragated id-followers");
-			e.printStackTrace();
-		    }
-
-		    latch.countDown();
-		}
-	    };
-
-	    executor.execute(task);
-
-	    // try {
-	    // Map<Integer, List<Integer>> aggResult = AnalyzeUtils
-	    // .readAggratedFromFile(file, "\t");
-	    // followersNetwork.putAll(aggResult);
-	    // } catch (IOException e) {
-	    // logger.fatal("Error on read aggragated id-followers");
-	    // e.printStackTrace();
-	    // }
-	}
-
-	latch.await();
-	executor.shutdown();
-	logger.info("Done process all follower network files");
-    }
-
-    @Override
-    public void drawResult() {
-	drawFollowerNumberDistribution();
-	drawFollowerRegionDistribution();
-	logger.info("DONE ANALYZE " + this.getClass().getSimpleName());
-    }
-
-    private void drawFollowerNumberDistribution() {
-	logger.info("Drawing follower number distribution...");
-	ChartUtils.drawChart("", "Follower number distribution",
-		"Number of followers", "Number of users", FOLLOWER_NUMBER,
-		AnalyzeUtils.simplefilter(-1, -1, -1, 1,
-			followerNumberDistribution));
-	// Filter to remove the follower number is bigger than 1999 and the user
-	// number is smaller than 2.
-	ChartUtils.drawChart("", "Follower number distribution",
-		"Number of followers", "Number of users", FOLLOWER_NUMBER
-			+ "_0_2000", AnalyzeUtils.simplefilter(2000, -1, -1, 1,
-			followerNumberDistribution));
-	
-
-	drawMinFollowersBarchart();
-	logger.info("Done drawing follower number distribution");
-    }
-
-    private void drawMinFollowersBarchart() {
-	int usersSum = 0;
-	Map<Integer, Integer> minFollowersMap = Maps.newTreeMap();
-	int min10FollowerUsers = 0;
-	int min100FollowerUsers = 0;
-	int min1000FollowerUsers = 0;
-	int min10000FollowerUsers = 0;
-	int min100000FollowerUsers = 0;
-	int min1000000FollowerUsers = 0;
-	for (Map.Entry<Integer, Integer> entry : followerNumberDistribution
-		.entrySet()) {
-	    usersSum += entry.getValue();
-	    if (entry.getKey() >= 10) {
-		min10FollowerUsers += entry.getValue();
-	    }
-	    if (entry.getKey() >= 100) {
-		min100FollowerUsers += entry.getValue();
-	    }
-	    if (entry.getKey() >= 1000) {
-		min1000FollowerUsers += entry.getValue();
-	    }
-	    if (entry.getKey() >= 10000) {
-		min10000FollowerUsers += entry.getValue();
-	    }
-	    if (entry.getKey() >= 100000) {
-		min100000FollowerUsers += entry.getValue();
-	    }
-	    if (entry.getKey() >= 1000000) {
-		min1000000FollowerUsers += entry.getValue();
-	    }
-	}
-
-	minFollowersMap.put(10, min10FollowerUsers);
-	minFollowersMap.put(100, min100FollowerUsers);
-	minFollowersMap.put(1000, min1000FollowerUsers);
-	minFollowersMap.put(10000, min10000FollowerUsers);
-	minFollowersMap.put(100000, min100000FollowerUsers);
-	minFollowersMap.put(1000000, min1000000FollowerUsers);
-
-	logger.info("Num of total users analyzed: " + usersSum
-		+ ". Num users at least have 10 followers: "
-		+ min10FollowerUsers
-		+ ". Num users at least have 100 followers: "
-		+ min100FollowerUsers
-		+ ". Num users at least have 1000 followers: "
-		+ min1000FollowerUsers
-		+ ". Num users at least have 10000 followers: "
-		+ min10000FollowerUsers
-		+ ". Num users at least have 100000 followers: "
-		+ min100000FollowerUsers
-		+ ". Num users at least have 1000000 followers: "
-		+ min1000000FollowerUsers);
-
-	ChartUtils.drawBarChart("", "Follower number distribution",
-		"Min number of followers", "Number of users", FOLLOWER_NUMBER
-			+ "_bar", minFollowersMap);
-    }
-    
-    private void drawFollowerRegionDistribution() {
-	logger.info("Drawing follower region distribution...");
-	ChartUtils.drawChart("", "Follower region distribution",
-		"Number of followers", "Number of regions", FOLLOWER_REGION,
-		AnalyzeUtils.simplefilter(-1, -1, -1, -1,
-			followerRegionDistribution));
-	// Filter to remove the follower number is bigger than 1999 and the user
-	// number is smaller than 2.
-	ChartUtils.drawChart("", "Follower region distribution",
-		"Number of followers", "Number of regions", FOLLOWER_REGION
-			+ "_0_2000", AnalyzeUtils.simplefilter(2000, -1, -1,
-			-1, followerRegionDistribution));
-
-	ChartUtils.drawBarChart("", "Follower region distribution",
-		"Number of followers", "Number of regions", FOLLOWER_REGION
-			+ "_bar_0_5000", AnalyzeUtils.simplefilter(-1, -1, -1,
-			-1, followerRegionDistribution), AGG_FACTOR, 5000);
-
-	ChartUtils.drawBarChart("", "Follower region distribution",
-		"Number of followers", "Number of regions", FOLLOWER_REGION
-			+ "_bar", AnalyzeUtils.simplefilter(-1, -1, -1, -1,
-			followerRegionDistribution), AGG_FACTOR, 12000);
-
-	logger.info("Done drawing follower region distribution");
-    }
-
-    /**
-     * Calculate follower number distribution which will return [Number of
-     * followers, number of user has that number of followers]
-     */
-    private Map<Integer, Integer> calcFollowerNumberDistribution(
-	    List<UserProfiler> allProfiles) {
-	Map<Integer, Integer> followersDistributionMap = Maps.newHashMap();
-	for (UserProfiler user : allProfiles) {
-	    if (followersDistributionMap.get(user.followers) == null) {
-		followersDistributionMap.put(user.followers, 1);
-	    } else {
-		int numUser = followersDistributionMap.get(user.followers) + 1;
-		followersDistributionMap.put(user.followers, numUser);
-	    }
-	}
-	return followersDistributionMap;
-    }
-
-    private Map<Integer, Integer> calcAggFollowerRegions(
-	    List<UserProfiler> allProfiles,
-	    Map<Integer, List<Integer>> followersNetwork) {
-	Map<Integer, Set<String>> aggFollowerRegionMap = Maps.newHashMap();
-	Map<Integer, Set<String>> followersRegionMap = Maps.newHashMap();
-	Map<Integer, Integer> counterMap = Maps.newHashMap();
-	Map<Integer, Integer> aggCounterMap = Maps.newHashMap();
-	Map<Integer, Integer> resultMap = Maps.newHashMap();
-	Map<Integer, String> idRegionMap = createIDRegionMap(allProfiles);
-
-	for (Map.Entry<Integer, List<Integer>> entry : followersNetwork
-		.entrySet()) {
-	    Integer id = entry.getKey();
-	    List<Integer> followersID = entry.getValue();
-	    int numFollowers = followersID.size();
-	    if (followersRegionMap.get(numFollowers) == null) {
-		counterMap.put(numFollowers, 1);
-		followersRegionMap.put(numFollowers,
-			getDifferentRegions(id, followersID, idRegionMap));
-	    } else {
-		int newCounter = counterMap.get(numFollowers) + 1;
-		counterMap.put(numFollowers, newCounter);
-		followersRegionMap.get(numFollowers).addAll(
-			getDifferentRegions(id, followersID, idRegionMap));
-	    }
-	}
-
-	for (Map.Entry<Integer, Set<String>> entry : followersRegionMap
-		.entrySet()) {
-	    int key = entry.getKey();
-	    // Round the aggregated key.
-	    if ((key % AGG_FACTOR) > (AGG_FACTOR/2)) {
-		key = key + (AGG_FACTOR - key % AGG_FACTOR);
-	    } else {
-		key = key - key % AGG_FACTOR;
-	    }
-
-	    if (aggFollowerRegionMap.get(key) == null) {
-		aggFollowerRegionMap.put(key, entry.getValue());
-	    } else {
-		aggFollowerRegionMap.get(key).addAll(entry.getValue());
-	    }
-	}
-
-	for (Map.Entry<Integer, Integer> entry : counterMap.entrySet()) {
-	    int key = entry.getKey();
-	    // Round the aggregated key.
-	    if ((key % AGG_FACTOR) > (AGG_FACTOR/2)) {
-		key = key + (AGG_FACTOR - key % AGG_FACTOR);
-	    } else {
-		key = key - key % AGG_FACTOR;
-	    }
-
-	    if (aggCounterMap.get(key) == null) {
-		aggCounterMap.put(key, entry.getValue());
-	    } else {
-		int newCounter = aggCounterMap.get(key) + entry.getValue();
-		aggCounterMap.put(key, newCounter);
-	    }
-	}
-
-	Iterator<Entry<Integer, Set<String>>> iter = aggFollowerRegionMap
-		.entrySet().iterator();
-	while (iter.hasNext()) {
-	    Entry<Integer, Set<String>> next = iter.next();
-	    if (aggCounterMap.get(next.getKey()) != null) {
-		int value = next.getValue().size()
-			/ aggCounterMap.get(next.getKey()) == 0 ? 1 : next
-			.getValue().size() / aggCounterMap.get(next.getKey());
-		resultMap.put(next.getKey(), value);
-	    } else {
-		logger.fatal("A key not found in counter map: " + next.getKey());
-	    }
-
-	}
-
-	return resultMap;
-    }
-
-    private Map<Integer, String> createIDRegionMap(
-	    List<UserProfiler> allProfiles) {
-	Map<Integer, String> idRegionMap = Maps.newHashMap();
-	for (UserProfiler user : allProfiles) {
-	    idRegionMap.put(user.id, user.location);
-	}
-	return idRegionMap;
-    }
-
-    private Set<String> getDifferentRegions(Integer id,
-	    List<Integer> followersID, Map<Integer, String> idRegionMap) {
-	String userRegion = idRegionMap.get(id);
-	Set<String> regions = Sets.newHashSet();
-	for (Integer followerId : followersID) {
-	    String followerRegion = idRegionMap.get(followerId);
-	    if (userRegion != null && !userRegion.equals(followerRegion)) {
-		regions.add(followerRegion);
-	    }
-	}
-	return regions;
-    }
-}
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+import dataset.chart.ChartUtils;
+import dataset.db.DBProvider;
+import dataset.sketch.Histogram;
+import dataset.sketch.HyperLogLog;
+import dataset.sketch.KeyGrid;
+import dataset.twitter.network.FollowerGraph;
+import dataset.utils.ConfReader;
+import dataset.utils.AnalyzeUtils;
+import dataset.utils.InputFingerprint;
+import dataset.utils.IntIntMap;
+import dataset.utils.ResultCache;
+import dataset.utils.ResultSeries;
+
+/**
+ * Analyze locality and Number of followers.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class FollowerDistributionAnalyze implements IScanAnalyze {
+    private static final Logger logger = LogManager
+	    .getLogger(FollowerDistributionAnalyze.class);
+    
+    public static final String FOLLOWER_NUMBER = "1_follower_number_distribution";
+    public static final String FOLLOWER_REGION = "1_follower_region_distribution";
+    public static final String CACHED_FOLLOWER_NUMBER_FILE = "output/"
+	    + FOLLOWER_NUMBER + ".dat";
+    public static final String CACHED_FOLLOWER_REGION_FILE = "output/"
+	    + FOLLOWER_REGION + ".dat";
+    //Aggregation factor.
+    public static final int AGG_FACTOR= 100;
+    // Bump when the calculation changes, so the cached results are
+    // recomputed.
+    private static final int RESULT_VERSION = 1;
+    // Grid of the approximate mode, numbers of followers from the exact limit
+    // on are binned to cells of about 5%.
+    private static final int SKETCH_EXACT_LIMIT = 2000;
+    private static final int SKETCH_CELLS_PER_DECADE = 48;
+    
+    // [Num followers, Num users]
+    private Histogram followerNumberDistribution;
+    // [Aggregated num followers, Num regions]
+    ResultSeries followerRegionDistribution;
+
+    // If the visitors are registered to a scan.
+    private boolean visitorsRegistered;
+    // Fingerprints of the inputs, null if the inputs can not be fingerprinted
+    // and the results are not cached.
+    private String followerNumberFingerprint;
+    private String followerRegionFingerprint;
+    // Accumulators of the scan, null if the result is read from cache.
+    private IntIntMap followerNumberCounter;
+    private FollowerRegionAccumulator followerRegionAccumulator;
+    // Sketches of the approximate mode, null in the exact mode.
+    private SketchAccumulator sketchAccumulator;
+    // If the accumulators missed some of the data.
+    private boolean scanFailed;
+    // Error bounds of the approximate results shown on the charts, null for
+    // exact results.
+    private String followerNumberBounds;
+    private String followerRegionBounds;
+
+    public FollowerDistributionAnalyze() {
+	followerNumberDistribution = new Histogram();
+	followerRegionDistribution = new ResultSeries();
+    }
+
+    @Override
+    public void registerVisitors(ScanEngine scanEngine) {
+	ConfReader confReader = scanEngine.getConfReader();
+	visitorsRegistered = true;
+	if (confReader.isApproximateMode()) {
+	    // The approximate results are not cached, they are quick to get.
+	    logger.debug("Start to sketch follower distributions...");
+	    sketchAccumulator = new SketchAccumulator();
+	    scanEngine.addProfileVisitor(sketchAccumulator);
+	    scanEngine.addSegmentVisitor(sketchAccumulator);
+	    return;
+	}
+	try {
+	    followerNumberFingerprint = new InputFingerprint()
+		    .addFile(confReader.getProfilerFile())
+		    .addParam("analyze", FOLLOWER_NUMBER)
+		    .addParam("version", RESULT_VERSION).build();
+	    followerRegionFingerprint = regionInputs(confReader)
+		    .addParam("analyze", FOLLOWER_REGION)
+		    .addParam("aggFactor", AGG_FACTOR)
+		    .addParam("version", RESULT_VERSION).build();
+	} catch (IOException e) {
+	    logger.fatal("Can not fingerprint the inputs: " + e.getMessage());
+	    followerNumberFingerprint = null;
+	    followerRegionFingerprint = null;
+	}
+
+	ResultSeries cachedNumbers = ResultCache.readSeries(new File(
+		CACHED_FOLLOWER_NUMBER_FILE), followerNumberFingerprint);
+	if (cachedNumbers != null) {
+	    logger.debug("Read follower number distribution from cached file");
+	    followerNumberDistribution = new Histogram(
+		    KeyGrid.of(cachedNumbers.keys()));
+	    for (int i = 0; i < cachedNumbers.size(); i++) {
+		followerNumberDistribution.add(cachedNumbers.getKey(i),
+			(long) cachedNumbers.getValue(i));
+	    }
+	} else {
+	    logger.debug("Start to process follower number distribution...");
+	    followerNumberCounter = new IntIntMap(1024, 0);
+	    scanEngine.addProfileVisitor(new IProfileVisitor() {
+		@Override
+		public void visitProfile(UserProfileStore profileStore, int row) {
+		    followerNumberCounter.addTo(
+			    profileStore.getFollowers(row), 1);
+		}
+	    });
+	}
+	ResultSeries cachedRegions = ResultCache.readSeries(new File(
+		CACHED_FOLLOWER_REGION_FILE), followerRegionFingerprint);
+	if (cachedRegions != null) {
+	    logger.debug("Read follower region distribution from cached file");
+	    followerRegionDistribution = cachedRegions;
+	} else {
+	    logger.debug("Start to process follower region distribution...");
+	    followerRegionAccumulator = new FollowerRegionAccumulator();
+	    followerRegionAccumulator.register(scanEngine);
+	}
+    }
+
+    /**
+     * @return The fingerprint of the inputs of the follower regions: the
+     *         profiles, the network and the city dictionary.
+     */
+    static InputFingerprint regionInputs(ConfReader confReader)
+	    throws IOException {
+	InputFingerprint regionInputs = new InputFingerprint().addFile(
+		confReader.getProfilerFile()).addDir(confReader.getNetworkDir());
+	// The regions depend on the city dictionary.
+	DBProvider dbProvider = DBProvider.getInstance();
+	if (dbProvider.isEmbedded()) {
+	    regionInputs.addFile(dbProvider.getCitiesFile());
+	} else {
+	    regionInputs.addParam("cities", "database");
+	}
+	return regionInputs;
+    }
+
+    @Override
+    public void scanFailed(Exception cause) {
+	scanFailed = true;
+    }
+
+    @Override
+    public void executeAnalyze() {
+	logger.info("START ANALYZE " + this.getClass().getSimpleName());
+	try {
+	    if (!visitorsRegistered) {
+		// Not scanned together with other analyses.
+		ScanEngine scanEngine = new ScanEngine(new ConfReader());
+		registerVisitors(scanEngine);
+		scanEngine.run();
+	    }
+	    if (sketchAccumulator != null) {
+		if (scanFailed) {
+		    logger.fatal("Skip the follower sketches, the scan failed");
+		} else {
+		    processSketches(sketchAccumulator);
+		}
+	    } else {
+		processFollowerNumbers();
+		processFollowerRegions();
+	    }
+	} catch (Exception ex) {
+	    logger.fatal("Error on " + this.getClass().getSimpleName());
+	    ex.printStackTrace();
+	} finally {
+	    visitorsRegistered = false;
+	    followerNumberFingerprint = null;
+	    followerRegionFingerprint = null;
+	    followerNumberCounter = null;
+	    followerRegionAccumulator = null;
+	    sketchAccumulator = null;
+	    scanFailed = false;
+	}
+    }
+
+    private void processSketches(SketchAccumulator sketches) {
+	followerNumberDistribution = sketches.followerNumbers;
+	Histogram regionSegments = sketches.regionSegments;
+	Map<Integer, Integer> regions = Maps.newHashMap();
+	for (int cell = 0; cell < regionSegments.getNumCells(); cell++) {
+	    long numSegments = regionSegments.getCount(cell);
+	    if (numSegments > 0) {
+		int numRegions = RegionMask.count(sketches.regionMasks, cell
+			* RegionMask.WORDS);
+		int value = (int) (numRegions / numSegments);
+		regions.put(regionSegments.getCellKey(cell), value == 0 ? 1
+			: value);
+	    }
+	}
+	followerRegionDistribution = ResultSeries.of(regions);
+
+	String binning = String.format(
+		"Approximate: above %d followers each point is a bin of %.1f%%",
+		SKETCH_EXACT_LIMIT, followerNumberDistribution.getGrid()
+			.getRelativeCellWidth() * 100);
+	followerNumberBounds = String.format(
+		"%s, %d profiles of %d \u00B1%.1f%% distinct users", binning,
+		sketches.numProfiles, sketches.profileUsers.cardinality(),
+		sketches.profileUsers.getRelativeError() * 100);
+	followerRegionBounds = String.format(
+		"%s, %d user segments of %d \u00B1%.1f%% distinct users",
+		binning, sketches.numSegments,
+		sketches.networkUsers.cardinality(),
+		sketches.networkUsers.getRelativeError() * 100);
+	logger.info(followerNumberBounds);
+	logger.info(followerRegionBounds);
+	if (followerNumberDistribution.getNumRejected() > 0) {
+	    logger.warn("Ignored " + followerNumberDistribution.getNumRejected()
+		    + " profiles with a negative number of followers");
+	}
+    }
+
+    private void processFollowerNumbers() throws Exception {
+	final File followerNumberFile = new File(CACHED_FOLLOWER_NUMBER_FILE);
+	if (followerNumberCounter == null) {
+	    // Read from the cached file when the visitors were registered.
+	    return;
+	}
+	if (scanFailed) {
+	    logger.fatal("Skip follower number distribution, the scan failed");
+	} else {
+	    followerNumberDistribution = calcFollowerNumberDistribution(followerNumberCounter);
+	    ResultCache.invalidate(followerNumberFile);
+	    AnalyzeUtils.saveToFile(followerNumberDistribution.toSeries(),
+		    followerNumberFile);
+	    ResultCache.commit(followerNumberFile, followerNumberFingerprint);
+	}
+    }
+
+    private void processFollowerRegions() throws Exception {
+	final File followerRegionFile = new File(CACHED_FOLLOWER_REGION_FILE);
+	if (followerRegionAccumulator == null) {
+	    // Read from the cached file when the visitors were registered.
+	    return;
+	}
+	if (scanFailed) {
+	    logger.fatal("Skip follower region distribution, the scan failed");
+	} else {
+	    followerRegionDistribution = ResultSeries.of(calcAggFollowerRegions(
+		    followerRegionAccumulator, AGG_FACTOR));
+	    ResultCache.invalidate(followerRegionFile);
+	    AnalyzeUtils.saveToFile(followerRegionDistribution,
+		    followerRegionFile);
+	    ResultCache.commit(followerRegionFile, followerRegionFingerprint);
+	}
+    }
+
+    @Override
+    public void drawResult() {
+	drawFollowerNumberDistribution();
+	drawFollowerRegionDistribution();
+	logger.info("DONE ANALYZE " + this.getClass().getSimpleName());
+    }
+
+    private void drawFollowerNumberDistribution() {
+	logger.info("Drawing follower number distribution...");
+	ResultSeries followerNumbers = followerNumberDistribution.toSeries();
+	ChartUtils.drawChart("", "Follower number distribution",
+		followerNumberBounds, "Number of followers", "Number of users",
+		FOLLOWER_NUMBER,
+		AnalyzeUtils.simplefilter(-1, -1, -1, 1, followerNumbers));
+	// Filter to remove the follower number is bigger than 1999 and the user
+	// number is smaller than 2.
+	ChartUtils.drawChart("", "Follower number distribution",
+		followerNumberBounds, "Number of followers", "Number of users",
+		FOLLOWER_NUMBER + "_0_2000", AnalyzeUtils.simplefilter(2000, -1, -1, 1,
+			followerNumbers));
+	
+
+	drawMinFollowersBarchart();
+	logger.info("Done drawing follower number distribution");
+    }
+
+    private void drawMinFollowersBarchart() {
+	// The powers of ten start a cell of the grids, so the counts are exact.
+	Map<Integer, Integer> minFollowersMap = Maps.newTreeMap();
+	StringBuilder numUsers = new StringBuilder("Num of total users analyzed: ")
+		.append(followerNumberDistribution.getTotal());
+	for (int minFollowers = 10; minFollowers <= 1000000; minFollowers *= 10) {
+	    long minFollowerUsers = followerNumberDistribution
+		    .countAtLeast(minFollowers);
+	    minFollowersMap.put(minFollowers,
+		    (int) Math.min(minFollowerUsers, Integer.MAX_VALUE));
+	    numUsers.append(". Num users at least have ").append(minFollowers)
+		    .append(" followers: ").append(minFollowerUsers);
+	}
+	logger.info(numUsers);
+
+	ChartUtils.drawBarChart("", "Follower number distribution",
+		"Min number of followers", "Number of users", FOLLOWER_NUMBER
+			+ "_bar", minFollowersMap);
+    }
+    
+    private void drawFollowerRegionDistribution() {
+	logger.info("Drawing follower region distribution...");
+	ChartUtils.drawChart("", "Follower region distribution",
+		followerRegionBounds, "Number of followers",
+		"Number of regions", FOLLOWER_REGION,
+		AnalyzeUtils.simplefilter(-1, -1, -1, -1,
+			followerRegionDistribution));
+	// Filter to remove the follower number is bigger than 1999 and the user
+	// number is smaller than 2.
+	ChartUtils.drawChart("", "Follower region distribution",
+		followerRegionBounds, "Number of followers",
+		"Number of regions", FOLLOWER_REGION + "_0_2000", AnalyzeUtils.simplefilter(2000, -1, -1,
+			-1, followerRegionDistribution));
+
+	ChartUtils.drawBarChart("", "Follower region distribution",
+		followerRegionBounds, "Number of followers",
+		"Number of regions", FOLLOWER_REGION + "_bar_0_5000", AnalyzeUtils.simplefilter(-1, -1, -1,
+			-1, followerRegionDistribution), AGG_FACTOR, 5000);
+
+	ChartUtils.drawBarChart("", "Follower region distribution",
+		followerRegionBounds, "Number of followers",
+		"Number of regions", FOLLOWER_REGION + "_bar", AnalyzeUtils.simplefilter(-1, -1, -1, -1,
+			followerRegionDistribution), AGG_FACTOR, 12000);
+
+	logger.info("Done drawing follower region distribution");
+    }
+
+    /**
+     * Calculate follower number distribution which will return [Number of
+     * followers, number of user has that number of followers]. The grid has
+     * a cell for each number of followers, so the memory does not depend on
+     * the largest number.
+     */
+    private Histogram calcFollowerNumberDistribution(IntIntMap counterMap) {
+	int[] numFollowers = counterMap.keys();
+	Histogram distribution = new Histogram(KeyGrid.of(numFollowers));
+	for (int key : numFollowers) {
+	    distribution.add(key, counterMap.get(key));
+	}
+	return distribution;
+    }
+
+    /**
+     * Aggregate the slots of the accumulator to [Aggregated num followers,
+     * num regions per user]. The slots keep the exact numbers of followers,
+     * so one accumulator is aggregated by any factor.
+     */
+    static Map<Integer, Integer> calcAggFollowerRegions(
+	    FollowerRegionAccumulator accumulator, int aggFactor) {
+	if (aggFactor < 1) {
+	    throw new IllegalArgumentException("Invalid aggregation factor "
+		    + aggFactor);
+	}
+	int[] aggKeys = new int[accumulator.numSlots];
+	for (int slot = 0; slot < accumulator.numSlots; slot++) {
+	    aggKeys[slot] = aggregate(accumulator.slotKeys[slot], aggFactor);
+	}
+	// [Aggregated num followers, num users] and the region masks of the
+	// cells, a cell for each aggregated key, whatever the factor is.
+	Histogram aggCounters = new Histogram(KeyGrid.of(aggKeys));
+	long[] aggMasks = new long[aggCounters.getNumCells() * RegionMask.WORDS];
+	KeyGrid grid = aggCounters.getGrid();
+	for (int slot = 0; slot < accumulator.numSlots; slot++) {
+	    aggCounters.add(aggKeys[slot], accumulator.slotCounters[slot]);
+	    RegionMask.or(aggMasks, grid.cellOf(aggKeys[slot])
+		    * RegionMask.WORDS, accumulator.slotMasks, slot
+		    * RegionMask.WORDS);
+	}
+
+	Map<Integer, Integer> resultMap = Maps.newHashMap();
+	for (int cell = 0; cell < aggCounters.getNumCells(); cell++) {
+	    long numUsers = aggCounters.getCount(cell);
+	    if (numUsers > 0) {
+		int numRegions = RegionMask.count(aggMasks, cell
+			* RegionMask.WORDS);
+		int value = (int) (numRegions / numUsers);
+		resultMap.put(aggCounters.getCellKey(cell), value == 0 ? 1
+			: value);
+	    }
+	}
+	return resultMap;
+    }
+
+    // Round the number of followers to the aggregated key.
+    static int aggregate(int key) {
+	return aggregate(key, AGG_FACTOR);
+    }
+
+    static int aggregate(int key, int aggFactor) {
+	if ((key % aggFactor) > (aggFactor/2)
+		&& key <= Integer.MAX_VALUE - (aggFactor - key % aggFactor)) {
+	    return key + (aggFactor - key % aggFactor);
+	}
+	return key - key % aggFactor;
+    }
+
+    /**
+     * Collect [Num followers, regions of the followers] and [Num followers,
+     * num users] from the follower network, either the loaded graph or the
+     * externally sorted segments. Each distinct number of followers gets a
+     * slot, the regions of the slot are a RegionMask, so visiting a user
+     * allocates nothing.
+     */
+    static class FollowerRegionAccumulator implements
+	    INetworkVisitor, ISegmentVisitor {
+	// [Num followers, slot]
+	private final IntIntMap slotIndex = new IntIntMap(1024, -1);
+	private int[] slotKeys = new int[1024];
+	private int[] slotCounters = new int[1024];
+	private long[] slotMasks = new long[1024 * RegionMask.WORDS];
+	private int numSlots;
+
+	/**
+	 * Visit the network as segments or as the loaded graph, whichever the
+	 * scan engine runs in the exact mode.
+	 */
+	void register(ScanEngine scanEngine) {
+	    ConfReader confReader = scanEngine.getConfReader();
+	    if ((confReader.isExternalSortEnabled() || confReader
+		    .isPipelineEnabled()) && !confReader.isApproximateMode()) {
+		// The network may not fit in the heap, or it is streamed
+		// through the pipeline while the profiles are parsed.
+		scanEngine.addSegmentVisitor(this);
+	    } else {
+		// The streamed segments of the approximate mode could split a
+		// user, the graph always has all followers of a user.
+		scanEngine.addNetworkVisitor(this);
+	    }
+	}
+
+	int getNumUsers() {
+	    int numUsers = 0;
+	    for (int slot = 0; slot < numSlots; slot++) {
+		numUsers += slotCounters[slot];
+	    }
+	    return numUsers;
+	}
+
+	@Override
+	public void visitFollowers(FollowerGraph followersNetwork, int row,
+		IntIntMap idLocationIndex) {
+	    int slot = countSlot(followersNetwork.getNumFollowers(row));
+	    addDifferentRegions(followersNetwork, row, idLocationIndex,
+		    slotMasks, slot * RegionMask.WORDS);
+	}
+
+	@Override
+	public void visitSegment(int userId, int[] followers,
+		int numFollowers, IntIntMap idLocationIndex) {
+	    int slot = countSlot(numFollowers);
+	    addDifferentRegions(userId, followers, numFollowers,
+		    idLocationIndex, slotMasks, slot * RegionMask.WORDS);
+	}
+
+	// Count the user to the slot of the number of followers.
+	private int countSlot(int numFollowers) {
+	    int slot = slotIndex.get(numFollowers);
+	    if (slot < 0) {
+		slot = newSlot(numFollowers);
+	    }
+	    slotCounters[slot]++;
+	    return slot;
+	}
+
+	private int newSlot(int numFollowers) {
+	    if (numSlots == slotKeys.length) {
+		int capacity = numSlots * 2;
+		slotKeys = Arrays.copyOf(slotKeys, capacity);
+		slotCounters = Arrays.copyOf(slotCounters, capacity);
+		slotMasks = Arrays.copyOf(slotMasks, capacity * RegionMask.WORDS);
+	    }
+	    int slot = numSlots++;
+	    slotKeys[slot] = numFollowers;
+	    slotIndex.put(numFollowers, slot);
+	    return slot;
+	}
+    }
+
+    // The id region map is [User ID, location code], unknown users and
+    // locations are mapped to UserProfileStore.UNKNOWN_LOCATION. The regions
+    // of the followers which differ from the user's region are added to the
+    // mask at the offset.
+    private static void addDifferentRegions(FollowerGraph followersNetwork,
+	    int row, IntIntMap idRegionMap, long[] masks, int offset) {
+	int userRegion = idRegionMap.get(followersNetwork.getUserId(row));
+	if (userRegion == UserProfileStore.UNKNOWN_LOCATION) {
+	    return;
+	}
+	int end = followersNetwork.getFollowersEnd(row);
+	for (int i = followersNetwork.getFollowersStart(row); i < end; i++) {
+	    int followerRegion = idRegionMap.get(followersNetwork
+		    .getFollower(i));
+	    if (userRegion != followerRegion) {
+		RegionMask.add(masks, offset, followerRegion);
+	    }
+	}
+    }
+
+    // Same as the above for the followers of a segment.
+    private static void addDifferentRegions(int userId, int[] followers,
+	    int numFollowers, IntIntMap idRegionMap, long[] masks, int offset) {
+	int userRegion = idRegionMap.get(userId);
+	if (userRegion == UserProfileStore.UNKNOWN_LOCATION) {
+	    return;
+	}
+	for (int i = 0; i < numFollowers; i++) {
+	    int followerRegion = idRegionMap.get(followers[i]);
+	    if (userRegion != followerRegion) {
+		RegionMask.add(masks, offset, followerRegion);
+	    }
+	}
+    }
+
+    /**
+     * Sketches of the approximate mode: users per number of followers and
+     * regions per aggregated number of followers over fixed key grids, plus
+     * the distinct users seen. The memory does not depend on the size of the
+     * network.
+     */
+    private static class SketchAccumulator implements IProfileVisitor,
+	    ISegmentVisitor {
+	private final KeyGrid followerGrid = new KeyGrid(SKETCH_EXACT_LIMIT, 1,
+		SKETCH_CELLS_PER_DECADE);
+	private final KeyGrid regionGrid = new KeyGrid(SKETCH_EXACT_LIMIT,
+		AGG_FACTOR, SKETCH_CELLS_PER_DECADE);
+	private final Histogram followerNumbers = new Histogram(followerGrid);
+	private final Histogram regionSegments = new Histogram(regionGrid);
+	private final long[] regionMasks = new long[regionGrid.getNumCells()
+		* RegionMask.WORDS];
+	private final HyperLogLog profileUsers = new HyperLogLog();
+	private final HyperLogLog networkUsers = new HyperLogLog();
+	private long numProfiles;
+	private long numSegments;
+
+	@Override
+	public void visitProfile(UserProfileStore profileStore, int row) {
+	    numProfiles++;
+	    profileUsers.add(profileStore.getId(row));
+	    followerNumbers.add(profileStore.getFollowers(row));
+	}
+
+	@Override
+	public void visitSegment(int userId, int[] followers,
+		int numFollowers, IntIntMap idLocationIndex) {
+	    numSegments++;
+	    networkUsers.add(userId);
+	    int key = aggregate(numFollowers);
+	    int cell = regionGrid.cellOf(key);
+	    regionSegments.add(key);
+	    addDifferentRegions(userId, followers, numFollowers,
+		    idLocationIndex, regionMasks, cell * RegionMask.WORDS);
+	}
+    }
+}
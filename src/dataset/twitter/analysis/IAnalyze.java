@@ -1,6 +1,6 @@
-package dataset.twitter.analysis;
-
-public interface IAnalyze {
-	public void executeAnalyze();
-	public void drawResult();
-}
+package dataset.twitter.analysis;
+
+public interface IAnalyze {
+	public void executeAnalyze();
+	public void drawResult();
+}
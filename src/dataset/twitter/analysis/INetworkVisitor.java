@@ -0,0 +1,13 @@
+package dataset.twitter.analysis;
+
+import dataset.twitter.network.FollowerGraph;
+import dataset.utils.IntIntMap;
+
+/**
+ * Visitor of the follower network, called once per user with followers by the
+ * ScanEngine. The index maps user IDs to their location codes.
+ */
+public interface INetworkVisitor {
+	public void visitFollowers(FollowerGraph followersNetwork, int row,
+			IntIntMap idLocationIndex);
+}
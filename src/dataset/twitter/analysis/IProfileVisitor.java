@@ -0,0 +1,8 @@
+package dataset.twitter.analysis;
+
+/**
+ * Visitor of the user profiles, called once per profile by the ScanEngine.
+ */
+public interface IProfileVisitor {
+	public void visitProfile(UserProfileStore profileStore, int row);
+}
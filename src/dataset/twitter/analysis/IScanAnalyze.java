@@ -0,0 +1,16 @@
+package dataset.twitter.analysis;
+
+/**
+ * An analyze computed from the shared scans of the ScanEngine. The visitors
+ * are registered before the scan, and executeAnalyze() collects the result
+ * after the scan.
+ */
+public interface IScanAnalyze extends IAnalyze {
+	public void registerVisitors(ScanEngine scanEngine);
+
+	/**
+	 * Called before executeAnalyze() if the scan failed, the visitors have
+	 * not seen all data, so their results must not be saved.
+	 */
+	public void scanFailed(Exception cause);
+}
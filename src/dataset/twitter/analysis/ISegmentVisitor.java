@@ -0,0 +1,16 @@
+package dataset.twitter.analysis;
+
+import dataset.utils.IntIntMap;
+
+/**
+ * Visitor of the streamed follower network, called once per segment of the
+ * followers of a user. In the approximate mode the network is streamed in
+ * file order and a segment is consecutive lines of the same user, which could
+ * be split. In the exact mode, with or without the SegmentPipeline, the
+ * network is sorted, so a segment has all followers of its user. The followers array is reused,
+ * only the first numFollowers are valid during the call.
+ */
+public interface ISegmentVisitor {
+	public void visitSegment(int userId, int[] followers, int numFollowers,
+			IntIntMap idLocationIndex);
+}
@@ -1,102 +1,206 @@
-package dataset.twitter.analysis;
-
-import java.io.File;
-import java.util.List;
-import java.util.Map;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-
-import com.google.common.collect.Maps;
-
-import dataset.chart.ChartUtils;
-import dataset.db.DBProvider;
-import dataset.utils.ConfReader;
-import dataset.utils.AnalyzeUtils;
-
-/**
- * Analyze num of tweets and num of followers: If there are more followers for a
- * user, there will be more tweets created by the user.
- * 
- * @author qinjin.wang
- *
- */
-public class NumTweetsAnalyze implements IAnalyze {
-    private static final Logger logger = LogManager.getLogger(NumTweetsAnalyze.class);
-    public static final String FOLLOWER_TWEETS_DISTRIBUTION = "2_follower_tweets_distribution";
-    public static final String CACHED_TWEETS_NUMBER_FILE = "output/"+FOLLOWER_TWEETS_DISTRIBUTION+".txt";
-    //[Num of followers, Avg tweets]
-    private final Map<Integer, Integer> followerNumberTweetsMap = Maps
-	    .newHashMap();
-
-    @Override
-    public void executeAnalyze() {
-	logger.info("START ANALYZE "+this.getClass().getSimpleName());
-	try {
-	    final File tweetsNumberFile = new File(CACHED_TWEETS_NUMBER_FILE);
-	    if (tweetsNumberFile.exists()) {
-		logger.debug("Read tweets number distribution from cached file");
-		followerNumberTweetsMap.putAll(AnalyzeUtils
-			.readFromFile(tweetsNumberFile));
-	    } else {
-		logger.debug("Start to process tweets number distribution");
-		ConfReader confReader = new ConfReader();
-		List<UserProfiler> allProfilers = confReader
-			.getAllUserProfilers(DBProvider.getInstance()
-				.getCityStateMap());
-		followerNumberTweetsMap
-			.putAll(calcFollowerNumTweetsMap(allProfilers));
-		AnalyzeUtils.saveToFile(followerNumberTweetsMap,
-			tweetsNumberFile);
-	    }
-
-	} catch (Exception ex) {
-	    logger.fatal("Error on " + this.getClass().getSimpleName());
-	    ex.printStackTrace();
-	}
-    }
-
-    @Override
-    public void drawResult() {
-	logger.info("Drawing follower tweets distribution...");
-	ChartUtils.drawChart("", "Follower and Tweets number distribution",
-		"Number of followers", "Avg number of tweets",
-		FOLLOWER_TWEETS_DISTRIBUTION, AnalyzeUtils.simplefilter(-1,
-			-1, -1, -1, followerNumberTweetsMap));
-	ChartUtils.drawChart("", "Follower and Tweets number distribution",
-		"Number of followers", "Avg number tweets",
-		FOLLOWER_TWEETS_DISTRIBUTION+"_0_2000", AnalyzeUtils.simplefilter(2000,
-			-1, -1, -1, followerNumberTweetsMap));
-	ChartUtils.drawChart("", "Follower and Tweets number distribution",
-		"Number of followers", "Avg number tweets",
-		FOLLOWER_TWEETS_DISTRIBUTION+"_0_100000", AnalyzeUtils.simplefilter(100000,
-			-1, -1, -1, followerNumberTweetsMap));
-	logger.info("DOND ANALYZE "+this.getClass().getSimpleName());
-    }
-
-    private Map<Integer, Integer> calcFollowerNumTweetsMap(
-	    List<UserProfiler> allProfilers) {
-	Map<Integer, Integer> numTweetsMap = Maps.newHashMap();
-	Map<Integer, Integer>counterMap = Maps.newHashMap();
-	
-	for (UserProfiler user : allProfilers) {
-	    if (numTweetsMap.get(user.followers) == null) {
-		numTweetsMap.put(user.followers, user.status);
-		counterMap.put(user.followers, 1);
-	    } else {
-		int numTweets = numTweetsMap.get(user.followers) + user.status;
-		int newCounter = counterMap.get(user.followers)+1;
-		numTweetsMap.put(user.followers, numTweets);
-		counterMap.put(user.followers, newCounter);
-	    }
-	}
-	
-	Map<Integer, Integer> resultMap = Maps.newHashMap();
-	
-	for(Map.Entry<Integer, Integer> entry: numTweetsMap.entrySet()){
-	    resultMap.put(entry.getKey(), entry.getValue()/counterMap.get(entry.getKey()));
-	}
-	return resultMap;
-    }
-
-}
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import dataset.chart.ChartUtils;
+import dataset.sketch.Histogram;
+import dataset.sketch.HyperLogLog;
+import dataset.sketch.KeyGrid;
+import dataset.utils.ConfReader;
+import dataset.utils.AnalyzeUtils;
+import dataset.utils.InputFingerprint;
+import dataset.utils.IntIntMap;
+import dataset.utils.ResultCache;
+import dataset.utils.ResultSeries;
+
+/**
+ * Analyze num of tweets and num of followers: If there are more followers for a
+ * user, there will be more tweets created by the user.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class NumTweetsAnalyze implements IScanAnalyze {
+    private static final Logger logger = LogManager.getLogger(NumTweetsAnalyze.class);
+    public static final String FOLLOWER_TWEETS_DISTRIBUTION = "2_follower_tweets_distribution";
+    public static final String CACHED_TWEETS_NUMBER_FILE = "output/"+FOLLOWER_TWEETS_DISTRIBUTION+".dat";
+    // Bump when the calculation changes, so the cached results are
+    // recomputed.
+    private static final int RESULT_VERSION = 1;
+    // Grid of the approximate mode, numbers of followers from the exact limit
+    // on are binned to cells of about 5%.
+    private static final int SKETCH_EXACT_LIMIT = 2000;
+    private static final int SKETCH_CELLS_PER_DECADE = 48;
+    //[Num of followers, Avg tweets]
+    private ResultSeries followerNumberTweets = new ResultSeries();
+
+    // If the visitors are registered to a scan.
+    private boolean visitorsRegistered;
+    // Fingerprint of the inputs, null if the inputs can not be fingerprinted
+    // and the result is not cached.
+    private String fingerprint;
+    // Accumulators of the scan, null if the result is read from cache.
+    private IntIntMap numTweetsMap;
+    private IntIntMap counterMap;
+    // Sketches of the approximate mode, null in the exact mode.
+    // [Num of followers, Sum of tweets] and [Num of followers, Num users]
+    private Histogram sketchTweets;
+    private Histogram sketchCounters;
+    private HyperLogLog sketchUsers;
+    // If the accumulators missed some of the data.
+    private boolean scanFailed;
+    // Error bounds of the approximate result shown on the charts, null for
+    // exact results.
+    private String errorBounds;
+
+    @Override
+    public void registerVisitors(ScanEngine scanEngine) {
+	visitorsRegistered = true;
+	if (scanEngine.getConfReader().isApproximateMode()) {
+	    registerSketchVisitor(scanEngine);
+	    return;
+	}
+	try {
+	    fingerprint = new InputFingerprint()
+		    .addFile(scanEngine.getConfReader().getProfilerFile())
+		    .addParam("analyze", FOLLOWER_TWEETS_DISTRIBUTION)
+		    .addParam("version", RESULT_VERSION).build();
+	} catch (IOException e) {
+	    logger.fatal("Can not fingerprint the inputs: " + e.getMessage());
+	    fingerprint = null;
+	}
+	ResultSeries cached = ResultCache.readSeries(new File(
+		CACHED_TWEETS_NUMBER_FILE), fingerprint);
+	if (cached != null) {
+	    logger.debug("Read tweets number distribution from cached file");
+	    followerNumberTweets = cached;
+	    return;
+	}
+	logger.debug("Start to process tweets number distribution");
+	numTweetsMap = new IntIntMap(1024, 0);
+	counterMap = new IntIntMap(1024, 0);
+	scanEngine.addProfileVisitor(new IProfileVisitor() {
+	    @Override
+	    public void visitProfile(UserProfileStore profileStore, int row) {
+		int numFollowers = profileStore.getFollowers(row);
+		numTweetsMap.addTo(numFollowers, profileStore.getStatus(row));
+		counterMap.addTo(numFollowers, 1);
+	    }
+	});
+    }
+
+    private void registerSketchVisitor(ScanEngine scanEngine) {
+	logger.debug("Start to sketch tweets number distribution");
+	KeyGrid sketchGrid = new KeyGrid(SKETCH_EXACT_LIMIT, 1,
+		SKETCH_CELLS_PER_DECADE);
+	sketchTweets = new Histogram(sketchGrid);
+	sketchCounters = new Histogram(sketchGrid);
+	sketchUsers = new HyperLogLog();
+	scanEngine.addProfileVisitor(new IProfileVisitor() {
+	    @Override
+	    public void visitProfile(UserProfileStore profileStore, int row) {
+		sketchUsers.add(profileStore.getId(row));
+		int numFollowers = profileStore.getFollowers(row);
+		sketchTweets.add(numFollowers, profileStore.getStatus(row));
+		sketchCounters.add(numFollowers);
+	    }
+	});
+    }
+
+    @Override
+    public void scanFailed(Exception cause) {
+	scanFailed = true;
+    }
+
+    @Override
+    public void executeAnalyze() {
+	logger.info("START ANALYZE "+this.getClass().getSimpleName());
+	try {
+	    final File tweetsNumberFile = new File(CACHED_TWEETS_NUMBER_FILE);
+	    if (!visitorsRegistered) {
+		// Not scanned together with other analyses.
+		ScanEngine scanEngine = new ScanEngine(new ConfReader());
+		registerVisitors(scanEngine);
+		scanEngine.run();
+	    }
+	    if (scanFailed && (sketchCounters != null || numTweetsMap != null)) {
+		logger.fatal("Skip tweets number distribution, the scan failed");
+	    } else if (sketchCounters != null) {
+		processSketches();
+	    } else if (numTweetsMap != null) {
+		followerNumberTweets = calcFollowerNumTweets(numTweetsMap,
+			counterMap);
+		ResultCache.invalidate(tweetsNumberFile);
+		AnalyzeUtils.saveToFile(followerNumberTweets, tweetsNumberFile);
+		ResultCache.commit(tweetsNumberFile, fingerprint);
+	    }
+
+	} catch (Exception ex) {
+	    logger.fatal("Error on " + this.getClass().getSimpleName());
+	    ex.printStackTrace();
+	} finally {
+	    visitorsRegistered = false;
+	    fingerprint = null;
+	    numTweetsMap = null;
+	    counterMap = null;
+	    sketchTweets = null;
+	    sketchCounters = null;
+	    sketchUsers = null;
+	    scanFailed = false;
+	}
+    }
+
+    private void processSketches() {
+	ResultSeries numUsers = sketchCounters.toSeries();
+	double[] avgTweets = new double[numUsers.size()];
+	for (int i = 0; i < numUsers.size(); i++) {
+	    long sumTweets = sketchTweets.get(numUsers.getKey(i));
+	    avgTweets[i] = sumTweets / (long) numUsers.getValue(i);
+	}
+	followerNumberTweets = new ResultSeries(numUsers.keys(), avgTweets);
+	long numProfiles = sketchCounters.getTotal();
+	errorBounds = String.format("Approximate: above %d followers each"
+		+ " point is a bin of %.1f%%, %d profiles of %d \u00B1%.1f%%"
+		+ " distinct users", SKETCH_EXACT_LIMIT,
+		sketchCounters.getGrid().getRelativeCellWidth() * 100, numProfiles,
+		sketchUsers.cardinality(), sketchUsers.getRelativeError() * 100);
+	logger.info(errorBounds);
+	if (sketchCounters.getNumRejected() > 0) {
+	    logger.warn("Ignored " + sketchCounters.getNumRejected()
+		    + " profiles with a negative number of followers");
+	}
+    }
+
+    @Override
+    public void drawResult() {
+	logger.info("Drawing follower tweets distribution...");
+	ChartUtils.drawChart("", "Follower and Tweets number distribution",
+		errorBounds, "Number of followers", "Avg number of tweets",
+		FOLLOWER_TWEETS_DISTRIBUTION, AnalyzeUtils.simplefilter(-1,
+			-1, -1, -1, followerNumberTweets));
+	ChartUtils.drawChart("", "Follower and Tweets number distribution",
+		errorBounds, "Number of followers", "Avg number tweets",
+		FOLLOWER_TWEETS_DISTRIBUTION+"_0_2000", AnalyzeUtils.simplefilter(2000,
+			-1, -1, -1, followerNumberTweets));
+	ChartUtils.drawChart("", "Follower and Tweets number distribution",
+		errorBounds, "Number of followers", "Avg number tweets",
+		FOLLOWER_TWEETS_DISTRIBUTION+"_0_100000", AnalyzeUtils.simplefilter(100000,
+			-1, -1, -1, followerNumberTweets));
+	logger.info("DOND ANALYZE "+this.getClass().getSimpleName());
+    }
+
+    private ResultSeries calcFollowerNumTweets(IntIntMap numTweetsMap,
+	    IntIntMap counterMap) {
+	int[] keys = numTweetsMap.keys();
+	double[] avgTweets = new double[keys.length];
+	for (int i = 0; i < keys.length; i++) {
+	    avgTweets[i] = numTweetsMap.get(keys[i]) / counterMap.get(keys[i]);
+	}
+	return new ResultSeries(keys, avgTweets);
+    }
+
+}
@@ -0,0 +1,47 @@
+package dataset.twitter.analysis;
+
+/**
+ * Sets of regions stored as two-word bitmasks in a long[], the set at offset
+ * i is masks[i] and masks[i + 1]. A region is the location code from
+ * UserProfileStore, there are only about 60 states so 127 codes are enough,
+ * the last bit is used for the unknown location.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class RegionMask {
+    // Number of longs of one set.
+    public static final int WORDS = 2;
+    public static final int MAX_REGIONS = 64 * WORDS - 1;
+    private static final int UNKNOWN_BIT = MAX_REGIONS;
+
+    /**
+     * Add the location code to the set at the offset.
+     */
+    public static void add(long[] masks, int offset, int locationCode) {
+	int bit = locationCode;
+	if (locationCode == UserProfileStore.UNKNOWN_LOCATION) {
+	    bit = UNKNOWN_BIT;
+	} else if (locationCode < 0 || locationCode >= UNKNOWN_BIT) {
+	    throw new IllegalStateException("Location code " + locationCode
+		    + " does not fit in a region mask");
+	}
+	masks[offset + (bit >>> 6)] |= 1L << bit;
+    }
+
+    /**
+     * Union the set at the source offset to the set at the target offset.
+     */
+    public static void or(long[] target, int targetOffset, long[] source,
+	    int sourceOffset) {
+	target[targetOffset] |= source[sourceOffset];
+	target[targetOffset + 1] |= source[sourceOffset + 1];
+    }
+
+    /**
+     * @return Number of regions in the set at the offset.
+     */
+    public static int count(long[] masks, int offset) {
+	return Long.bitCount(masks[offset]) + Long.bitCount(masks[offset + 1]);
+    }
+}
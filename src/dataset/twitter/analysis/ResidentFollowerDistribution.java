@@ -0,0 +1,146 @@
+package dataset.twitter.analysis;
+
+import java.io.IOException;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import dataset.db.DBProvider;
+import dataset.sketch.Histogram;
+import dataset.sketch.KeyGrid;
+import dataset.twitter.analysis.FollowerDistributionAnalyze.FollowerRegionAccumulator;
+import dataset.utils.ConfReader;
+import dataset.utils.InputFingerprint;
+import dataset.utils.IntIntMap;
+import dataset.utils.ResultSeries;
+
+/**
+ * The follower distributions kept in memory to answer queries, built by one
+ * exact scan of the profiles and the follower network. The users are counted
+ * by their exact number of followers, and the regions are kept in the slots
+ * of the exact numbers of followers, so the region distribution of any
+ * aggregation factor is aggregated from the slots without another scan.
+ * <p>
+ * The distributions are not changed after load(), so they are queried by any
+ * number of threads.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ResidentFollowerDistribution {
+    private static final Logger logger = LogManager
+	    .getLogger(ResidentFollowerDistribution.class);
+
+    private final ConfReader confReader;
+    private final String fingerprint;
+    private final long loadTime;
+    // [Num followers, Num users]
+    private final Histogram followerNumbers;
+    private final ResultSeries followerNumberSeries;
+    private final FollowerRegionAccumulator followerRegions;
+
+    private ResidentFollowerDistribution(ConfReader confReader,
+	    String fingerprint, Histogram followerNumbers,
+	    FollowerRegionAccumulator followerRegions) {
+	this.confReader = confReader;
+	this.fingerprint = fingerprint;
+	this.loadTime = System.currentTimeMillis();
+	this.followerNumbers = followerNumbers;
+	this.followerNumberSeries = followerNumbers.toSeries();
+	this.followerRegions = followerRegions;
+	// Build the prefix sums before the histogram is shared.
+	followerNumbers.getTotal();
+    }
+
+    /**
+     * Scan the current inputs of the configuration. The inputs and the
+     * profiles read before are forgotten first, so changed inputs are read
+     * again.
+     */
+    public static ResidentFollowerDistribution load(ConfReader confReader)
+	    throws Exception {
+	InputFingerprint.forgetInputs();
+	ConfReader.forgetUserProfileStore();
+	DBProvider.getInstance().forgetCityDictionary();
+	String fingerprint = fingerprint(confReader);
+
+	final IntIntMap followerNumberCounter = new IntIntMap(1024, 0);
+	FollowerRegionAccumulator followerRegions =
+		new FollowerRegionAccumulator();
+	ScanEngine scanEngine = new ScanEngine(confReader);
+	scanEngine.addProfileVisitor(new IProfileVisitor() {
+	    @Override
+	    public void visitProfile(UserProfileStore profileStore, int row) {
+		followerNumberCounter.addTo(profileStore.getFollowers(row), 1);
+	    }
+	});
+	followerRegions.register(scanEngine);
+	scanEngine.run();
+	// The profiles are not needed by the queries.
+	ConfReader.forgetUserProfileStore();
+
+	// A cell for each number of followers, the memory does not depend on
+	// the largest number.
+	int[] numFollowers = followerNumberCounter.keys();
+	Histogram followerNumbers = new Histogram(KeyGrid.of(numFollowers));
+	for (int key : numFollowers) {
+	    followerNumbers.add(key, followerNumberCounter.get(key));
+	}
+	logger.info("Loaded follower distributions of "
+		+ followerNumbers.getTotal() + " profiles and "
+		+ followerRegions.getNumUsers() + " users of the network");
+	return new ResidentFollowerDistribution(confReader, fingerprint,
+		followerNumbers, followerRegions);
+    }
+
+    private static String fingerprint(ConfReader confReader)
+	    throws IOException {
+	return FollowerDistributionAnalyze.regionInputs(confReader)
+		.addParam("resident", "follower").build();
+    }
+
+    /**
+     * @return If the inputs have been changed since the load, the inputs are
+     *         hashed again.
+     */
+    public boolean isStale() throws IOException {
+	InputFingerprint.forgetInputs();
+	return !fingerprint.equals(fingerprint(confReader));
+    }
+
+    public long getLoadTime() {
+	return loadTime;
+    }
+
+    public long getNumProfiles() {
+	return followerNumbers.getTotal();
+    }
+
+    public int getNumNetworkUsers() {
+	return followerRegions.getNumUsers();
+    }
+
+    /**
+     * @return [Num followers, Num users] of the profiles, which must not be
+     *         changed.
+     */
+    public ResultSeries getFollowerNumbers() {
+	return followerNumberSeries;
+    }
+
+    /**
+     * @return Number of users with at least the number of followers.
+     */
+    public long countAtLeast(int numFollowers) {
+	return followerNumbers.countAtLeast(Math.max(numFollowers, 0));
+    }
+
+    /**
+     * @return [Aggregated num followers, Num regions] of the network
+     *         aggregated by the factor.
+     */
+    public ResultSeries getFollowerRegions(int aggFactor) {
+	return ResultSeries.of(FollowerDistributionAnalyze
+		.calcAggFollowerRegions(followerRegions, aggFactor));
+    }
+}
@@ -0,0 +1,303 @@
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+
+import dataset.db.DBProvider;
+import dataset.metrics.Metrics;
+import dataset.twitter.network.ExternalEdgeSorter;
+import dataset.twitter.network.FollowerGraph;
+import dataset.twitter.network.NetworkIngestEngine;
+import dataset.twitter.network.NetworkSegmentReader;
+import dataset.twitter.network.NetworkSegmentReader.SegmentHandler;
+import dataset.utils.ConfReader;
+import dataset.utils.InputFingerprint;
+import dataset.utils.IntIntMap;
+import dataset.utils.ResultCache;
+
+/**
+ * Shared scan over the profiles and the follower network. The analyses
+ * register their visitors first, then run() loads every data set at most once
+ * and calls all visitors in a single pass over the profiles and a single pass
+ * over the network. In the pipeline mode the profiles and the network are
+ * scanned at the same time, see SegmentPipeline.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ScanEngine {
+    private static final Logger logger = LogManager.getLogger(ScanEngine.class);
+
+    private final ConfReader confReader;
+    private final List<IProfileVisitor> profileVisitors;
+    private final List<INetworkVisitor> networkVisitors;
+    private final List<ISegmentVisitor> segmentVisitors;
+
+    public ScanEngine(ConfReader confReader) {
+	this.confReader = confReader;
+	this.profileVisitors = Lists.newArrayList();
+	this.networkVisitors = Lists.newArrayList();
+	this.segmentVisitors = Lists.newArrayList();
+    }
+
+    public ConfReader getConfReader() {
+	return confReader;
+    }
+
+    public void addProfileVisitor(IProfileVisitor visitor) {
+	profileVisitors.add(visitor);
+    }
+
+    public void addNetworkVisitor(INetworkVisitor visitor) {
+	networkVisitors.add(visitor);
+    }
+
+    /**
+     * Add a visitor of the network grouped by user without building the
+     * follower graph. The network is streamed in one pass in the approximate
+     * mode, otherwise grouped by an external sort.
+     */
+    public void addSegmentVisitor(ISegmentVisitor visitor) {
+	segmentVisitors.add(visitor);
+    }
+
+    /**
+     * Scan the data sets needed by the registered visitors, the visitors are
+     * removed after the scan.
+     */
+    public void run() throws Exception {
+	if (profileVisitors.isEmpty() && networkVisitors.isEmpty()
+		&& segmentVisitors.isEmpty()) {
+	    logger.info("Nothing to scan, all results are cached.");
+	    return;
+	}
+
+	if (confReader.isPipelineEnabled()) {
+	    runPipeline();
+	} else {
+	    UserProfileStore profileStore = loadProfiles();
+	    if (!profileVisitors.isEmpty()) {
+		scanProfiles(profileStore);
+	    }
+	    if (!networkVisitors.isEmpty()) {
+		scanNetwork(loadFollowerNetwork(),
+			profileStore.createIDLocationIndex());
+	    }
+	    if (!segmentVisitors.isEmpty()) {
+		final IntIntMap idLocationIndex = profileStore
+			.createIDLocationIndex();
+		final ISegmentVisitor[] visitors = segmentVisitors
+			.toArray(new ISegmentVisitor[segmentVisitors.size()]);
+		streamNetwork(new SegmentHandler() {
+		    @Override
+		    public void visitSegment(int userId, int[] followers,
+			    int numFollowers) {
+			for (ISegmentVisitor visitor : visitors) {
+			    visitor.visitSegment(userId, followers,
+				    numFollowers, idLocationIndex);
+			}
+		    }
+		});
+	    }
+	}
+	profileVisitors.clear();
+	networkVisitors.clear();
+	segmentVisitors.clear();
+    }
+
+    /**
+     * Run the profiles and the network as concurrent stages. The profiles
+     * are parsed and visited on a thread of their own, while this thread
+     * reads the network to a SegmentPipeline, whose visitors wait for the
+     * location index of the profiles. The follower graph is loaded while the
+     * profiles are parsed as well.
+     */
+    private void runPipeline() throws Exception {
+	ExecutorService profileStage = Executors.newSingleThreadExecutor();
+	final boolean needIndex = !networkVisitors.isEmpty()
+		|| !segmentVisitors.isEmpty();
+	Future<IntIntMap> idLocationIndex = profileStage
+		.submit(new Callable<IntIntMap>() {
+		    @Override
+		    public IntIntMap call() throws Exception {
+			UserProfileStore profileStore = loadProfiles();
+			if (!profileVisitors.isEmpty()) {
+			    scanProfiles(profileStore);
+			}
+			return needIndex ? profileStore.createIDLocationIndex()
+				: null;
+		    }
+		});
+	profileStage.shutdown();
+	try {
+	    if (!segmentVisitors.isEmpty()) {
+		SegmentPipeline pipeline = new SegmentPipeline(
+			segmentVisitors.toArray(new ISegmentVisitor[segmentVisitors
+				.size()]), idLocationIndex,
+			confReader.getPipelineQueueBatches());
+		pipeline.start();
+		try {
+		    streamNetwork(pipeline);
+		} catch (Exception ex) {
+		    pipeline.abort();
+		    throw ex;
+		}
+		pipeline.finish();
+	    }
+	    if (!networkVisitors.isEmpty()) {
+		FollowerGraph followersNetwork = loadFollowerNetwork();
+		scanNetwork(followersNetwork, idLocationIndex.get());
+	    }
+	    // Rethrow the failure of the profiles stage, if nothing waited for it.
+	    idLocationIndex.get();
+	} finally {
+	    idLocationIndex.cancel(true);
+	}
+    }
+
+    private UserProfileStore loadProfiles() throws Exception {
+	return confReader.getUserProfileStore(DBProvider.getInstance()
+		.getCityStateMap());
+    }
+
+    private void scanProfiles(UserProfileStore profileStore) {
+	logger.debug("Scan " + profileStore.size() + " profiles for "
+		+ profileVisitors.size() + " visitors");
+	Metrics.Timer timer = Metrics.start("scan.profiles");
+	try {
+	    IProfileVisitor[] visitors = profileVisitors
+		    .toArray(new IProfileVisitor[profileVisitors.size()]);
+	    for (int row = 0, size = profileStore.size(); row < size; row++) {
+		for (IProfileVisitor visitor : visitors) {
+		    visitor.visitProfile(profileStore, row);
+		}
+	    }
+	    timer.stop(profileStore.size());
+	} finally {
+	    timer.stop();
+	}
+    }
+
+    private void scanNetwork(FollowerGraph followersNetwork,
+	    IntIntMap idLocationIndex) {
+	logger.debug("Scan " + followersNetwork.getNumUsers()
+		+ " users of the network for " + networkVisitors.size()
+		+ " visitors");
+	Metrics.Timer timer = Metrics.start("scan.network");
+	try {
+	    INetworkVisitor[] visitors = networkVisitors
+		    .toArray(new INetworkVisitor[networkVisitors.size()]);
+	    int numUsers = followersNetwork.getNumUsers();
+	    for (int row = 0; row < numUsers; row++) {
+		for (INetworkVisitor visitor : visitors) {
+		    visitor.visitFollowers(followersNetwork, row,
+			    idLocationIndex);
+		}
+	    }
+	    timer.stop(followersNetwork.getNumEdges());
+	} finally {
+	    timer.stop();
+	}
+    }
+
+    private void streamNetwork(SegmentHandler handler) throws Exception {
+	File networkDir = confReader.getNetworkDir();
+	if (!networkDir.exists() || !networkDir.isDirectory()) {
+	    throw new Exception("Network dir not found: " + networkDir);
+	}
+
+	if (confReader.isApproximateMode()) {
+	    // One pass in file order, a user could be split to segments.
+	    logger.debug("Stream the network of " + networkDir + " for "
+		    + segmentVisitors.size() + " visitors");
+	    Metrics.Timer timer = Metrics.start("network.stream");
+	    NetworkSegmentReader reader = new NetworkSegmentReader(handler);
+	    long numEdges;
+	    try {
+		numEdges = reader.read(networkDir);
+		timer.stop(numEdges);
+	    } finally {
+		timer.stop();
+	    }
+	    logger.info("Done stream follower network files, "
+		    + reader.getNumSegments() + " user segments and "
+		    + numEdges + " edges");
+	} else {
+	    // Every user is one segment with all of its followers.
+	    logger.debug("Sort the network of " + networkDir + " for "
+		    + segmentVisitors.size() + " visitors");
+	    ExternalEdgeSorter sorter = new ExternalEdgeSorter(
+		    confReader.getMemoryBudget(), confReader.getTmpDir());
+	    Metrics.Timer timer = Metrics.start("network.sort");
+	    long numEdges;
+	    try {
+		numEdges = sorter.sort(networkDir, handler);
+		timer.stop(numEdges);
+	    } finally {
+		timer.stop();
+	    }
+	    logger.info("Done sort follower network files, " + numEdges
+		    + " edges");
+	}
+    }
+
+    /**
+     * Load the follower graph of the network dir, for the analyses which
+     * visit the graph on their own.
+     */
+    public FollowerGraph loadFollowerNetwork() throws Exception {
+	File networkDir = confReader.getNetworkDir();
+	if (!networkDir.exists() || !networkDir.isDirectory()) {
+	    throw new Exception("Network dir not found: " + networkDir);
+	}
+	return loadFollowerNetwork(networkDir);
+    }
+
+    /**
+     * Map the follower graph snapshot if it was built from the same network
+     * files, otherwise build the graph from the network files and save the
+     * snapshot.
+     */
+    private FollowerGraph loadFollowerNetwork(File networkDir)
+	    throws IOException {
+	File snapshotFile = confReader.getNetworkSnapshotFile();
+	String fingerprint = new InputFingerprint().addDir(networkDir)
+		.addParam("snapshot", "csr").build();
+	if (ResultCache.isValid(snapshotFile, fingerprint)) {
+	    logger.debug("Read follower network from snapshot " + snapshotFile);
+	    Metrics.Timer timer = Metrics.start("network.snapshot");
+	    try {
+		FollowerGraph followersNetwork = FollowerGraph
+			.readSnapshot(snapshotFile);
+		timer.stop(followersNetwork.getNumEdges());
+		return followersNetwork;
+	    } catch (IOException e) {
+		logger.warn("Can not read snapshot " + snapshotFile
+			+ ", the network is read again: " + e.getMessage());
+	    } finally {
+		timer.stop();
+	    }
+	}
+
+	NetworkIngestEngine ingestEngine = new NetworkIngestEngine(
+		confReader.getNumThreads());
+	FollowerGraph followersNetwork = ingestEngine.ingest(networkDir);
+	logger.info("Done process all follower network files, "
+		+ followersNetwork.getNumUsers() + " users and "
+		+ followersNetwork.getNumEdges() + " edges");
+	ResultCache.invalidate(snapshotFile);
+	followersNetwork.writeSnapshot(snapshotFile);
+	ResultCache.commit(snapshotFile, fingerprint);
+	return followersNetwork;
+    }
+}
@@ -0,0 +1,220 @@
+package dataset.twitter.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import dataset.metrics.Metrics;
+import dataset.twitter.network.NetworkSegmentReader.SegmentHandler;
+import dataset.utils.IntIntMap;
+
+/**
+ * Pipelined stage between the network reader and the segment visitors. The
+ * reader thread copies the segments to batches which are passed through a
+ * bounded queue to one visiting thread, so reading and parsing the network
+ * files overlaps with the region lookups and the aggregation of the
+ * visitors. The visiting thread waits for the [user ID, location code] index
+ * of the profiles stage before the first batch, while the reader is already
+ * filling the queue. When the queue is full the reader blocks, which caps the
+ * edges in flight to the queue capacity times the batch size.
+ *
+ * @author qinjin.wang
+ *
+ */
+class SegmentPipeline implements SegmentHandler {
+    private static final Logger logger = LogManager
+	    .getLogger(SegmentPipeline.class);
+    // Edges of a batch, a larger segment gets a batch of its own.
+    static final int BATCH_EDGES = 64 * 1024;
+    private static final Batch END_OF_STREAM = new Batch(0);
+
+    private final ISegmentVisitor[] visitors;
+    private final Future<IntIntMap> idLocationIndex;
+    private final BlockingQueue<Batch> queue;
+    private final Thread visitingThread;
+    private volatile Throwable failure;
+    private Batch batch;
+    private long numBlockedPuts;
+    private long blockedNanos;
+
+    /**
+     * @param idLocationIndex
+     *            The index built by the profiles stage.
+     * @param capacity
+     *            Max number of batches in the queue.
+     */
+    SegmentPipeline(ISegmentVisitor[] visitors,
+	    Future<IntIntMap> idLocationIndex, int capacity) {
+	this.visitors = visitors;
+	this.idLocationIndex = idLocationIndex;
+	this.queue = new ArrayBlockingQueue<Batch>(Math.max(capacity, 1));
+	this.visitingThread = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		visitBatches();
+	    }
+	}, "segment-pipeline");
+	// Never keep the JVM alive, if the reader failed without abort().
+	this.visitingThread.setDaemon(true);
+    }
+
+    void start() {
+	visitingThread.start();
+    }
+
+    @Override
+    public void visitSegment(int userId, int[] followers, int numFollowers) {
+	if (failure != null) {
+	    throw new IllegalStateException("Segment visitors failed", failure);
+	}
+	if (batch != null && !batch.fits(numFollowers)) {
+	    put(batch);
+	    batch = null;
+	}
+	if (batch == null) {
+	    batch = new Batch(Math.max(BATCH_EDGES, numFollowers));
+	}
+	batch.add(userId, followers, numFollowers);
+    }
+
+    /**
+     * Pass the last batch and wait until all batches are visited.
+     *
+     * @throws ExecutionException
+     *             If the profiles stage or a visitor failed.
+     */
+    void finish() throws ExecutionException, InterruptedException {
+	if (batch != null) {
+	    put(batch);
+	    batch = null;
+	}
+	put(END_OF_STREAM);
+	visitingThread.join();
+	logger.debug("Reader blocked " + numBlockedPuts + " times for "
+		+ blockedNanos / 1000000 + "ms on the full queue");
+	if (failure != null) {
+	    throw new ExecutionException("Segment pipeline failed", failure);
+	}
+    }
+
+    /**
+     * Stop the visiting thread after the reader failed, no END_OF_STREAM
+     * follows.
+     */
+    void abort() {
+	visitingThread.interrupt();
+    }
+
+    private void put(Batch full) {
+	try {
+	    if (!queue.offer(full)) {
+		// Back-pressure, the visitors are behind the reader.
+		Metrics.Timer timer = Metrics.start("pipeline.backpressure");
+		try {
+		    long startTime = System.nanoTime();
+		    queue.put(full);
+		    blockedNanos += System.nanoTime() - startTime;
+		    numBlockedPuts++;
+		    timer.stop(full.numEdges);
+		} finally {
+		    timer.stop();
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException("Interrupted on passing segments", e);
+	}
+    }
+
+    private void visitBatches() {
+	IntIntMap index = null;
+	Metrics.Timer timer = null;
+	long numEdges = 0;
+	try {
+	    while (true) {
+		Batch next = queue.take();
+		if (next == END_OF_STREAM) {
+		    break;
+		}
+		if (failure != null) {
+		    // Drain the queue, so the reader never blocks on it.
+		    continue;
+		}
+		try {
+		    if (index == null) {
+			index = idLocationIndex.get();
+			timer = Metrics.start("pipeline.visit");
+		    }
+		    next.visit(visitors, index);
+		    numEdges += next.numEdges;
+		} catch (InterruptedException e) {
+		    // Aborted while waiting for the profiles stage.
+		    failure = e;
+		    break;
+		} catch (Throwable t) {
+		    failure = t instanceof ExecutionException ? t.getCause() : t;
+		}
+	    }
+	} catch (InterruptedException e) {
+	    failure = e;
+	} finally {
+	    if (timer != null) {
+		timer.stop(numEdges);
+	    }
+	}
+    }
+
+    /**
+     * Segments packed in arrays, the followers of segment i are
+     * followers[ends[i - 1]] until followers[ends[i]].
+     */
+    private static class Batch {
+	private int[] userIds = new int[256];
+	private int[] ends = new int[256];
+	private final int[] followers;
+	private int numSegments;
+	private int numEdges;
+
+	Batch(int capacity) {
+	    followers = new int[capacity];
+	}
+
+	boolean fits(int numFollowers) {
+	    return numEdges + numFollowers <= followers.length;
+	}
+
+	void add(int userId, int[] segment, int numFollowers) {
+	    if (numSegments == userIds.length) {
+		userIds = Arrays.copyOf(userIds, numSegments * 2);
+		ends = Arrays.copyOf(ends, numSegments * 2);
+	    }
+	    System.arraycopy(segment, 0, followers, numEdges, numFollowers);
+	    numEdges += numFollowers;
+	    userIds[numSegments] = userId;
+	    ends[numSegments] = numEdges;
+	    numSegments++;
+	}
+
+	void visit(ISegmentVisitor[] visitors, IntIntMap idLocationIndex) {
+	    int[] segment = new int[0];
+	    int start = 0;
+	    for (int i = 0; i < numSegments; i++) {
+		int numFollowers = ends[i] - start;
+		if (segment.length < numFollowers) {
+		    segment = new int[Math.max(numFollowers, 1024)];
+		}
+		System.arraycopy(followers, start, segment, 0, numFollowers);
+		for (ISegmentVisitor visitor : visitors) {
+		    visitor.visitSegment(userIds[i], segment, numFollowers,
+			    idLocationIndex);
+		}
+		start = ends[i];
+	    }
+	}
+    }
+}
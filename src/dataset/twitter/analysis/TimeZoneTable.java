@@ -0,0 +1,98 @@
+package dataset.twitter.analysis;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import dataset.utils.IntIntMap;
+
+/**
+ * Interned codes of the time zones found in the tweets. A time zone is 3
+ * characters, the ASCII ones are looked up by the characters packed to an int
+ * so the tweets scan never creates a String. The codes are small and dense,
+ * so the tweets of a user are counted to an int[] indexed by the code.
+ *
+ * The table is shared by all scan workers. Lookups read an immutable map
+ * without locking, a new zone copies the map under the lock.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class TimeZoneTable {
+    private static final Object lock = new Object();
+    private static volatile IntIntMap packedCodes = new IntIntMap(64, -1);
+    // Zones which could not be packed, like non ASCII ones.
+    private static final Map<String, Integer> otherCodes = Maps.newHashMap();
+    private static final List<String> names = Lists.newArrayList();
+
+    /**
+     * @return The 3 ASCII characters packed to an int.
+     */
+    public static int pack(int first, int second, int third) {
+	return (first << 16) | (second << 8) | third;
+    }
+
+    /**
+     * @return The code of the packed zone.
+     */
+    public static int intern(int packedZone) {
+	int code = packedCodes.get(packedZone);
+	if (code >= 0) {
+	    return code;
+	}
+	synchronized (lock) {
+	    IntIntMap current = packedCodes;
+	    code = current.get(packedZone);
+	    if (code < 0) {
+		code = names.size();
+		names.add(new String(new char[] {
+			(char) ((packedZone >> 16) & 0xFF),
+			(char) ((packedZone >> 8) & 0xFF),
+			(char) (packedZone & 0xFF) }));
+		IntIntMap copy = new IntIntMap(current.size() + 1, -1);
+		for (int key : current.keys()) {
+		    copy.put(key, current.get(key));
+		}
+		copy.put(packedZone, code);
+		packedCodes = copy;
+	    }
+	    return code;
+	}
+    }
+
+    /**
+     * @return The code of the zone.
+     */
+    public static int intern(String zone) {
+	if (zone.length() == 3 && zone.charAt(0) < 0x80
+		&& zone.charAt(1) < 0x80 && zone.charAt(2) < 0x80) {
+	    return intern(pack(zone.charAt(0), zone.charAt(1), zone.charAt(2)));
+	}
+	synchronized (lock) {
+	    Integer code = otherCodes.get(zone);
+	    if (code == null) {
+		code = names.size();
+		names.add(zone);
+		otherCodes.put(zone, code);
+	    }
+	    return code;
+	}
+    }
+
+    public static String getName(int code) {
+	synchronized (lock) {
+	    return names.get(code);
+	}
+    }
+
+    /**
+     * @return Number of interned zones, all codes are smaller than it.
+     */
+    public static int size() {
+	synchronized (lock) {
+	    return names.size();
+	}
+    }
+}
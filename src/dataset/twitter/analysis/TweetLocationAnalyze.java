@@ -1,198 +1,525 @@
-package dataset.twitter.analysis;
-
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.List;
-import java.util.Map;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-import org.junit.Assert;
-import org.junit.Test;
-
-import com.google.common.collect.Maps;
-import com.google.common.io.Files;
-
-import dataset.chart.ChartUtils;
-import dataset.utils.AnalyzeUtils;
-import dataset.utils.ConfReader;
-
-/**
- * Analyze: Users are always tweet from the same data center.
- * 
- * @author qinjin.wang
- *
- */
-public class TweetLocationAnalyze implements IAnalyze {
-    private static final Logger logger = LogManager
-	    .getLogger(TweetLocationAnalyze.class);
-    private static final String TWEET_LOCATION_DISTRIBUTION = "3_tweet_location_distribution";
-    private static final String TWEET_LOCATION_PERCENTAGE = "3_tweet_location_percentage";
-    public static final String CACHED_TWEETS_LOCATION_FILE = "output/"
-	    + TWEET_LOCATION_DISTRIBUTION + ".txt";
-    // [user ID, percentage of the tweets from the most tweeted timezone]
-    private final Map<Integer, Double> tweetsLocationMap;
-
-    public TweetLocationAnalyze() {
-	this.tweetsLocationMap = Maps.newHashMap();
-    }
-
-    @Override
-    public void executeAnalyze() {
-	logger.info("START ANALYZE " + this.getClass().getSimpleName());
-	try {
-	    ConfReader confReader = new ConfReader();
-	    File tweetsDir = confReader.getTweetsDir();
-	    File cachedFile = new File(CACHED_TWEETS_LOCATION_FILE);
-	    if (tweetsDir.exists() && tweetsDir.isDirectory()) {
-		if (cachedFile.exists()) {
-		    tweetsLocationMap.putAll(AnalyzeUtils
-			    .readFromDoubleFile(cachedFile));
-		} else {
-		    tweetsLocationMap.putAll(calcTweetsLocation(tweetsDir));
-		    AnalyzeUtils
-			    .saveDoubleToFile(tweetsLocationMap, cachedFile);
-		}
-	    } else {
-		throw new Exception("Can not find dir: " + tweetsDir);
-	    }
-	} catch (Exception ex) {
-	    logger.fatal("Error on " + this.getClass().getSimpleName() + ": "
-		    + ex.getMessage());
-	    ex.printStackTrace();
-	}
-    }
-
-    private Map<Integer, Double> calcTweetsLocation(File tweetsDir) {
-	Map<Integer, UserTweetsLocation> map = Maps.newHashMap();
-	doCalcTweetsLocation(map, tweetsDir);
-	logger.debug("Done cacluate tweet location.");
-	return calcPercentage(map);
-    }
-
-    private void doCalcTweetsLocation(Map<Integer, UserTweetsLocation> map,
-	    File file) {
-	if (file.isDirectory()) {
-	    for (File child : file.listFiles()) {
-		doCalcTweetsLocation(map, child);
-	    }
-	} else {
-	    try {
-		List<String> lines = Files.readLines(file,
-			Charset.defaultCharset());
-		Integer currentID = Integer.valueOf(file.getName());
-		for (String line : lines) {
-		    // Parse time zone.
-		    if (line.startsWith("Time") && currentID != null) {
-			if (map.get(currentID) == null) {
-			    map.put(currentID,
-				    new UserTweetsLocation(currentID));
-			}
-			String timezone = parseTimeZone(line);
-			if (!timezone.isEmpty()) {
-			    map.get(currentID).stepNumTweetsForTimeZone(
-				    timezone);
-			}
-		    }
-		}
-	    } catch (IOException e) {
-		logger.fatal("Error on parse file " + file + ": "
-			+ e.getMessage());
-	    }
-	}
-    }
-
-    private String parseID(String line) {
-	return line.substring(line.indexOf("ID:") + 3).trim();
-    }
-
-    // Time record is like: Time: Wed Dec 15 08:30:53 CST 2010
-    private String parseTimeZone(String timeRecord) {
-	if (timeRecord.length() < 9) {
-	    logger.fatal("Error format for Time: " + timeRecord);
-	    return "";
-	}
-
-	return timeRecord.substring(timeRecord.length() - 8,
-		timeRecord.length() - 5);
-    }
-
-    private Map<Integer, Double> calcPercentage(
-	    Map<Integer, UserTweetsLocation> map) {
-
-	Map<Integer, Double> percentageMap = Maps.newHashMap();
-	for (Map.Entry<Integer, UserTweetsLocation> entry : map.entrySet()) {
-	    percentageMap.put(entry.getKey(), entry.getValue()
-		    .calcTweetsFromOneTimeZonePercentage());
-	}
-
-	logger.debug("Done caclulate percentage for tweet location distribution.");
-	return percentageMap;
-    }
-
-    @Override
-    public void drawResult() {
-	// AnalyzeUtils.printMap(tweetsLocationMap);
-	// Draw raw chart for location distribution.
-	logger.info("Drawing tweet location distribution...");
-	ChartUtils.drawDoubleChart("", "Tweet location distribution",
-		"User IDs", "Tweet location centerlization",
-		TWEET_LOCATION_DISTRIBUTION, tweetsLocationMap);
-
-	// Draw aggregated chart for the percentages.
-	Map<Integer, Integer> aggMap = aggTweetsLocationNums(tweetsLocationMap);
-	AnalyzeUtils.printMap(aggMap);
-	ChartUtils.drawBarChart("", "Aggregated tweet location distribution",
-		"Probabilities of tweeting in the same time-zone",
-		"Number of users", TWEET_LOCATION_PERCENTAGE,
-		aggMap, 10, 110);
-	logger.info("Done drawing tweet location  distribution");
-	logger.info("DOND ANALYZE " + this.getClass().getSimpleName());
-    }
-
-    // The aggregated maps is [the probabilities, the numbers]
-    private Map<Integer, Integer> aggTweetsLocationNums(Map<Integer, Double> map) {
-	Map<Integer, Integer> result = Maps.newHashMap();
-	for (Map.Entry<Integer, Double> entry : map.entrySet()) {
-	    int probablity = (int) (entry.getValue() * 100);
-	    roundAndSaveValue(result, probablity);
-	}
-	return result;
-    }
-
-    private void roundAndSaveValue(Map<Integer, Integer> map,
-	    int valueBeforeRound) {
-	if (valueBeforeRound > 100) {
-	    logger.warn("Invalid probability: " + valueBeforeRound);
-	    return;
-	}
-	
-	if (valueBeforeRound % 10 > 4) {
-	    valueBeforeRound = valueBeforeRound + (10 - valueBeforeRound % 10);
-	} else {
-	    valueBeforeRound = valueBeforeRound - valueBeforeRound % 10;
-	}
-
-	if (map.get(valueBeforeRound) == null) {
-	    map.put(valueBeforeRound, 1);
-	} else {
-	    int newNum = map.get(valueBeforeRound) + 1;
-	    map.put(valueBeforeRound, newNum);
-	}
-    }
-
-    @Test
-    public void testParseID() {
-	String ID = "ID: 23018800500";
-	String actual = parseID(ID);
-	Assert.assertEquals("23018800500", actual);
-    }
-
-    @Test
-    public void testParseTimeZone() {
-	String timeRecord = "Time: Wed Dec 15 08:30:53 CST 2010";
-	String actual = parseTimeZone(timeRecord);
-	Assert.assertEquals("CST", actual);
-    }
-}
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import dataset.chart.ChartUtils;
+import dataset.twitter.tweets.TweetsSegmentReader;
+import dataset.utils.AnalyzeUtils;
+import dataset.utils.ConfReader;
+import dataset.utils.InputFingerprint;
+import dataset.utils.ResultCache;
+import dataset.utils.ResultSeries;
+
+/**
+ * Analyze: Users are always tweet from the same data center.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class TweetLocationAnalyze implements IAnalyze {
+    private static final Logger logger = LogManager
+	    .getLogger(TweetLocationAnalyze.class);
+    private static final String TWEET_LOCATION_DISTRIBUTION = "3_tweet_location_distribution";
+    private static final String TWEET_LOCATION_PERCENTAGE = "3_tweet_location_percentage";
+    public static final String CACHED_TWEETS_LOCATION_FILE = "output/"
+	    + TWEET_LOCATION_DISTRIBUTION + ".dat";
+    // Bump when the calculation changes, so the cached results are
+    // recomputed.
+    private static final int RESULT_VERSION = 1;
+    // [user ID, percentage of the tweets from the most tweeted timezone]
+    private ResultSeries tweetsLocation;
+
+    public TweetLocationAnalyze() {
+	this.tweetsLocation = new ResultSeries();
+    }
+
+    @Override
+    public void executeAnalyze() {
+	logger.info("START ANALYZE " + this.getClass().getSimpleName());
+	try {
+	    ConfReader confReader = new ConfReader();
+	    File tweetsDir = confReader.getTweetsDir();
+	    File segmentsDir = confReader.getTweetsSegmentsDir();
+	    // Read the packed tweets if the tweets dir has been packed.
+	    boolean packed = segmentsDir != null
+		    && TweetsSegmentReader.exists(segmentsDir);
+	    File inputDir = packed ? segmentsDir : tweetsDir;
+	    File cachedFile = new File(CACHED_TWEETS_LOCATION_FILE);
+	    if (inputDir.exists() && inputDir.isDirectory()) {
+		String fingerprint = new InputFingerprint().addDir(inputDir)
+			.addParam("analyze", TWEET_LOCATION_DISTRIBUTION)
+			.addParam("version", RESULT_VERSION).build();
+		ResultSeries cached = ResultCache.readSeries(cachedFile,
+			fingerprint);
+		if (cached != null) {
+		    tweetsLocation = cached;
+		} else {
+		    Map<Integer, Double> tweetsLocationMap = packed ? calcPackedTweetsLocation(
+			    segmentsDir, confReader) : calcTweetsLocation(
+			    tweetsDir, confReader);
+		    tweetsLocation = ResultSeries.of(tweetsLocationMap);
+		    ResultCache.invalidate(cachedFile);
+		    AnalyzeUtils
+			    .saveDoubleToFile(tweetsLocationMap, cachedFile);
+		    ResultCache.commit(cachedFile, fingerprint);
+		}
+	    } else {
+		throw new Exception("Can not find dir: " + inputDir);
+	    }
+	} catch (Exception ex) {
+	    logger.fatal("Error on " + this.getClass().getSimpleName() + ": "
+		    + ex.getMessage());
+	    ex.printStackTrace();
+	}
+    }
+
+    private Map<Integer, Double> calcTweetsLocation(File tweetsDir,
+	    ConfReader confReader) {
+	ForkJoinPool pool = new ForkJoinPool(confReader.getNumThreads());
+	Semaphore readPermits = new Semaphore(confReader.getMaxInFlightReads());
+	Map<Integer, UserTweetsLocation> map;
+	try {
+	    map = pool.invoke(new TweetsScanTask(new File[] { tweetsDir }, 0,
+		    1, readPermits));
+	} finally {
+	    pool.shutdown();
+	}
+	logger.debug("Done cacluate tweet location.");
+	return calcPercentage(map);
+    }
+
+    private Map<Integer, Double> calcPackedTweetsLocation(File segmentsDir,
+	    ConfReader confReader) throws IOException {
+	TweetsSegmentReader reader = TweetsSegmentReader.open(segmentsDir);
+	ForkJoinPool pool = new ForkJoinPool(confReader.getNumThreads());
+	Map<Integer, UserTweetsLocation> map;
+	try {
+	    map = pool.invoke(new SegmentScanTask(reader, 0,
+		    reader.getNumEntries()));
+	} finally {
+	    pool.shutdown();
+	}
+	logger.debug("Done cacluate tweet location from packed tweets.");
+	return calcPercentage(map);
+    }
+
+    /**
+     * Scan a range of entries of the packed tweets, the entries are in
+     * segment order so each task reads its part of a segment sequentially.
+     */
+    private static class SegmentScanTask extends
+	    RecursiveTask<Map<Integer, UserTweetsLocation>> {
+	private static final long serialVersionUID = 1L;
+	// Max number of entries scanned by one task without splitting.
+	private static final int BATCH_SIZE = 1024;
+
+	private final TweetsSegmentReader reader;
+	private final int from;
+	private final int to;
+
+	SegmentScanTask(TweetsSegmentReader reader, int from, int to) {
+	    this.reader = reader;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected Map<Integer, UserTweetsLocation> compute() {
+	    if (to - from > BATCH_SIZE) {
+		int middle = (from + to) >>> 1;
+		SegmentScanTask left = new SegmentScanTask(reader, from, middle);
+		left.fork();
+		Map<Integer, UserTweetsLocation> map = new SegmentScanTask(
+			reader, middle, to).compute();
+		return mergeLocations(map, left.join());
+	    }
+
+	    Map<Integer, UserTweetsLocation> map = Maps.newHashMap();
+	    for (int entry = from; entry < to; entry++) {
+		Integer userId = reader.getUserId(entry);
+		int offset = reader.getOffset(entry);
+		UserTweetsLocation location = scanTimeZones(
+			reader.getSegmentBuffer(reader.getSegment(entry)),
+			offset, offset + reader.getLength(entry), userId,
+			map.get(userId));
+		if (location != null) {
+		    map.put(userId, location);
+		}
+	    }
+	    return map;
+	}
+    }
+
+    /**
+     * Scan a range of files and dirs of the tweets dir. Large ranges are
+     * split and every sub dir is a new task, so idle workers steal the
+     * remaining files. Each task counts to its own map, the maps are merged
+     * when the tasks are joined.
+     */
+    private static class TweetsScanTask extends
+	    RecursiveTask<Map<Integer, UserTweetsLocation>> {
+	private static final long serialVersionUID = 1L;
+	// Max number of files scanned by one task without splitting.
+	private static final int BATCH_SIZE = 32;
+
+	private final File[] files;
+	private final int from;
+	private final int to;
+	private final Semaphore readPermits;
+
+	TweetsScanTask(File[] files, int from, int to, Semaphore readPermits) {
+	    this.files = files;
+	    this.from = from;
+	    this.to = to;
+	    this.readPermits = readPermits;
+	}
+
+	@Override
+	protected Map<Integer, UserTweetsLocation> compute() {
+	    if (to - from > BATCH_SIZE) {
+		int middle = (from + to) >>> 1;
+		TweetsScanTask left = new TweetsScanTask(files, from, middle,
+			readPermits);
+		left.fork();
+		Map<Integer, UserTweetsLocation> map = new TweetsScanTask(
+			files, middle, to, readPermits).compute();
+		return mergeLocations(map, left.join());
+	    }
+
+	    Map<Integer, UserTweetsLocation> map = Maps.newHashMap();
+	    List<TweetsScanTask> subDirs = Lists.newArrayList();
+	    TweetsFileReader reader = new TweetsFileReader(readPermits);
+	    for (int i = from; i < to; i++) {
+		File file = files[i];
+		if (file.isDirectory()) {
+		    File[] children = file.listFiles();
+		    if (children != null) {
+			TweetsScanTask subDir = new TweetsScanTask(children, 0,
+				children.length, readPermits);
+			subDir.fork();
+			subDirs.add(subDir);
+		    }
+		} else {
+		    scanFile(map, file, reader);
+		}
+	    }
+	    for (TweetsScanTask subDir : subDirs) {
+		map = mergeLocations(map, subDir.join());
+	    }
+	    return map;
+	}
+
+	private void scanFile(Map<Integer, UserTweetsLocation> map,
+		File file, TweetsFileReader reader) {
+	    try {
+		Integer currentID = Integer.valueOf(file.getName());
+		reader.setFile(file);
+		ForkJoinPool.managedBlock(reader);
+		ByteBuffer content = reader.getContent();
+		UserTweetsLocation location = scanTimeZones(content, 0,
+			content.limit(), currentID, map.get(currentID));
+		if (location != null) {
+		    map.put(currentID, location);
+		}
+	    } catch (IOException e) {
+		logger.fatal("Error on parse file " + file + ": "
+			+ e.getMessage());
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new IllegalStateException("Interrupted on reading "
+			+ file, e);
+	    }
+	}
+    }
+
+    // Merge the smaller map to the larger one.
+    private static Map<Integer, UserTweetsLocation> mergeLocations(
+	    Map<Integer, UserTweetsLocation> map,
+	    Map<Integer, UserTweetsLocation> other) {
+	if (other.size() > map.size()) {
+	    Map<Integer, UserTweetsLocation> swap = map;
+	    map = other;
+	    other = swap;
+	}
+	for (Map.Entry<Integer, UserTweetsLocation> entry : other
+		.entrySet()) {
+	    UserTweetsLocation location = map.get(entry.getKey());
+	    if (location == null) {
+		map.put(entry.getKey(), entry.getValue());
+	    } else {
+		location.merge(entry.getValue());
+	    }
+	}
+	return map;
+    }
+
+    /**
+     * Read a tweets file as a blocking operation of the ForkJoinPool, so the
+     * pool could run other tasks while the read waits for the disk. The
+     * permits bound the number of reads in flight. The buffer is reused for
+     * the next file, large files are memory mapped instead.
+     */
+    private static class TweetsFileReader implements
+	    ForkJoinPool.ManagedBlocker {
+	private static final int MAP_THRESHOLD = 8 * 1024 * 1024;
+
+	private final Semaphore readPermits;
+	private ByteBuffer buffer;
+	private File file;
+	private ByteBuffer content;
+	private IOException error;
+
+	TweetsFileReader(Semaphore readPermits) {
+	    this.readPermits = readPermits;
+	    this.buffer = ByteBuffer.allocate(64 * 1024);
+	}
+
+	void setFile(File file) {
+	    this.file = file;
+	    this.content = null;
+	    this.error = null;
+	}
+
+	ByteBuffer getContent() throws IOException {
+	    if (error != null) {
+		throw error;
+	    }
+	    return content;
+	}
+
+	@Override
+	public boolean block() throws InterruptedException {
+	    readPermits.acquire();
+	    try {
+		content = read();
+	    } catch (IOException e) {
+		error = e;
+		content = ByteBuffer.allocate(0);
+	    } finally {
+		readPermits.release();
+	    }
+	    return true;
+	}
+
+	private ByteBuffer read() throws IOException {
+	    RandomAccessFile raf = new RandomAccessFile(file, "r");
+	    try {
+		FileChannel channel = raf.getChannel();
+		long size = channel.size();
+		if (size > MAP_THRESHOLD) {
+		    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		if (size > buffer.capacity()) {
+		    buffer = ByteBuffer.allocate((int) size);
+		}
+		buffer.clear();
+		while (buffer.position() < size && channel.read(buffer) >= 0) {
+		    // Read until the end of the file.
+		}
+		buffer.flip();
+		return buffer;
+	    } finally {
+		raf.close();
+	    }
+	}
+
+	@Override
+	public boolean isReleasable() {
+	    return content != null;
+	}
+    }
+
+    /**
+     * Count the time zones of the Time records between start and end of the
+     * buffer to the location of the user. The lines are matched in the bytes
+     * as parseTimeZone() does for a String line, so no String is created
+     * unless a Time record has non ASCII characters.
+     *
+     * @return The location, which is created at the first Time record if it
+     *         is null.
+     */
+    static UserTweetsLocation scanTimeZones(ByteBuffer buffer, int start,
+	    int end, Integer userId, UserTweetsLocation location) {
+	int lineStart = start;
+	for (int i = start; i <= end; i++) {
+	    if (i < end) {
+		byte current = buffer.get(i);
+		if (current != '\n' && current != '\r') {
+		    continue;
+		}
+	    }
+	    if (isTimeRecord(buffer, lineStart, i)) {
+		if (location == null) {
+		    location = new UserTweetsLocation(userId);
+		}
+		int timezoneCode = parseTimeZoneCode(buffer, lineStart, i);
+		if (timezoneCode >= 0) {
+		    location.stepNumTweetsForTimeZone(timezoneCode);
+		}
+	    }
+	    lineStart = i + 1;
+	}
+	return location;
+    }
+
+    private static boolean isTimeRecord(ByteBuffer buffer, int start, int end) {
+	return end - start >= 4 && buffer.get(start) == 'T'
+		&& buffer.get(start + 1) == 'i' && buffer.get(start + 2) == 'm'
+		&& buffer.get(start + 3) == 'e';
+    }
+
+    /**
+     * @return The code in TimeZoneTable of the time zone of the Time record,
+     *         or -1 if the record is too short.
+     */
+    private static int parseTimeZoneCode(ByteBuffer buffer, int start, int end) {
+	for (int i = start; i < end; i++) {
+	    if (buffer.get(i) < 0) {
+		// Characters and bytes differ, fall back to the String line.
+		String timezone = parseTimeZone(decode(buffer, start, end));
+		return timezone.isEmpty() ? -1 : TimeZoneTable.intern(timezone);
+	    }
+	}
+	if (end - start < 9) {
+	    logger.fatal("Error format for Time: " + decode(buffer, start, end));
+	    return -1;
+	}
+	return TimeZoneTable.intern(TimeZoneTable.pack(buffer.get(end - 8),
+		buffer.get(end - 7), buffer.get(end - 6)));
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int end) {
+	byte[] bytes = new byte[end - start];
+	for (int i = 0; i < bytes.length; i++) {
+	    bytes[i] = buffer.get(start + i);
+	}
+	return new String(bytes, Charset.defaultCharset());
+    }
+
+    private String parseID(String line) {
+	return line.substring(line.indexOf("ID:") + 3).trim();
+    }
+
+    // Time record is like: Time: Wed Dec 15 08:30:53 CST 2010
+    private static String parseTimeZone(String timeRecord) {
+	if (timeRecord.length() < 9) {
+	    logger.fatal("Error format for Time: " + timeRecord);
+	    return "";
+	}
+
+	return timeRecord.substring(timeRecord.length() - 8,
+		timeRecord.length() - 5);
+    }
+
+    private Map<Integer, Double> calcPercentage(
+	    Map<Integer, UserTweetsLocation> map) {
+
+	Map<Integer, Double> percentageMap = Maps.newHashMap();
+	for (Map.Entry<Integer, UserTweetsLocation> entry : map.entrySet()) {
+	    percentageMap.put(entry.getKey(), entry.getValue()
+		    .calcTweetsFromOneTimeZonePercentage());
+	}
+
+	logger.debug("Done caclulate percentage for tweet location distribution.");
+	return percentageMap;
+    }
+
+    @Override
+    public void drawResult() {
+	// Draw raw chart for location distribution.
+	logger.info("Drawing tweet location distribution...");
+	ChartUtils.drawChart("", "Tweet location distribution", null,
+		"User IDs", "Tweet location centerlization",
+		TWEET_LOCATION_DISTRIBUTION, tweetsLocation);
+
+	// Draw aggregated chart for the percentages.
+	Map<Integer, Integer> aggMap = aggTweetsLocationNums(tweetsLocation);
+	AnalyzeUtils.printMap(aggMap);
+	ChartUtils.drawBarChart("", "Aggregated tweet location distribution",
+		"Probabilities of tweeting in the same time-zone",
+		"Number of users", TWEET_LOCATION_PERCENTAGE,
+		aggMap, 10, 110);
+	logger.info("Done drawing tweet location  distribution");
+	logger.info("DOND ANALYZE " + this.getClass().getSimpleName());
+    }
+
+    // The aggregated maps is [the probabilities, the numbers]
+    private Map<Integer, Integer> aggTweetsLocationNums(ResultSeries series) {
+	Map<Integer, Integer> result = Maps.newHashMap();
+	for (int i = 0; i < series.size(); i++) {
+	    int probablity = (int) (series.getValue(i) * 100);
+	    roundAndSaveValue(result, probablity);
+	}
+	return result;
+    }
+
+    private void roundAndSaveValue(Map<Integer, Integer> map,
+	    int valueBeforeRound) {
+	if (valueBeforeRound > 100) {
+	    logger.warn("Invalid probability: " + valueBeforeRound);
+	    return;
+	}
+	
+	if (valueBeforeRound % 10 > 4) {
+	    valueBeforeRound = valueBeforeRound + (10 - valueBeforeRound % 10);
+	} else {
+	    valueBeforeRound = valueBeforeRound - valueBeforeRound % 10;
+	}
+
+	if (map.get(valueBeforeRound) == null) {
+	    map.put(valueBeforeRound, 1);
+	} else {
+	    int newNum = map.get(valueBeforeRound) + 1;
+	    map.put(valueBeforeRound, newNum);
+	}
+    }
+
+    @Test
+    public void testParseID() {
+	String ID = "ID: 23018800500";
+	String actual = parseID(ID);
+	Assert.assertEquals("23018800500", actual);
+    }
+
+    @Test
+    public void testParseTimeZone() {
+	String timeRecord = "Time: Wed Dec 15 08:30:53 CST 2010";
+	String actual = parseTimeZone(timeRecord);
+	Assert.assertEquals("CST", actual);
+    }
+
+    @Test
+    public void testScanTimeZones() {
+	String tweets = "ID: 1\nTime: Wed Dec 15 08:30:53 CST 2010\r\n"
+		+ "Text: Time: Wed Dec 15 08:30:53 PST 2010\n"
+		+ "Time: Thu Dec 16 09:00:00 CST 2010\rTime: x\n"
+		+ "Time: Fri Dec 17 10:00:00 EST 2010";
+	ByteBuffer buffer = ByteBuffer.wrap(tweets.getBytes());
+	UserTweetsLocation location = scanTimeZones(buffer, 0,
+		buffer.limit(), 1, null);
+	Map<String, Integer> timezoneTweetsMap = location
+		.getTimezoneTweetsMap();
+	Assert.assertEquals(2, timezoneTweetsMap.size());
+	Assert.assertEquals(Integer.valueOf(2), timezoneTweetsMap.get("CST"));
+	Assert.assertEquals(Integer.valueOf(1), timezoneTweetsMap.get("EST"));
+	Assert.assertNull(scanTimeZones(buffer, 0, 6, 1, null));
+    }
+}
@@ -0,0 +1,246 @@
+package dataset.twitter.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+
+import dataset.utils.ByteParser;
+
+/**
+ * Streaming parser of the profiles file. The file is memory mapped in line
+ * aligned chunks which are parsed in parallel directly from the bytes, so
+ * neither the lines nor the split fields are ever materialized as Strings.
+ * The parsing rules are the same as in UserProfiler.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class UserProfileParser {
+    private static final Logger logger = LogManager
+	    .getLogger(UserProfileParser.class);
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int NUM_FIELDS = 8;
+    private static final long INVALID = ByteParser.INVALID;
+    // Bytes per profile row, only used to pre-size the chunk stores.
+    private static final int ESTIMATED_ROW_SIZE = 64;
+
+    private final Map<String, String> allCityStateMap;
+    private final int numThreads;
+    private final int chunkSize;
+    private final Charset charset;
+    private final AtomicLong rejectedRows = new AtomicLong();
+
+    public UserProfileParser(Map<String, String> allCityStateMap,
+	    int numThreads) {
+	this(allCityStateMap, numThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public UserProfileParser(Map<String, String> allCityStateMap,
+	    int numThreads, int chunkSize) {
+	this.allCityStateMap = allCityStateMap;
+	this.numThreads = Math.max(numThreads, 1);
+	this.chunkSize = chunkSize;
+	this.charset = Charset.defaultCharset();
+    }
+
+    /**
+     * @return Number of rows rejected by the last parse.
+     */
+    public long getRejectedRows() {
+	return rejectedRows.get();
+    }
+
+    public UserProfileStore parse(File profileFile) throws IOException {
+	rejectedRows.set(0);
+	RandomAccessFile raf = new RandomAccessFile(profileFile, "r");
+	ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+	try {
+	    final FileChannel channel = raf.getChannel();
+	    List<long[]> chunks = splitToChunks(channel);
+	    logger.debug("Parse " + profileFile + " in " + chunks.size()
+		    + " chunks with " + numThreads + " threads");
+
+	    List<Future<UserProfileStore>> results = Lists.newArrayList();
+	    for (final long[] chunk : chunks) {
+		results.add(executor.submit(new Callable<UserProfileStore>() {
+		    @Override
+		    public UserProfileStore call() throws Exception {
+			return parseChunk(channel, chunk[0], chunk[1]);
+		    }
+		}));
+	    }
+
+	    // Merge in file order so the row order is the same as the file.
+	    UserProfileStore store = new UserProfileStore(
+		    (int) Math.min(channel.size() / ESTIMATED_ROW_SIZE,
+			    Integer.MAX_VALUE - 8));
+	    for (Future<UserProfileStore> result : results) {
+		store.addAll(result.get());
+	    }
+	    store.trimToSize();
+	    return store;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted on parsing " + profileFile, e);
+	} catch (ExecutionException e) {
+	    throw new IOException("Failed to parse " + profileFile,
+		    e.getCause());
+	} finally {
+	    executor.shutdownNow();
+	    raf.close();
+	}
+    }
+
+    /**
+     * Split the file to [start, end) ranges of about chunkSize bytes, each
+     * range ends right after a line break or at the end of the file.
+     */
+    private List<long[]> splitToChunks(FileChannel channel) throws IOException {
+	List<long[]> chunks = Lists.newArrayList();
+	long fileSize = channel.size();
+	long start = 0;
+	while (start < fileSize) {
+	    long end = Math.min(start + chunkSize, fileSize);
+	    if (end < fileSize) {
+		end = nextLineStart(channel, end, fileSize);
+	    }
+	    chunks.add(new long[] { start, end });
+	    start = end;
+	}
+	return chunks;
+    }
+
+    private long nextLineStart(FileChannel channel, long position,
+	    long fileSize) throws IOException {
+	final int window = 64 * 1024;
+	while (position < fileSize) {
+	    int length = (int) Math.min(window, fileSize - position);
+	    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+		    position, length);
+	    for (int i = 0; i < length; i++) {
+		if (buffer.get(i) == '\n') {
+		    return position + i + 1;
+		}
+	    }
+	    position += length;
+	}
+	return fileSize;
+    }
+
+    private UserProfileStore parseChunk(FileChannel channel, long start,
+	    long end) throws IOException {
+	MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+		start, end - start);
+	UserProfileStore store = new UserProfileStore(
+		(int) ((end - start) / ESTIMATED_ROW_SIZE));
+	int[] fieldStarts = new int[NUM_FIELDS];
+	int[] fieldEnds = new int[NUM_FIELDS];
+	byte[] scratch = new byte[256];
+	long rejected = 0;
+
+	int limit = buffer.limit();
+	int lineStart = 0;
+	while (lineStart < limit) {
+	    // Lines end with \n, \r or \r\n as in Files.readLines().
+	    int lineEnd = lineStart;
+	    byte current = 0;
+	    while (lineEnd < limit && (current = buffer.get(lineEnd)) != '\n'
+		    && current != '\r') {
+		lineEnd++;
+	    }
+	    int next = lineEnd + 1;
+	    if (current == '\r' && next < limit && buffer.get(next) == '\n') {
+		next++;
+	    }
+	    if (!parseLine(buffer, lineStart, lineEnd, fieldStarts, fieldEnds,
+		    scratch, store)) {
+		rejected++;
+	    }
+	    lineStart = next;
+	}
+	rejectedRows.addAndGet(rejected);
+	return store;
+    }
+
+    private boolean parseLine(MappedByteBuffer buffer, int lineStart,
+	    int lineEnd, int[] fieldStarts, int[] fieldEnds, byte[] scratch,
+	    UserProfileStore store) {
+	if (lineStart == lineEnd) {
+	    return false;
+	}
+
+	// Split on tabs, String.split() drops the trailing empty fields.
+	int fieldIndex = 0;
+	int numFields = 0;
+	int fieldStart = lineStart;
+	for (int i = lineStart; i <= lineEnd; i++) {
+	    if (i == lineEnd || buffer.get(i) == '\t') {
+		if (fieldIndex < NUM_FIELDS) {
+		    fieldStarts[fieldIndex] = fieldStart;
+		    fieldEnds[fieldIndex] = i;
+		}
+		if (i > fieldStart) {
+		    numFields = fieldIndex + 1;
+		    if (numFields > NUM_FIELDS) {
+			return false;
+		    }
+		}
+		fieldIndex++;
+		fieldStart = i + 1;
+	    }
+	}
+	if (numFields != NUM_FIELDS) {
+	    return false;
+	}
+
+	long id = ByteParser.parseInt(buffer, fieldStarts[0], fieldEnds[0]);
+	long followers = ByteParser.parseInt(buffer, fieldStarts[3],
+		fieldEnds[3]);
+	if (id == INVALID || followers == INVALID) {
+	    return false;
+	}
+
+	String city = decode(buffer, fieldStarts[7], fieldEnds[7], scratch);
+	String location = allCityStateMap.get(city);
+	store.add((int) id,
+		parseOptionalInt(buffer, fieldStarts[2], fieldEnds[2]),
+		(int) followers,
+		parseOptionalInt(buffer, fieldStarts[4], fieldEnds[4]),
+		parseOptionalInt(buffer, fieldStarts[5], fieldEnds[5]),
+		parseOptionalInt(buffer, fieldStarts[6], fieldEnds[6]),
+		location, location == null ? null : city);
+	return true;
+    }
+
+    private String decode(MappedByteBuffer buffer, int start, int end,
+	    byte[] scratch) {
+	int length = end - start;
+	byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+	for (int i = 0; i < length; i++) {
+	    bytes[i] = buffer.get(start + i);
+	}
+	return new String(bytes, 0, length, charset);
+    }
+
+    private static int parseOptionalInt(MappedByteBuffer buffer, int start,
+	    int end) {
+	long value = ByteParser.parseInt(buffer, start, end);
+	return value == INVALID ? -1 : (int) value;
+    }
+}
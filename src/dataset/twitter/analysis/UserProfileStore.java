@@ -0,0 +1,253 @@
+package dataset.twitter.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import dataset.utils.IntIntMap;
+
+/**
+ * Columnar store of all user profiles. Every profile field is kept in its own
+ * primitive array indexed by row, and the locations are dictionary encoded to
+ * small int codes, so a profile costs a few ints instead of an object with
+ * boxed fields. The resolved cities are dictionary encoded the same way for
+ * the analyses which need the coordinates of the users.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class UserProfileStore {
+    // Location code of a user whose city can not be resolved to a state.
+    public static final int UNKNOWN_LOCATION = -1;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int size;
+    private int[] ids;
+    private int[] followed;
+    private int[] followers;
+    private int[] status;
+    private int[] favorites;
+    private int[] ages;
+    private int[] locations;
+    private int[] cities;
+
+    private final List<String> locationNames;
+    private final Map<String, Integer> locationCodes;
+    private final List<String> cityNames;
+    private final Map<String, Integer> cityCodes;
+
+    public UserProfileStore() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    public UserProfileStore(int initialCapacity) {
+	int capacity = Math.max(initialCapacity, 16);
+	ids = new int[capacity];
+	followed = new int[capacity];
+	followers = new int[capacity];
+	status = new int[capacity];
+	favorites = new int[capacity];
+	ages = new int[capacity];
+	locations = new int[capacity];
+	cities = new int[capacity];
+	locationNames = Lists.newArrayList();
+	locationCodes = Maps.newHashMap();
+	cityNames = Lists.newArrayList();
+	cityCodes = Maps.newHashMap();
+    }
+
+    public void add(UserProfiler profiler) {
+	add(profiler.id, profiler.followed, profiler.followers,
+		profiler.status, profiler.favorites, profiler.age,
+		profiler.location, profiler.city);
+    }
+
+    /**
+     * @param city
+     *            The city of the profile, null if it is not resolved to the
+     *            location.
+     */
+    public void add(int id, int numFollowed, int numFollowers,
+	    int numStatus, int numFavorites, int age, String location,
+	    String city) {
+	ensureCapacity(size + 1);
+	ids[size] = id;
+	followed[size] = numFollowed;
+	followers[size] = numFollowers;
+	status[size] = numStatus;
+	favorites[size] = numFavorites;
+	ages[size] = age;
+	locations[size] = internLocation(location);
+	cities[size] = intern(city, cityNames, cityCodes);
+	size++;
+    }
+
+    /**
+     * Append all profiles of the other store, its location and city codes
+     * are mapped to the codes of this store.
+     */
+    public void addAll(UserProfileStore other) {
+	int[] codeMapping = new int[other.getNumLocations()];
+	for (int code = 0; code < codeMapping.length; code++) {
+	    codeMapping[code] = internLocation(other.getLocationName(code));
+	}
+	int[] cityMapping = new int[other.getNumCities()];
+	for (int code = 0; code < cityMapping.length; code++) {
+	    cityMapping[code] = intern(other.getCityName(code), cityNames,
+		    cityCodes);
+	}
+	ensureCapacity(size + other.size);
+	System.arraycopy(other.ids, 0, ids, size, other.size);
+	System.arraycopy(other.followed, 0, followed, size, other.size);
+	System.arraycopy(other.followers, 0, followers, size, other.size);
+	System.arraycopy(other.status, 0, status, size, other.size);
+	System.arraycopy(other.favorites, 0, favorites, size, other.size);
+	System.arraycopy(other.ages, 0, ages, size, other.size);
+	for (int row = 0; row < other.size; row++) {
+	    int code = other.locations[row];
+	    locations[size + row] = code == UNKNOWN_LOCATION ? UNKNOWN_LOCATION
+		    : codeMapping[code];
+	    int cityCode = other.cities[row];
+	    cities[size + row] = cityCode == UNKNOWN_LOCATION ? UNKNOWN_LOCATION
+		    : cityMapping[cityCode];
+	}
+	size += other.size;
+    }
+
+    /**
+     * @return The code of the location, or UNKNOWN_LOCATION for null.
+     */
+    public int internLocation(String location) {
+	return intern(location, locationNames, locationCodes);
+    }
+
+    private static int intern(String value, List<String> names,
+	    Map<String, Integer> codes) {
+	if (value == null) {
+	    return UNKNOWN_LOCATION;
+	}
+	Integer code = codes.get(value);
+	if (code == null) {
+	    code = names.size();
+	    names.add(value);
+	    codes.put(value, code);
+	}
+	return code;
+    }
+
+    /**
+     * @return The location name of the code, or null for UNKNOWN_LOCATION.
+     */
+    public String getLocationName(int code) {
+	return code == UNKNOWN_LOCATION ? null : locationNames.get(code);
+    }
+
+    public int getNumLocations() {
+	return locationNames.size();
+    }
+
+    /**
+     * @return The city name of the code, or null for UNKNOWN_LOCATION.
+     */
+    public String getCityName(int code) {
+	return code == UNKNOWN_LOCATION ? null : cityNames.get(code);
+    }
+
+    public int getNumCities() {
+	return cityNames.size();
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    public int getId(int row) {
+	return ids[row];
+    }
+
+    public int getFollowed(int row) {
+	return followed[row];
+    }
+
+    public int getFollowers(int row) {
+	return followers[row];
+    }
+
+    public int getStatus(int row) {
+	return status[row];
+    }
+
+    public int getFavorites(int row) {
+	return favorites[row];
+    }
+
+    public int getAge(int row) {
+	return ages[row];
+    }
+
+    public int getLocationCode(int row) {
+	return locations[row];
+    }
+
+    public int getCityCode(int row) {
+	return cities[row];
+    }
+
+    /**
+     * Create the [user ID, location code] index of all users. Users without a
+     * known location are mapped to UNKNOWN_LOCATION, which is also the value
+     * returned for IDs not in the store.
+     */
+    public IntIntMap createIDLocationIndex() {
+	IntIntMap index = new IntIntMap(size, UNKNOWN_LOCATION);
+	for (int row = 0; row < size; row++) {
+	    index.put(ids[row], locations[row]);
+	}
+	return index;
+    }
+
+    /**
+     * Create the [user ID, city code] index of all users, the same way as
+     * createIDLocationIndex().
+     */
+    public IntIntMap createIDCityIndex() {
+	IntIntMap index = new IntIntMap(size, UNKNOWN_LOCATION);
+	for (int row = 0; row < size; row++) {
+	    index.put(ids[row], cities[row]);
+	}
+	return index;
+    }
+
+    /**
+     * Release the unused capacity once all profiles are added.
+     */
+    public void trimToSize() {
+	if (ids.length != size) {
+	    resize(size);
+	}
+    }
+
+    private void ensureCapacity(int minCapacity) {
+	if (minCapacity > ids.length) {
+	    resize(Math.max(minCapacity, ids.length + (ids.length >> 1)));
+	}
+    }
+
+    private void resize(int capacity) {
+	ids = Arrays.copyOf(ids, capacity);
+	followed = Arrays.copyOf(followed, capacity);
+	followers = Arrays.copyOf(followers, capacity);
+	status = Arrays.copyOf(status, capacity);
+	favorites = Arrays.copyOf(favorites, capacity);
+	ages = Arrays.copyOf(ages, capacity);
+	locations = Arrays.copyOf(locations, capacity);
+	cities = Arrays.copyOf(cities, capacity);
+    }
+}
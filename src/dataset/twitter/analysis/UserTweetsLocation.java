@@ -1,50 +1,85 @@
-package dataset.twitter.analysis;
-
-import java.math.BigDecimal;
-import java.util.Map;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-
-import com.google.common.collect.Maps;
-
-public class UserTweetsLocation {
-    private static final Logger logger = LogManager.getLogger(UserTweetsLocation.class);
-    public final Integer userId;
-    public final Map<String, Integer> timezoneTweetsMap;
-    
-    public UserTweetsLocation(final Integer userId){
-	this.userId = userId;
-	this.timezoneTweetsMap = Maps.newHashMap();
-    }
-    
-    public void stepNumTweetsForTimeZone(final String timezone){
-	if(timezoneTweetsMap.get(timezone) == null){
-	    timezoneTweetsMap.put(timezone, 1);
-	} else {
-	    int newNum = timezoneTweetsMap.get(timezone)+1;
-	    timezoneTweetsMap.put(timezone, newNum);
-	}
-    }
-    
-    /**
-     * @return The largest number of tweets from a timezone divide all tweets number.
-     */
-    public Double calcTweetsFromOneTimeZonePercentage(){
-	Integer sum = Integer.valueOf(0);
-	Integer maxValue= Integer.valueOf(-1);
-	for(Integer value: timezoneTweetsMap.values()){
-	    sum = sum + value;
-	    if(value.intValue() > maxValue){
-		maxValue = value;
-	    }
-	}
-	
-	try{
-	    return Double.valueOf(maxValue)/(Double.valueOf(sum));    
-	}catch(ArithmeticException ex){
-	    logger.fatal("Can not calc BigDecimal value for: "+maxValue+"/"+sum);
-	    return Double.NaN;
-	}
-    }
-}
+package dataset.twitter.analysis;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+public class UserTweetsLocation {
+    private static final Logger logger = LogManager.getLogger(UserTweetsLocation.class);
+    public final Integer userId;
+    // [Time zone code of TimeZoneTable, num tweets]
+    private int[] timezoneTweets;
+    
+    public UserTweetsLocation(final Integer userId){
+	this.userId = userId;
+	this.timezoneTweets = new int[Math.max(TimeZoneTable.size(), 8)];
+    }
+    
+    public void stepNumTweetsForTimeZone(final String timezone){
+	stepNumTweetsForTimeZone(TimeZoneTable.intern(timezone));
+    }
+    
+    /**
+     * @param timezoneCode The code of the time zone in TimeZoneTable.
+     */
+    public void stepNumTweetsForTimeZone(final int timezoneCode){
+	if(timezoneCode >= timezoneTweets.length){
+	    timezoneTweets = Arrays.copyOf(timezoneTweets, Math.max(timezoneCode + 1, timezoneTweets.length * 2));
+	}
+	timezoneTweets[timezoneCode]++;
+    }
+    
+    /**
+     * @return [Time zone, num tweets] of the user.
+     */
+    public Map<String, Integer> getTimezoneTweetsMap(){
+	Map<String, Integer> timezoneTweetsMap = Maps.newHashMap();
+	for(int code = 0; code < timezoneTweets.length; code++){
+	    if(timezoneTweets[code] > 0){
+		timezoneTweetsMap.put(TimeZoneTable.getName(code), timezoneTweets[code]);
+	    }
+	}
+	return timezoneTweetsMap;
+    }
+    
+    /**
+     * Add the tweets of the other location of the same user.
+     */
+    public void merge(final UserTweetsLocation other){
+	if(other.timezoneTweets.length > timezoneTweets.length){
+	    timezoneTweets = Arrays.copyOf(timezoneTweets, other.timezoneTweets.length);
+	}
+	for(int code = 0; code < other.timezoneTweets.length; code++){
+	    timezoneTweets[code] += other.timezoneTweets[code];
+	}
+    }
+    
+    /**
+     * @return The largest number of tweets from a timezone divide all tweets number.
+     */
+    public Double calcTweetsFromOneTimeZonePercentage(){
+	int sum = 0;
+	int maxValue = -1;
+	for(int value: timezoneTweets){
+	    if(value == 0){
+		continue;
+	    }
+	    sum = sum + value;
+	    if(value > maxValue){
+		maxValue = value;
+	    }
+	}
+	
+	try{
+	    return Double.valueOf(maxValue)/(Double.valueOf(sum));    
+	}catch(ArithmeticException ex){
+	    logger.fatal("Can not calc BigDecimal value for: "+maxValue+"/"+sum);
+	    return Double.NaN;
+	}
+    }
+}
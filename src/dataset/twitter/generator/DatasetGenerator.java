@@ -0,0 +1,368 @@
+package dataset.twitter.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import dataset.db.CityStateDictionary;
+import dataset.db.DBProvider;
+import dataset.utils.IntIntMap;
+
+/**
+ * Generate a synthetic data set in the format of the UDI Twitter crawl, to
+ * test the analyses at scales the real crawl does not have. The output dir
+ * gets
+ *
+ * <pre>
+ * profiles.txt: the 8 tab separated columns read by UserProfiler
+ * network/:     files of tab separated [user ID, follower ID] lines
+ * tweets/:      one file of tweets records per user, named by the user ID
+ * </pre>
+ *
+ * The numbers of followers follow a power law with about the given average,
+ * capped by the number of users, and the followers of a user are distinct.
+ * The cities are drawn from the zips of the city dictionary and the time
+ * zones of the tweets from the longitude of the city. Every user is written
+ * before the next one is generated, so the memory does not depend on the
+ * number of users.
+ *
+ * Usage: DatasetGenerator [output dir] [num users] [average degree] [tweets
+ * per user] [seed]
+ *
+ * @author qinjin.wang
+ *
+ */
+public class DatasetGenerator {
+    private static final Logger logger = LogManager
+	    .getLogger(DatasetGenerator.class);
+    public static final String PROFILES_FILE = "profiles.txt";
+    public static final String NETWORK_DIR = "network";
+    public static final String TWEETS_DIR = "tweets";
+    // Exponent of the power law of the number of followers.
+    private static final double DEGREE_EXPONENT = 2.1;
+    // Share of the users whose city is not a US city.
+    private static final double UNKNOWN_CITY_RATE = 0.2;
+    // Share of the tweets sent away from the home time zone.
+    private static final double TRAVEL_RATE = 0.02;
+    private static final String[] UNKNOWN_CITIES = { "London", "Earth",
+	    "Toronto", "Somewhere" };
+    private static final String[] TRAVEL_TIME_ZONES = { "Europe/London",
+	    "Asia/Tokyo", "America/New_York", "America/Los_Angeles" };
+    private static final int EDGES_PER_FILE = 10 * 1000 * 1000;
+    private static final int USERS_PER_TWEETS_DIR = 1000;
+    // Tweets are sent between 2010-01-01 and 2012-08-01.
+    private static final long FIRST_TWEET_TIME = 1262304000000L;
+    private static final long LAST_TWEET_TIME = 1343779200000L;
+
+    private final CityStateDictionary dictionary;
+    private final int numUsers;
+    private final double averageDegree;
+    private final int tweetsPerUser;
+    private final long seed;
+    // Scale of the power law whose mean, after capping, is the average.
+    private final double degreeScale;
+    private final Charset charset;
+    private final Map<String, SimpleDateFormat> timeFormats;
+
+    private Random random;
+    private BufferedWriter networkWriter;
+    private int numNetworkFiles;
+    private int networkFileEdges;
+    private long numEdges;
+    private long numTweets;
+
+    /**
+     * @param tweetsPerUser
+     *            Average number of tweets of a user, 0 to skip the tweets.
+     */
+    public DatasetGenerator(CityStateDictionary dictionary, int numUsers,
+	    double averageDegree, int tweetsPerUser, long seed) {
+	if (numUsers < 2 || averageDegree <= 0 || tweetsPerUser < 0) {
+	    throw new IllegalArgumentException("Invalid size of " + numUsers
+		    + " users, " + averageDegree + " average degree and "
+		    + tweetsPerUser + " tweets per user");
+	}
+	this.dictionary = dictionary;
+	this.numUsers = numUsers;
+	this.averageDegree = averageDegree;
+	this.tweetsPerUser = tweetsPerUser;
+	this.seed = seed;
+	this.degreeScale = degreeScale(averageDegree, numUsers - 1);
+	this.charset = Charset.defaultCharset();
+	this.timeFormats = Maps.newHashMap();
+    }
+
+    /**
+     * Generate the data set to the output dir, the same seed always
+     * generates the same data set.
+     */
+    public void generate(File outputDir) throws IOException {
+	File networkDir = new File(outputDir, NETWORK_DIR);
+	File tweetsDir = new File(outputDir, TWEETS_DIR);
+	if (!networkDir.isDirectory() && !networkDir.mkdirs()) {
+	    throw new IOException("Can not create dir: " + networkDir);
+	}
+
+	long startTime = System.currentTimeMillis();
+	random = new Random(seed);
+	numNetworkFiles = 0;
+	networkFileEdges = 0;
+	numEdges = 0;
+	numTweets = 0;
+	BufferedWriter profilesWriter = newWriter(new File(outputDir,
+		PROFILES_FILE));
+	try {
+	    for (int row = 0; row < numUsers; row++) {
+		generateUser(row, profilesWriter, networkDir, tweetsDir);
+		if ((row + 1) % 100000 == 0) {
+		    logger.info("Generated " + (row + 1) + " of " + numUsers
+			    + " users");
+		}
+	    }
+	} finally {
+	    profilesWriter.close();
+	    if (networkWriter != null) {
+		networkWriter.close();
+		networkWriter = null;
+	    }
+	}
+	logger.info("Generated " + numUsers + " users, " + numEdges
+		+ " edges in " + numNetworkFiles + " files and " + numTweets
+		+ " tweets to " + outputDir + " in "
+		+ (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private void generateUser(int row, Writer profilesWriter,
+	    File networkDir, File tweetsDir) throws IOException {
+	int id = userId(row);
+	int numFollowers = nextDegree();
+	int zip = -1;
+	String city;
+	if (random.nextDouble() < UNKNOWN_CITY_RATE) {
+	    city = UNKNOWN_CITIES[random.nextInt(UNKNOWN_CITIES.length)];
+	} else {
+	    // Larger cities have more zips, so they get more users.
+	    zip = random.nextInt(dictionary.getNumZips());
+	    city = dictionary.getCity(zip);
+	}
+	int userTweets = tweetsPerUser == 0 ? 0 : random
+		.nextInt(2 * tweetsPerUser + 1);
+
+	profilesWriter.write(id + "\tuser" + id + "\t"
+		+ nextDegree() + "\t" + numFollowers + "\t"
+		+ (userTweets + random.nextInt(100)) + "\t"
+		+ random.nextInt(500) + "\t" + random.nextInt(2000) + "\t"
+		+ city + "\n");
+
+	writeFollowers(networkDir, row, numFollowers);
+
+	if (userTweets > 0) {
+	    File userFile = new File(new File(tweetsDir, String.valueOf(row
+		    / USERS_PER_TWEETS_DIR)), String.valueOf(id));
+	    writeTweets(userFile, id, userTweets, homeTimeZone(zip));
+	}
+    }
+
+    /**
+     * Draw the followers from the other users without replacement, as no
+     * user follows another one twice. A few followers are drawn by Floyd's
+     * sampling in memory of the followers, many followers of the large users
+     * by selection sampling over all other users without memory.
+     */
+    private void writeFollowers(File networkDir, int row, int numFollowers)
+	    throws IOException {
+	int id = userId(row);
+	int numOthers = numUsers - 1;
+	if (numFollowers > numOthers / 16) {
+	    int needed = numFollowers;
+	    for (int other = 0; other < numOthers && needed > 0; other++) {
+		if (random.nextInt(numOthers - other) < needed) {
+		    writeEdge(networkDir, id, userId(otherRow(other, row)));
+		    needed--;
+		}
+	    }
+	    return;
+	}
+	IntIntMap drawn = new IntIntMap(numFollowers, 0);
+	for (int last = numOthers - numFollowers; last < numOthers; last++) {
+	    int other = random.nextInt(last + 1);
+	    if (drawn.containsKey(other)) {
+		other = last;
+	    }
+	    drawn.put(other, 1);
+	    writeEdge(networkDir, id, userId(otherRow(other, row)));
+	}
+    }
+
+    // The row of the other user of the index, no user follows itself.
+    private static int otherRow(int other, int row) {
+	return other >= row ? other + 1 : other;
+    }
+
+    private void writeEdge(File networkDir, int userId, int followerId)
+	    throws IOException {
+	if (networkWriter == null || networkFileEdges == EDGES_PER_FILE) {
+	    if (networkWriter != null) {
+		networkWriter.close();
+	    }
+	    networkWriter = newWriter(new File(networkDir, String.format(
+		    "network-%05d.txt", numNetworkFiles++)));
+	    networkFileEdges = 0;
+	}
+	networkWriter.write(userId + "\t" + followerId + "\n");
+	networkFileEdges++;
+	numEdges++;
+    }
+
+    private void writeTweets(File userFile, int userId, int userTweets,
+	    String homeTimeZone) throws IOException {
+	BufferedWriter writer = newWriter(userFile);
+	try {
+	    for (int i = 0; i < userTweets; i++) {
+		String timeZone = homeTimeZone;
+		if (random.nextDouble() < TRAVEL_RATE) {
+		    timeZone = TRAVEL_TIME_ZONES[random
+			    .nextInt(TRAVEL_TIME_ZONES.length)];
+		}
+		long time = FIRST_TWEET_TIME
+			+ (long) (random.nextDouble() * (LAST_TWEET_TIME
+				- FIRST_TWEET_TIME));
+		writer.write("Type: status\n");
+		writer.write("Origin: synthetic tweet " + i + " of user "
+			+ userId + "\n");
+		writer.write("Text: synthetic tweet " + i + "\n");
+		writer.write("URL: \n");
+		writer.write("ID: " + (userId * 1000L + i) + "\n");
+		writer.write("Time: " + formatTime(time, timeZone) + "\n");
+		writer.write("RetCount: " + random.nextInt(10) + "\n");
+		writer.write("Favorite: false\n");
+		writer.write("MentionedEntities: \n");
+		writer.write("Hashtags: \n\n");
+	    }
+	} finally {
+	    writer.close();
+	}
+	numTweets += userTweets;
+    }
+
+    // Time record is like: Wed Dec 15 08:30:53 CST 2010
+    private String formatTime(long time, String timeZone) {
+	SimpleDateFormat format = timeFormats.get(timeZone);
+	if (format == null) {
+	    format = new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy",
+		    Locale.US);
+	    format.setTimeZone(TimeZone.getTimeZone(timeZone));
+	    timeFormats.put(timeZone, format);
+	}
+	return format.format(new Date(time));
+    }
+
+    /**
+     * @return The time zone ID of the zip by its coordinates, users without
+     *         a US city tweet in GMT.
+     */
+    private String homeTimeZone(int zip) {
+	if (zip < 0 || Double.isNaN(dictionary.getLng(zip))) {
+	    return "GMT";
+	}
+	double lat = dictionary.getLat(zip);
+	double lng = dictionary.getLng(zip);
+	if (lng < -150 && lat < 30) {
+	    return "Pacific/Honolulu";
+	} else if (lng < -130) {
+	    return "America/Anchorage";
+	} else if (lng < -115) {
+	    return "America/Los_Angeles";
+	} else if (lng < -101) {
+	    return "America/Denver";
+	} else if (lng < -87) {
+	    return "America/Chicago";
+	}
+	return "America/New_York";
+    }
+
+    /**
+     * @return Power law distributed degree with about the average degree as
+     *         mean, capped by the number of other users.
+     */
+    private int nextDegree() {
+	double shape = DEGREE_EXPONENT - 1;
+	double value = degreeScale / Math.pow(1 - random.nextDouble(), 1 / shape);
+	return (int) Math.round(Math.min(value, numUsers - 1));
+    }
+
+    /**
+     * Find the scale of the Pareto distribution whose mean is the average
+     * when the values are capped, by bisection. The capped mean is
+     * scale * shape / (shape - 1) - scale^shape * cap^(1 - shape) / (shape -
+     * 1), which grows with the scale up to the cap.
+     */
+    private static double degreeScale(double average, double cap) {
+	double shape = DEGREE_EXPONENT - 1;
+	double low = 0;
+	double high = cap;
+	for (int i = 0; i < 100; i++) {
+	    double scale = (low + high) / 2;
+	    double mean = (scale * shape - Math.pow(scale, shape)
+		    * Math.pow(cap, 1 - shape))
+		    / (shape - 1);
+	    if (mean < average) {
+		low = scale;
+	    } else {
+		high = scale;
+	    }
+	}
+	return low;
+    }
+
+    // The crawl IDs are sparse, so are the generated ones.
+    private static int userId(int row) {
+	return 1000 + 3 * row;
+    }
+
+    private BufferedWriter newWriter(File file) throws IOException {
+	Files.createParentDirs(file);
+	return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+		file), charset), 64 * 1024);
+    }
+
+    public static void main(String[] args) {
+	if (args.length < 1) {
+	    System.err.println("Usage: DatasetGenerator [output dir]"
+		    + " [num users] [average degree] [tweets per user] [seed]");
+	    System.exit(1);
+	}
+	File outputDir = new File(args[0]);
+	int numUsers = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+	double averageDegree = args.length > 2 ? Double.parseDouble(args[2])
+		: 20;
+	int tweetsPerUser = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+	long seed = args.length > 4 ? Long.parseLong(args[4]) : 20120801L;
+	try {
+	    new DatasetGenerator(DBProvider.getInstance().getCityDictionary(),
+		    numUsers, averageDegree, tweetsPerUser, seed)
+		    .generate(outputDir);
+	} catch (IOException ex) {
+	    logger.fatal("Failed to generate data set to " + outputDir + ": "
+		    + ex.getMessage());
+	    ex.printStackTrace();
+	    System.exit(1);
+	}
+    }
+}
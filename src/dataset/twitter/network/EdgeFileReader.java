@@ -0,0 +1,94 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import dataset.utils.ByteParser;
+
+/**
+ * Reader of the tab separated [user ID, follower ID] lines of a network file.
+ * The lines are parsed directly from the read bytes and passed to an
+ * EdgeHandler in file order, malformed lines are skipped.
+ *
+ * @author qinjin.wang
+ *
+ */
+class EdgeFileReader {
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    interface EdgeHandler {
+	void addEdge(int userId, int followerId);
+    }
+
+    /**
+     * @return Number of edges read.
+     */
+    static int read(File file, EdgeHandler handler) throws IOException {
+	int added = 0;
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	    boolean eof = false;
+	    while (!eof) {
+		eof = channel.read(buffer) < 0;
+		int limit = buffer.position();
+		int lineStart = 0;
+		for (int i = 0; i < limit; i++) {
+		    byte current = buffer.get(i);
+		    if (current == '\n' || current == '\r') {
+			added += readEdgeLine(buffer, lineStart, i, handler);
+			lineStart = i + 1;
+		    }
+		}
+		if (eof) {
+		    added += readEdgeLine(buffer, lineStart, limit, handler);
+		} else if (lineStart == 0 && limit == buffer.capacity()) {
+		    // A line longer than the buffer.
+		    ByteBuffer larger = ByteBuffer
+			    .allocate(buffer.capacity() * 2);
+		    buffer.flip();
+		    larger.put(buffer);
+		    buffer = larger;
+		} else {
+		    // Keep the incomplete last line for the next read.
+		    buffer.limit(limit).position(lineStart);
+		    buffer.compact();
+		}
+	    }
+	} finally {
+	    raf.close();
+	}
+	return added;
+    }
+
+    private static int readEdgeLine(ByteBuffer buffer, int start, int end,
+	    EdgeHandler handler) {
+	// Trailing tabs are ignored as String.split() does.
+	while (end > start && buffer.get(end - 1) == '\t') {
+	    end--;
+	}
+	int tab = -1;
+	for (int i = start; i < end; i++) {
+	    if (buffer.get(i) == '\t') {
+		if (tab >= 0) {
+		    return 0;
+		}
+		tab = i;
+	    }
+	}
+	if (tab < 0) {
+	    return 0;
+	}
+	long userId = ByteParser.parseInt(buffer, start, tab);
+	long followerId = ByteParser.parseInt(buffer, tab + 1, end);
+	if (userId == ByteParser.INVALID || followerId == ByteParser.INVALID) {
+	    return 0;
+	}
+	handler.addEdge((int) userId, (int) followerId);
+	return 1;
+    }
+}
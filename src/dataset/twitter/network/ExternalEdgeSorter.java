@@ -0,0 +1,347 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Group the follower network by user with an external sort, for networks
+ * which do not fit in the heap. The edges are read as packed [user ID,
+ * follower ID] longs into a buffer which grows up to the memory budget,
+ * each full buffer is sorted and spilled to a run file, then the runs are
+ * merged with a k-way merge. All followers of a user are passed to the
+ * SegmentHandler at once and in order, the same as a row of the
+ * FollowerGraph.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ExternalEdgeSorter implements EdgeFileReader.EdgeHandler {
+    private static final Logger logger = LogManager
+	    .getLogger(ExternalEdgeSorter.class);
+    // Maximum number of runs merged at once, more runs are merged in passes.
+    private static final int MAX_MERGE_WIDTH = 128;
+    private static final int MIN_RUN_BUFFER_SIZE = 64 * 1024;
+    // Edges of the first buffer, small networks do not take the budget.
+    private static final int INITIAL_EDGES = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final long memoryBudget;
+    // Edges of the largest buffer within the memory budget.
+    private final int maxEdges;
+    private final File tmpDir;
+    private final List<File> runs;
+    private long[] edges;
+    private int numEdges;
+    private long totalEdges;
+
+    /**
+     * @param memoryBudget
+     *            Bytes of heap for the buffered edges.
+     * @param tmpDir
+     *            Dir of the run files.
+     */
+    public ExternalEdgeSorter(long memoryBudget, File tmpDir) {
+	this.memoryBudget = Math.max(memoryBudget, 1024 * 1024);
+	this.maxEdges = (int) Math.min(this.memoryBudget / 8,
+		Integer.MAX_VALUE - 8);
+	this.tmpDir = tmpDir;
+	this.runs = Lists.newArrayList();
+    }
+
+    /**
+     * Sort all files of the network dir and pass each user with its
+     * followers to the handler.
+     *
+     * @return Number of edges read.
+     */
+    public long sort(File networkDir,
+	    NetworkSegmentReader.SegmentHandler handler) throws IOException {
+	File[] files = networkDir.listFiles();
+	if (files == null) {
+	    throw new IOException("Can not list network dir " + networkDir);
+	}
+	if (!tmpDir.isDirectory() && !tmpDir.mkdirs()) {
+	    throw new IOException("Can not create tmp dir " + tmpDir);
+	}
+
+	long startTime = System.currentTimeMillis();
+	edges = new long[Math.min(INITIAL_EDGES, maxEdges)];
+	numEdges = 0;
+	totalEdges = 0;
+	try {
+	    for (File file : files) {
+		if (file.isFile()) {
+		    logger.debug("Start to sort follower network file:"
+			    + file.getName());
+		    EdgeFileReader.read(file, this);
+		}
+	    }
+
+	    SegmentCollector collector = new SegmentCollector(handler);
+	    if (runs.isEmpty()) {
+		// Everything fits in the budget, nothing is spilled.
+		Arrays.sort(edges, 0, numEdges);
+		for (int i = 0; i < numEdges; i++) {
+		    collector.accept(edges[i]);
+		}
+		edges = null;
+	    } else {
+		if (numEdges > 0) {
+		    spill();
+		}
+		edges = null;
+		while (runs.size() > MAX_MERGE_WIDTH) {
+		    List<File> group = Lists.newArrayList(runs.subList(0,
+			    MAX_MERGE_WIDTH));
+		    runs.subList(0, MAX_MERGE_WIDTH).clear();
+		    runs.add(mergeToRun(group));
+		}
+		logger.debug("Merge " + runs.size() + " runs");
+		mergeRuns(runs, collector);
+	    }
+	    collector.finish();
+	    logger.info("Sorted " + totalEdges + " edges of " + networkDir
+		    + " in " + (System.currentTimeMillis() - startTime) + "ms");
+	    return totalEdges;
+	} finally {
+	    edges = null;
+	    for (File run : runs) {
+		deleteRun(run);
+	    }
+	    runs.clear();
+	}
+    }
+
+    @Override
+    public void addEdge(int userId, int followerId) {
+	if (numEdges == edges.length) {
+	    if (edges.length < maxEdges) {
+		edges = Arrays.copyOf(edges,
+			(int) Math.min(2L * edges.length, maxEdges));
+	    } else {
+		try {
+		    spill();
+		} catch (IOException e) {
+		    throw new IllegalStateException("Can not spill edges to "
+			    + tmpDir, e);
+		}
+	    }
+	}
+	edges[numEdges++] = ((long) userId << 32) | (followerId & 0xFFFFFFFFL);
+	totalEdges++;
+    }
+
+    /**
+     * Sort the buffered edges and write them to a new run.
+     */
+    private void spill() throws IOException {
+	Arrays.sort(edges, 0, numEdges);
+	File run = File.createTempFile("edges", ".run", tmpDir);
+	runs.add(run);
+	RunWriter writer = new RunWriter(run);
+	try {
+	    for (int i = 0; i < numEdges; i++) {
+		writer.write(edges[i]);
+	    }
+	} finally {
+	    writer.close();
+	}
+	logger.debug("Spilled " + numEdges + " edges to " + run);
+	numEdges = 0;
+    }
+
+    private File mergeToRun(List<File> group) throws IOException {
+	File merged = File.createTempFile("edges", ".run", tmpDir);
+	boolean done = false;
+	try {
+	    final RunWriter writer = new RunWriter(merged);
+	    try {
+		mergeRuns(group, new MergeSink() {
+		    @Override
+		    public void accept(long edge) throws IOException {
+			writer.write(edge);
+		    }
+		});
+	    } finally {
+		writer.close();
+	    }
+	    done = true;
+	} finally {
+	    for (File run : group) {
+		deleteRun(run);
+	    }
+	    if (!done) {
+		// The merged run is not in the runs yet, sort() does not
+		// delete it.
+		deleteRun(merged);
+	    }
+	}
+	return merged;
+    }
+
+    private void mergeRuns(List<File> sortedRuns, MergeSink sink)
+	    throws IOException {
+	int bufferSize = (int) Math.max(MIN_RUN_BUFFER_SIZE,
+		Math.min(memoryBudget / (sortedRuns.size() + 1),
+			WRITE_BUFFER_SIZE * 16));
+	bufferSize -= bufferSize % 8;
+	PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(
+		sortedRuns.size());
+	List<RunReader> readers = Lists.newArrayList();
+	try {
+	    for (File run : sortedRuns) {
+		RunReader reader = new RunReader(run, bufferSize);
+		readers.add(reader);
+		if (reader.next()) {
+		    queue.add(reader);
+		}
+	    }
+	    while (!queue.isEmpty()) {
+		RunReader reader = queue.poll();
+		sink.accept(reader.current);
+		if (reader.next()) {
+		    queue.add(reader);
+		}
+	    }
+	} finally {
+	    for (RunReader reader : readers) {
+		reader.close();
+	    }
+	}
+    }
+
+    private static void deleteRun(File run) {
+	if (run.exists() && !run.delete()) {
+	    logger.warn("Can not delete run file " + run);
+	}
+    }
+
+    private interface MergeSink {
+	void accept(long edge) throws IOException;
+    }
+
+    /**
+     * Collect the sorted edges of a user and pass them to the handler when
+     * the next user starts.
+     */
+    private static class SegmentCollector implements MergeSink {
+	private final NetworkSegmentReader.SegmentHandler handler;
+	private int[] followers = new int[1024];
+	private int numFollowers;
+	private int userId;
+
+	SegmentCollector(NetworkSegmentReader.SegmentHandler handler) {
+	    this.handler = handler;
+	}
+
+	@Override
+	public void accept(long edge) {
+	    int edgeUserId = (int) (edge >> 32);
+	    if (numFollowers > 0 && edgeUserId != userId) {
+		finish();
+	    }
+	    if (numFollowers == followers.length) {
+		followers = Arrays.copyOf(followers, followers.length * 2);
+	    }
+	    userId = edgeUserId;
+	    followers[numFollowers++] = (int) edge;
+	}
+
+	void finish() {
+	    if (numFollowers > 0) {
+		handler.visitSegment(userId, followers, numFollowers);
+		numFollowers = 0;
+	    }
+	}
+    }
+
+    private static class RunWriter {
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+
+	RunWriter(File file) throws IOException {
+	    raf = new RandomAccessFile(file, "rw");
+	    channel = raf.getChannel();
+	    buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+	}
+
+	void write(long edge) throws IOException {
+	    if (buffer.remaining() < 8) {
+		flush();
+	    }
+	    buffer.putLong(edge);
+	}
+
+	private void flush() throws IOException {
+	    buffer.flip();
+	    while (buffer.hasRemaining()) {
+		channel.write(buffer);
+	    }
+	    buffer.clear();
+	}
+
+	void close() throws IOException {
+	    try {
+		flush();
+	    } finally {
+		raf.close();
+	    }
+	}
+    }
+
+    private static class RunReader implements Comparable<RunReader> {
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long current;
+
+	RunReader(File file, int bufferSize) throws IOException {
+	    raf = new RandomAccessFile(file, "r");
+	    channel = raf.getChannel();
+	    buffer = ByteBuffer.allocate(bufferSize);
+	    buffer.flip();
+	}
+
+	/**
+	 * Move to the next edge of the run.
+	 *
+	 * @return false if the run is exhausted.
+	 */
+	boolean next() throws IOException {
+	    if (buffer.remaining() < 8) {
+		buffer.compact();
+		while (buffer.position() < 8) {
+		    if (channel.read(buffer) < 0) {
+			buffer.flip();
+			return false;
+		    }
+		}
+		buffer.flip();
+	    }
+	    current = buffer.getLong();
+	    return true;
+	}
+
+	@Override
+	public int compareTo(RunReader other) {
+	    return current < other.current ? -1
+		    : (current == other.current ? 0 : 1);
+	}
+
+	void close() throws IOException {
+	    raf.close();
+	}
+    }
+}
@@ -0,0 +1,290 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.io.Files;
+
+/**
+ * The follower network in compressed sparse row form. The followers of the
+ * user at row i are followers[offsets[i]] until followers[offsets[i + 1]], the
+ * rows are ordered by user ID.
+ *
+ * The graph could be saved as a binary snapshot, which is memory mapped when
+ * it is read back so the edges are not loaded to the heap.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class FollowerGraph {
+    private static final Logger logger = LogManager
+	    .getLogger(FollowerGraph.class);
+    private static final int SNAPSHOT_MAGIC = 0x43535231; // "CSR1"
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+
+    private final IntBuffer userIds;
+    private final IntBuffer offsets;
+    private final IntBuffer followers;
+    private final int numUsers;
+
+    private FollowerGraph(IntBuffer userIds, IntBuffer offsets,
+	    IntBuffer followers) {
+	this.userIds = userIds;
+	this.offsets = offsets;
+	this.followers = followers;
+	this.numUsers = userIds.limit();
+    }
+
+    /**
+     * @return Number of users that have at least one follower.
+     */
+    public int getNumUsers() {
+	return numUsers;
+    }
+
+    public int getNumEdges() {
+	return followers.limit();
+    }
+
+    public int getUserId(int row) {
+	return userIds.get(row);
+    }
+
+    /**
+     * @return Index of the first follower of the row in the followers array.
+     */
+    public int getFollowersStart(int row) {
+	return offsets.get(row);
+    }
+
+    /**
+     * @return Index after the last follower of the row in the followers array.
+     */
+    public int getFollowersEnd(int row) {
+	return offsets.get(row + 1);
+    }
+
+    public int getNumFollowers(int row) {
+	return offsets.get(row + 1) - offsets.get(row);
+    }
+
+    public int getFollower(int index) {
+	return followers.get(index);
+    }
+
+    /**
+     * @return The row of the user, or -1 if the user has no follower.
+     */
+    public int indexOf(int userId) {
+	int low = 0;
+	int high = numUsers - 1;
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+	    int midId = userIds.get(mid);
+	    if (midId < userId) {
+		low = mid + 1;
+	    } else if (midId > userId) {
+		high = mid - 1;
+	    } else {
+		return mid;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Save the graph as a binary snapshot: magic, number of users, number of
+     * edges, then the user IDs, offsets and followers.
+     */
+    public void writeSnapshot(File file) throws IOException {
+	Files.createParentDirs(file);
+	File tmpFile = new File(file.getPath() + ".tmp");
+	RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+	try {
+	    raf.setLength(0);
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+	    buffer.putInt(SNAPSHOT_MAGIC).putInt(numUsers)
+		    .putInt(getNumEdges());
+	    writeInts(channel, buffer, userIds);
+	    writeInts(channel, buffer, offsets);
+	    writeInts(channel, buffer, followers);
+	    buffer.flip();
+	    while (buffer.hasRemaining()) {
+		channel.write(buffer);
+	    }
+	    channel.force(false);
+	} finally {
+	    raf.close();
+	}
+	if (file.exists() && !file.delete()) {
+	    throw new IOException("Can not replace snapshot " + file);
+	}
+	if (!tmpFile.renameTo(file)) {
+	    throw new IOException("Can not rename snapshot to " + file);
+	}
+	logger.info("Saved follower graph snapshot to " + file);
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer,
+	    IntBuffer values) throws IOException {
+	for (int i = 0, size = values.limit(); i < size; i++) {
+	    if (buffer.remaining() < 4) {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+		    channel.write(buffer);
+		}
+		buffer.clear();
+	    }
+	    buffer.putInt(values.get(i));
+	}
+    }
+
+    /**
+     * Map the snapshot written by writeSnapshot().
+     */
+    public static FollowerGraph readSnapshot(File file) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+		    SNAPSHOT_HEADER_SIZE);
+	    if (header.getInt() != SNAPSHOT_MAGIC) {
+		throw new IOException("Not a follower graph snapshot: " + file);
+	    }
+	    int numUsers = header.getInt();
+	    int numEdges = header.getInt();
+	    long expectedSize = SNAPSHOT_HEADER_SIZE + 4L
+		    * (2L * numUsers + 1 + numEdges);
+	    if (channel.size() != expectedSize) {
+		throw new IOException("Truncated follower graph snapshot: "
+			+ file);
+	    }
+
+	    long position = SNAPSHOT_HEADER_SIZE;
+	    IntBuffer userIds = mapInts(channel, position, numUsers);
+	    position += 4L * numUsers;
+	    IntBuffer offsets = mapInts(channel, position, numUsers + 1);
+	    position += 4L * (numUsers + 1);
+	    IntBuffer followers = mapInts(channel, position, numEdges);
+	    logger.info("Mapped follower graph snapshot " + file + " with "
+		    + numUsers + " users and " + numEdges + " edges");
+	    return new FollowerGraph(userIds, offsets, followers);
+	} finally {
+	    // The mappings stay valid after the channel is closed.
+	    raf.close();
+	}
+    }
+
+    private static IntBuffer mapInts(FileChannel channel, long position,
+	    int count) throws IOException {
+	if (4L * count > Integer.MAX_VALUE) {
+	    throw new IOException("Snapshot section of " + count
+		    + " ints is too large to be mapped");
+	}
+	return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count)
+		.asIntBuffer();
+    }
+
+    /**
+     * Builder which collects the edges and sorts them to the CSR form. Each
+     * edge costs one packed long until build() is called.
+     */
+    public static class Builder implements EdgeFileReader.EdgeHandler {
+	private static final int MAX_EDGES = Integer.MAX_VALUE - 8;
+
+	private long[] edges;
+	private int numEdges;
+
+	public Builder() {
+	    this(1024);
+	}
+
+	public Builder(int expectedEdges) {
+	    edges = new long[Math.max(expectedEdges, 16)];
+	}
+
+	@Override
+	public void addEdge(int userId, int followerId) {
+	    if (numEdges == edges.length) {
+		ensureCapacity(numEdges + 1L);
+	    }
+	    edges[numEdges++] = ((long) userId << 32)
+		    | (followerId & 0xFFFFFFFFL);
+	}
+
+	void ensureCapacity(long minCapacity) {
+	    if (minCapacity > MAX_EDGES) {
+		throw new IllegalStateException(
+			"Too many edges for the follower graph: " + minCapacity);
+	    }
+	    if (minCapacity > edges.length) {
+		long capacity = Math.max(minCapacity, edges.length
+			+ (long) (edges.length >> 1));
+		edges = Arrays.copyOf(edges, (int) Math.min(capacity, MAX_EDGES));
+	    }
+	}
+
+	public int getNumEdges() {
+	    return numEdges;
+	}
+
+	/**
+	 * Append all edges of the other builder, the followers of a user found
+	 * in both builders are concatenated.
+	 */
+	public void addAll(Builder other) {
+	    ensureCapacity((long) numEdges + other.numEdges);
+	    System.arraycopy(other.edges, 0, edges, numEdges, other.numEdges);
+	    numEdges += other.numEdges;
+	}
+
+	/**
+	 * Read the tab separated [user ID, follower ID] lines of the file,
+	 * malformed lines are skipped.
+	 *
+	 * @return Number of edges read.
+	 */
+	public int addNetworkFile(File file) throws IOException {
+	    return EdgeFileReader.read(file, this);
+	}
+
+	public FollowerGraph build() {
+	    long[] sorted = edges;
+	    edges = null;
+	    Arrays.sort(sorted, 0, numEdges);
+
+	    int numUsers = 0;
+	    for (int i = 0; i < numEdges; i++) {
+		if (i == 0 || (sorted[i] >> 32) != (sorted[i - 1] >> 32)) {
+		    numUsers++;
+		}
+	    }
+
+	    int[] userIds = new int[numUsers];
+	    int[] offsets = new int[numUsers + 1];
+	    int[] followers = new int[numEdges];
+	    int row = -1;
+	    for (int i = 0; i < numEdges; i++) {
+		int userId = (int) (sorted[i] >> 32);
+		if (row < 0 || userIds[row] != userId) {
+		    row++;
+		    userIds[row] = userId;
+		    offsets[row] = i;
+		}
+		followers[i] = (int) sorted[i];
+	    }
+	    offsets[numUsers] = numEdges;
+	    return new FollowerGraph(IntBuffer.wrap(userIds),
+		    IntBuffer.wrap(offsets), IntBuffer.wrap(followers));
+	}
+    }
+}
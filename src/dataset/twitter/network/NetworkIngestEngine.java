@@ -0,0 +1,145 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+
+import dataset.metrics.Metrics;
+
+/**
+ * Read all files of the network dir to a FollowerGraph with a fixed number of
+ * workers. The workers take the next file from a shared counter and collect
+ * the edges to their own builder, so nothing is shared while reading. The
+ * partial builders are concatenated at the end, which keeps all followers of
+ * a user that shows up in more than one file.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class NetworkIngestEngine {
+    private static final Logger logger = LogManager
+	    .getLogger(NetworkIngestEngine.class);
+
+    private final int numWorkers;
+    private long lastNumEdges;
+    private double lastEdgesPerSecond;
+
+    public NetworkIngestEngine(int numWorkers) {
+	this.numWorkers = Math.max(numWorkers, 1);
+    }
+
+    public FollowerGraph ingest(File networkDir) throws IOException {
+	File[] files = networkDir.listFiles();
+	if (files == null) {
+	    throw new IOException("Can not list network dir " + networkDir);
+	}
+
+	long startTime = System.nanoTime();
+	Metrics.Timer timer = Metrics.start("network.ingest");
+	int poolSize = Math.min(numWorkers, Math.max(files.length, 1));
+	ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+	AtomicInteger nextFile = new AtomicInteger();
+	List<Future<FollowerGraph.Builder>> partials = Lists.newArrayList();
+	try {
+	    for (int i = 0; i < poolSize; i++) {
+		partials.add(executor.submit(new IngestWorker(files, nextFile)));
+	    }
+
+	    List<FollowerGraph.Builder> builders = Lists.newArrayList();
+	    long totalEdges = 0;
+	    for (Future<FollowerGraph.Builder> partial : partials) {
+		FollowerGraph.Builder builder = partial.get();
+		builders.add(builder);
+		totalEdges += builder.getNumEdges();
+	    }
+	    FollowerGraph.Builder merged = mergePartials(builders, totalEdges);
+	    FollowerGraph graph = merged.build();
+
+	    double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+	    lastNumEdges = totalEdges;
+	    lastEdgesPerSecond = totalEdges / seconds;
+	    timer.stop(totalEdges);
+	    logger.info(String.format(
+		    "Ingested %d edges of %d users from %d files with %d workers"
+			    + " in %.2fs: %.0f edges/sec", totalEdges,
+		    graph.getNumUsers(), files.length, poolSize, seconds,
+		    lastEdgesPerSecond));
+	    return graph;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted on ingesting " + networkDir, e);
+	} catch (ExecutionException e) {
+	    throw new IOException("Failed to ingest " + networkDir,
+		    e.getCause());
+	} finally {
+	    executor.shutdownNow();
+	    timer.stop();
+	}
+    }
+
+    /**
+     * Concatenate the partial builders to the first one.
+     */
+    private FollowerGraph.Builder mergePartials(
+	    List<FollowerGraph.Builder> builders, long totalEdges) {
+	FollowerGraph.Builder merged = builders.get(0);
+	merged.ensureCapacity(totalEdges);
+	for (int i = 1; i < builders.size(); i++) {
+	    merged.addAll(builders.get(i));
+	    // Release the partial as soon as it is copied.
+	    builders.set(i, null);
+	}
+	return merged;
+    }
+
+    /**
+     * @return Number of edges read by the last ingest.
+     */
+    public long getLastNumEdges() {
+	return lastNumEdges;
+    }
+
+    /**
+     * @return Throughput of the last ingest, including building the graph.
+     */
+    public double getLastEdgesPerSecond() {
+	return lastEdgesPerSecond;
+    }
+
+    private static class IngestWorker implements
+	    Callable<FollowerGraph.Builder> {
+	private final File[] files;
+	private final AtomicInteger nextFile;
+
+	IngestWorker(File[] files, AtomicInteger nextFile) {
+	    this.files = files;
+	    this.nextFile = nextFile;
+	}
+
+	@Override
+	public FollowerGraph.Builder call() throws IOException {
+	    FollowerGraph.Builder local = new FollowerGraph.Builder();
+	    int index;
+	    while ((index = nextFile.getAndIncrement()) < files.length) {
+		File file = files[index];
+		if (file.isFile()) {
+		    logger.debug("Start to process follower network file:"
+			    + file.getName());
+		    local.addNetworkFile(file);
+		}
+	    }
+	    return local;
+	}
+    }
+}
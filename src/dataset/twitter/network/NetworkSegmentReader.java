@@ -0,0 +1,92 @@
+package dataset.twitter.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Stream the network files in one pass without building the graph. The
+ * consecutive lines of the same user are one segment, which is passed to the
+ * SegmentHandler with the followers of the segment. The network files list
+ * the followers of a user together, so a segment is all followers of the
+ * user unless the user shows up again later. Only the followers of the
+ * current segment are kept in memory.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class NetworkSegmentReader implements EdgeFileReader.EdgeHandler {
+    private static final Logger logger = LogManager
+	    .getLogger(NetworkSegmentReader.class);
+
+    public interface SegmentHandler {
+	/**
+	 * @param followers
+	 *            The followers of the segment, only the first numFollowers
+	 *            are valid and the array is reused for the next segment.
+	 */
+	void visitSegment(int userId, int[] followers, int numFollowers);
+    }
+
+    private final SegmentHandler handler;
+    private int[] followers;
+    private int numFollowers;
+    private int currentUserId;
+    private long numSegments;
+
+    public NetworkSegmentReader(SegmentHandler handler) {
+	this.handler = handler;
+	this.followers = new int[1024];
+    }
+
+    /**
+     * Read all files of the network dir in file name order, a segment could
+     * continue from one file to the next.
+     *
+     * @return Number of edges read.
+     */
+    public long read(File networkDir) throws IOException {
+	File[] files = networkDir.listFiles();
+	if (files == null) {
+	    throw new IOException("Can not list network dir " + networkDir);
+	}
+	Arrays.sort(files);
+	long numEdges = 0;
+	for (File file : files) {
+	    if (file.isFile()) {
+		logger.debug("Start to stream follower network file:"
+			+ file.getName());
+		numEdges += EdgeFileReader.read(file, this);
+	    }
+	}
+	flush();
+	return numEdges;
+    }
+
+    @Override
+    public void addEdge(int userId, int followerId) {
+	if (numFollowers > 0 && userId != currentUserId) {
+	    flush();
+	}
+	if (numFollowers == followers.length) {
+	    followers = Arrays.copyOf(followers, followers.length * 2);
+	}
+	currentUserId = userId;
+	followers[numFollowers++] = followerId;
+    }
+
+    private void flush() {
+	if (numFollowers > 0) {
+	    numSegments++;
+	    handler.visitSegment(currentUserId, followers, numFollowers);
+	    numFollowers = 0;
+	}
+    }
+
+    public long getNumSegments() {
+	return numSegments;
+    }
+}
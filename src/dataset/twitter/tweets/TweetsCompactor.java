@@ -0,0 +1,233 @@
+package dataset.twitter.tweets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import dataset.utils.ConfReader;
+
+/**
+ * One time tool to pack the tweets dir, which has one small file per user
+ * named by the user ID, into a few large segment files and an index, see
+ * TweetsSegmentReader. Reading the packed corpus costs a few opens instead of
+ * one per user.
+ *
+ * Usage: TweetsCompactor [tweets dir] [segments dir], the dirs default to
+ * dataset.twitter.tweets.dir and dataset.twitter.tweets.segments.dir.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class TweetsCompactor {
+    private static final Logger logger = LogManager
+	    .getLogger(TweetsCompactor.class);
+    public static final long DEFAULT_SEGMENT_SIZE = 1024L * 1024L * 1024L;
+
+    private final long maxSegmentSize;
+    private int[] userIds;
+    private int[] segmentOf;
+    private int[] offsets;
+    private int[] lengths;
+    private int numEntries;
+    private int numSegments;
+    private RandomAccessFile segmentFile;
+    private long segmentSize;
+
+    public TweetsCompactor() {
+	this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param maxSegmentSize
+     *            Size a segment is closed at, a larger file gets a segment of
+     *            its own. Segments are memory mapped, so it must be below
+     *            2GB.
+     */
+    public TweetsCompactor(long maxSegmentSize) {
+	if (maxSegmentSize <= 0 || maxSegmentSize > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("Invalid segment size "
+		    + maxSegmentSize);
+	}
+	this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Pack all files below the tweets dir to the segments dir, in file name
+     * order. Files not named by a user ID are skipped. The index is written
+     * last, so the segments dir is never read half written.
+     *
+     * @return Number of packed files.
+     */
+    public int compact(File tweetsDir, File segmentsDir) throws IOException {
+	if (!tweetsDir.isDirectory()) {
+	    throw new IOException("Can not find dir: " + tweetsDir);
+	}
+	if (!segmentsDir.isDirectory() && !segmentsDir.mkdirs()) {
+	    throw new IOException("Can not create dir: " + segmentsDir);
+	}
+	File indexFile = new File(segmentsDir, TweetsSegmentReader.INDEX_FILE);
+	if (indexFile.exists() && !indexFile.delete()) {
+	    throw new IOException("Can not replace index " + indexFile);
+	}
+
+	long startTime = System.currentTimeMillis();
+	userIds = new int[1024];
+	segmentOf = new int[1024];
+	offsets = new int[1024];
+	lengths = new int[1024];
+	numEntries = 0;
+	numSegments = 0;
+	try {
+	    addDir(tweetsDir, segmentsDir);
+	} finally {
+	    closeSegment();
+	}
+	writeIndex(indexFile);
+	logger.info("Packed " + numEntries + " tweets files of " + tweetsDir
+		+ " to " + numSegments + " segments in "
+		+ (System.currentTimeMillis() - startTime) + "ms");
+	return numEntries;
+    }
+
+    private void addDir(File dir, File segmentsDir) throws IOException {
+	File[] children = dir.listFiles();
+	if (children == null) {
+	    throw new IOException("Can not list dir " + dir);
+	}
+	Arrays.sort(children);
+	for (File child : children) {
+	    if (child.isDirectory()) {
+		addDir(child, segmentsDir);
+	    } else {
+		addFile(child, segmentsDir);
+	    }
+	}
+    }
+
+    private void addFile(File file, File segmentsDir) throws IOException {
+	int userId;
+	try {
+	    userId = Integer.parseInt(file.getName());
+	} catch (NumberFormatException ex) {
+	    logger.warn("Skip the file not named by a user ID: " + file);
+	    return;
+	}
+	long length = file.length();
+	if (length > maxSegmentSize) {
+	    throw new IOException("Tweets file " + file
+		    + " is larger than a segment");
+	}
+	if (segmentFile == null || segmentSize + length > maxSegmentSize) {
+	    closeSegment();
+	    File segment = new File(segmentsDir,
+		    TweetsSegmentReader.segmentName(numSegments++));
+	    segmentFile = new RandomAccessFile(segment, "rw");
+	    segmentFile.setLength(0);
+	    segmentSize = 0;
+	}
+
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel source = raf.getChannel();
+	    FileChannel target = segmentFile.getChannel();
+	    long copied = 0;
+	    while (copied < length) {
+		long transferred = source.transferTo(copied, length - copied,
+			target);
+		if (transferred <= 0) {
+		    throw new IOException("File " + file + " was truncated");
+		}
+		copied += transferred;
+	    }
+	} finally {
+	    raf.close();
+	}
+	addEntry(userId, numSegments - 1, (int) segmentSize, (int) length);
+	segmentSize += length;
+    }
+
+    private void addEntry(int userId, int segment, int offset, int length) {
+	if (numEntries == userIds.length) {
+	    int capacity = numEntries * 2;
+	    userIds = Arrays.copyOf(userIds, capacity);
+	    segmentOf = Arrays.copyOf(segmentOf, capacity);
+	    offsets = Arrays.copyOf(offsets, capacity);
+	    lengths = Arrays.copyOf(lengths, capacity);
+	}
+	userIds[numEntries] = userId;
+	segmentOf[numEntries] = segment;
+	offsets[numEntries] = offset;
+	lengths[numEntries] = length;
+	numEntries++;
+    }
+
+    private void closeSegment() throws IOException {
+	if (segmentFile != null) {
+	    segmentFile.close();
+	    segmentFile = null;
+	}
+    }
+
+    private void writeIndex(File indexFile) throws IOException {
+	File tmpFile = new File(indexFile.getPath() + ".tmp");
+	RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+	try {
+	    raf.setLength(0);
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+	    buffer.putInt(TweetsSegmentReader.INDEX_MAGIC)
+		    .putInt(TweetsSegmentReader.INDEX_VERSION)
+		    .putInt(numSegments).putInt(numEntries);
+	    for (int i = 0; i < numEntries; i++) {
+		if (buffer.remaining() < TweetsSegmentReader.INDEX_ENTRY_SIZE) {
+		    flush(channel, buffer);
+		}
+		buffer.putInt(userIds[i]).putInt(segmentOf[i])
+			.putInt(offsets[i]).putInt(lengths[i]);
+	    }
+	    flush(channel, buffer);
+	    channel.force(false);
+	} finally {
+	    raf.close();
+	}
+	if (!tmpFile.renameTo(indexFile)) {
+	    throw new IOException("Can not rename index to " + indexFile);
+	}
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer)
+	    throws IOException {
+	buffer.flip();
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+	buffer.clear();
+    }
+
+    public static void main(String[] args) {
+	ConfReader confReader = new ConfReader();
+	File tweetsDir = args.length > 0 ? new File(args[0]) : confReader
+		.getTweetsDir();
+	File segmentsDir = args.length > 1 ? new File(args[1]) : confReader
+		.getTweetsSegmentsDir();
+	if (segmentsDir == null) {
+	    System.err.println("Usage: TweetsCompactor [tweets dir]"
+		    + " [segments dir]");
+	    System.exit(1);
+	}
+	try {
+	    new TweetsCompactor().compact(tweetsDir, segmentsDir);
+	} catch (IOException ex) {
+	    logger.fatal("Failed to pack " + tweetsDir + ": "
+		    + ex.getMessage());
+	    ex.printStackTrace();
+	    System.exit(1);
+	}
+    }
+}
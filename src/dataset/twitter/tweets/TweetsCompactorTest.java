@@ -0,0 +1,82 @@
+package dataset.twitter.tweets;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests of TweetsCompactor and TweetsSegmentReader over a mini corpus.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class TweetsCompactorTest {
+
+    @Test
+    public void testCompactAndRead() throws IOException {
+	File root = Files.createTempDir();
+	try {
+	    // A mini corpus in two dirs in file name order, user 7 has a file
+	    // in both.
+	    File tweetsDir = new File(root, "tweets");
+	    String[][] corpus = {
+		    { "a", "12", "ID: 1\nTime: Thu Dec 16 09:00:00 EST 2010\n" },
+		    { "a", "3", "" },
+		    { "a", "7", "Time: Wed Dec 15 08:30:53 CST 2010\n" },
+		    { "a", "notes", "not a user" },
+		    { "b", "40", "ID: 2\nText: a longer tweet over a segment\n" },
+		    { "b", "7", "Time: Fri Dec 17 10:00:00 PST 2010\n" } };
+	    for (String[] file : corpus) {
+		File userFile = new File(new File(tweetsDir, file[0]), file[1]);
+		Files.createParentDirs(userFile);
+		Files.write(file[2], userFile, Charsets.UTF_8);
+	    }
+
+	    File segmentsDir = new File(root, "segments");
+	    Assert.assertFalse(TweetsSegmentReader.exists(segmentsDir));
+	    int numPacked = new TweetsCompactor(48).compact(tweetsDir,
+		    segmentsDir);
+	    Assert.assertEquals(5, numPacked);
+	    Assert.assertTrue(TweetsSegmentReader.exists(segmentsDir));
+
+	    TweetsSegmentReader reader = TweetsSegmentReader.open(segmentsDir);
+	    Assert.assertEquals(5, reader.getNumEntries());
+	    Assert.assertTrue(reader.getNumSegments() > 1);
+	    int entry = 0;
+	    for (String[] file : corpus) {
+		if (file[1].equals("notes")) {
+		    continue;
+		}
+		Assert.assertEquals(Integer.parseInt(file[1]),
+			reader.getUserId(entry));
+		Assert.assertEquals(file[2], Charsets.UTF_8
+			.decode(reader.read(entry)).toString());
+		entry++;
+	    }
+
+	    int[] entries = reader.find(7);
+	    Assert.assertEquals(2, entries.length);
+	    Assert.assertEquals("Time: Fri Dec 17 10:00:00 PST 2010\n",
+		    Charsets.UTF_8.decode(reader.read(entries[1])).toString());
+	    Assert.assertEquals(1, reader.find(40).length);
+	    Assert.assertEquals(0, reader.find(8).length);
+	} finally {
+	    deleteRecursively(root);
+	}
+    }
+
+    private static void deleteRecursively(File file) {
+	File[] children = file.listFiles();
+	if (children != null) {
+	    for (File child : children) {
+		deleteRecursively(child);
+	    }
+	}
+	file.delete();
+    }
+}
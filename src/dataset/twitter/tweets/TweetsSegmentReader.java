@@ -0,0 +1,211 @@
+package dataset.twitter.tweets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Reader of the tweets corpus packed by TweetsCompactor. The segments dir has
+ * the segment files, which are the per user tweets files concatenated, and an
+ * index of [user ID, segment, offset, length] entries in segment order. The
+ * segments are memory mapped, so the entries are read sequentially by entry
+ * number or by user through the index.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class TweetsSegmentReader {
+    private static final Logger logger = LogManager
+	    .getLogger(TweetsSegmentReader.class);
+    public static final String INDEX_FILE = "tweets.idx";
+    static final int INDEX_MAGIC = 0x54534931; // "TSI1"
+    static final int INDEX_VERSION = 1;
+    static final int INDEX_HEADER_SIZE = 16;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    private final MappedByteBuffer[] segments;
+    private final int[] userIds;
+    private final int[] segmentOf;
+    private final int[] offsets;
+    private final int[] lengths;
+    // [user ID, entry] packed and sorted, built on the first find().
+    private long[] userEntries;
+
+    private TweetsSegmentReader(MappedByteBuffer[] segments, int[] userIds,
+	    int[] segmentOf, int[] offsets, int[] lengths) {
+	this.segments = segments;
+	this.userIds = userIds;
+	this.segmentOf = segmentOf;
+	this.offsets = offsets;
+	this.lengths = lengths;
+    }
+
+    static String segmentName(int segment) {
+	return String.format("tweets-%05d.seg", segment);
+    }
+
+    /**
+     * @return If the dir has a packed tweets corpus.
+     */
+    public static boolean exists(File segmentsDir) {
+	return new File(segmentsDir, INDEX_FILE).isFile();
+    }
+
+    public static TweetsSegmentReader open(File segmentsDir)
+	    throws IOException {
+	File indexFile = new File(segmentsDir, INDEX_FILE);
+	RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+	int numSegments;
+	int[] userIds;
+	int[] segmentOf;
+	int[] offsets;
+	int[] lengths;
+	try {
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+		    channel.size());
+	    if (index.limit() < INDEX_HEADER_SIZE
+		    || index.getInt() != INDEX_MAGIC) {
+		throw new IOException("Not a tweets index: " + indexFile);
+	    }
+	    int version = index.getInt();
+	    if (version != INDEX_VERSION) {
+		throw new IOException("Unsupported tweets index version "
+			+ version + ": " + indexFile);
+	    }
+	    numSegments = index.getInt();
+	    int numEntries = index.getInt();
+	    if (index.remaining() != (long) numEntries * INDEX_ENTRY_SIZE) {
+		throw new IOException("Truncated tweets index: " + indexFile);
+	    }
+	    userIds = new int[numEntries];
+	    segmentOf = new int[numEntries];
+	    offsets = new int[numEntries];
+	    lengths = new int[numEntries];
+	    for (int i = 0; i < numEntries; i++) {
+		userIds[i] = index.getInt();
+		segmentOf[i] = index.getInt();
+		offsets[i] = index.getInt();
+		lengths[i] = index.getInt();
+	    }
+	} finally {
+	    raf.close();
+	}
+
+	MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+	for (int segment = 0; segment < numSegments; segment++) {
+	    segments[segment] = mapSegment(new File(segmentsDir,
+		    segmentName(segment)));
+	}
+	for (int i = 0; i < userIds.length; i++) {
+	    if (segmentOf[i] < 0 || segmentOf[i] >= numSegments
+		    || (long) offsets[i] + lengths[i] > segments[segmentOf[i]]
+			    .limit()) {
+		throw new IOException("Tweets index entry " + i
+			+ " is out of the segments of " + segmentsDir);
+	    }
+	}
+	logger.info("Opened " + userIds.length + " tweets entries in "
+		+ numSegments + " segments of " + segmentsDir);
+	return new TweetsSegmentReader(segments, userIds, segmentOf, offsets,
+		lengths);
+    }
+
+    private static MappedByteBuffer mapSegment(File file) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+		    channel.size());
+	} finally {
+	    raf.close();
+	}
+    }
+
+    public int getNumSegments() {
+	return segments.length;
+    }
+
+    public int getNumEntries() {
+	return userIds.length;
+    }
+
+    public int getUserId(int entry) {
+	return userIds[entry];
+    }
+
+    public int getSegment(int entry) {
+	return segmentOf[entry];
+    }
+
+    /**
+     * @return Offset of the entry in its segment buffer.
+     */
+    public int getOffset(int entry) {
+	return offsets[entry];
+    }
+
+    public int getLength(int entry) {
+	return lengths[entry];
+    }
+
+    /**
+     * @return The mapped segment, which is shared so only the absolute get
+     *         methods should be used on it.
+     */
+    public ByteBuffer getSegmentBuffer(int segment) {
+	return segments[segment];
+    }
+
+    /**
+     * @return The tweets of the entry as a new buffer view.
+     */
+    public ByteBuffer read(int entry) {
+	ByteBuffer view = segments[segmentOf[entry]].duplicate();
+	view.limit(offsets[entry] + lengths[entry]).position(offsets[entry]);
+	return view.slice();
+    }
+
+    /**
+     * @return The entries of the user in index order, a user could have more
+     *         than one entry if the tweets dir had more than one file of the
+     *         user.
+     */
+    public synchronized int[] find(int userId) {
+	if (userEntries == null) {
+	    userEntries = new long[userIds.length];
+	    for (int i = 0; i < userIds.length; i++) {
+		userEntries[i] = ((long) userIds[i] << 32) | i;
+	    }
+	    Arrays.sort(userEntries);
+	}
+	int low = 0;
+	int high = userEntries.length;
+	long first = (long) userId << 32;
+	while (low < high) {
+	    int mid = (low + high) >>> 1;
+	    if (userEntries[mid] < first) {
+		low = mid + 1;
+	    } else {
+		high = mid;
+	    }
+	}
+	int end = low;
+	while (end < userEntries.length
+		&& (int) (userEntries[end] >> 32) == userId) {
+	    end++;
+	}
+	int[] entries = new int[end - low];
+	for (int i = low; i < end; i++) {
+	    entries[i - low] = (int) userEntries[i];
+	}
+	return entries;
+    }
+}
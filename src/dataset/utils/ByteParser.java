@@ -0,0 +1,51 @@
+package dataset.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers to parse values directly from bytes without creating Strings.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class ByteParser {
+    // Returned by parseInt() for bytes which are not an int.
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Parse the bytes [start, end) of the buffer as an int with the same
+     * rules as Integer.valueOf() for ASCII digits.
+     * 
+     * @return The value or INVALID if the bytes are not an int.
+     */
+    public static long parseInt(ByteBuffer buffer, int start, int end) {
+	if (start >= end) {
+	    return INVALID;
+	}
+	boolean negative = false;
+	byte first = buffer.get(start);
+	if (first == '-' || first == '+') {
+	    negative = first == '-';
+	    start++;
+	    if (start == end) {
+		return INVALID;
+	    }
+	}
+	long value = 0;
+	for (int i = start; i < end; i++) {
+	    int digit = buffer.get(i) - '0';
+	    if (digit < 0 || digit > 9) {
+		return INVALID;
+	    }
+	    value = value * 10 + digit;
+	    if (value > (long) Integer.MAX_VALUE + 1) {
+		return INVALID;
+	    }
+	}
+	value = negative ? -value : value;
+	if (value > Integer.MAX_VALUE) {
+	    return INVALID;
+	}
+	return value;
+    }
+}
@@ -1,92 +1,324 @@
-package dataset.utils;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
-
-import org.apache.log4j.LogManager;
-import org.apache.log4j.Logger;
-
-import com.google.common.collect.Lists;
-import com.google.common.io.Files;
-
-import dataset.twitter.analysis.FollowerDistributionAnalyze;
-import dataset.twitter.analysis.UserProfiler;
-
-public class ConfReader {
-    private static final Logger logger = LogManager.getLogger(ConfReader.class);
-    private static final List<UserProfiler> allProfiles =  Lists.newArrayList();
-    private final Properties configuration;
-
-    public ConfReader() {
-	configuration = new Properties();
-	String confStr = "conf" + File.separator + "dataset.conf";
-	try {
-	    configuration.load(new FileInputStream(new File(confStr)));
-	} catch (IOException e) {
-	    logger.fatal("Failed to load configuration " + confStr);
-	    e.printStackTrace();
-	}
-    }
-
-    public File getProfilerFile() {
-	return new File(
-		configuration.getProperty("dataset.twitter.profiles.file"));
-    }
-
-    public File getNetworkFile() {
-	return new File(
-		configuration.getProperty("dataset.twitter.network.file"));
-    }
-    
-    public File getNetworkDir(){
-	return new File(configuration.getProperty("dataset.twitter.network.dir"));
-    }
-
-    public File getTweetsDir() {
-	return new File(configuration.getProperty("dataset.twitter.tweets.dir"));
-    }
-
-    public List<UserProfiler> getAllUserProfilers(
-	    Map<String, String> allCityStateMap) throws Exception {
-	if (allProfiles.isEmpty()) {
-	    File profileFile = getProfilerFile();
-	    logger.debug("Start to read profile file at: " + new Date());
-	    List<String> allLines = Files.readLines(profileFile,
-		    Charset.defaultCharset());
-	    logger.debug("Done read profile file at: " + new Date());
-	    allProfiles.addAll(parseAllUserProfilesToState(allCityStateMap,
-		    allLines));
-
-	    logger.info("Analyzed " + allProfiles.size()
-		    + " user profilers from " + allLines.size() + " records.");
-	} else {
-	    logger.info("Read all user profilers from cache.");
-	}
-
-	return allProfiles;
-    }
-
-    private List<UserProfiler> parseAllUserProfilesToState(
-	    Map<String, String> allCityStateMap, List<String> allLines) {
-	List<UserProfiler> allProfilers = Lists.newArrayList();
-	for (String line : allLines) {
-	    try {
-		UserProfiler profiler = new UserProfiler(line, allCityStateMap);
-		allProfilers.add(profiler);
-		// System.out.println("User "+ profiler.id
-		// +" followers "+profiler.followers+
-		// " location "+profiler.location);
-	    } catch (Exception ex) {
-		// logger.fatal(ex);
-	    }
-	}
-	return allProfilers;
-    }
-
-}
+package dataset.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.io.Files;
+
+import dataset.metrics.Metrics;
+import dataset.twitter.analysis.UserProfileParser;
+import dataset.twitter.analysis.UserProfileStore;
+import dataset.twitter.analysis.UserProfiler;
+
+public class ConfReader {
+    private static final Logger logger = LogManager.getLogger(ConfReader.class);
+    private static UserProfileStore profileStore;
+    private final Properties configuration;
+
+    public ConfReader() {
+	configuration = new Properties();
+	String confStr = "conf" + File.separator + "dataset.conf";
+	try {
+	    configuration.load(new FileInputStream(new File(confStr)));
+	} catch (IOException e) {
+	    logger.fatal("Failed to load configuration " + confStr);
+	    e.printStackTrace();
+	}
+    }
+
+    public File getProfilerFile() {
+	return new File(
+		configuration.getProperty("dataset.twitter.profiles.file"));
+    }
+
+    public File getNetworkFile() {
+	return new File(
+		configuration.getProperty("dataset.twitter.network.file"));
+    }
+    
+    public File getNetworkDir(){
+	return new File(configuration.getProperty("dataset.twitter.network.dir"));
+    }
+
+    /**
+     * @return The binary snapshot of the follower graph built from the
+     *         network dir.
+     */
+    public File getNetworkSnapshotFile() {
+	return new File(configuration.getProperty(
+		"dataset.twitter.network.snapshot", "output"
+			+ File.separator + "follower_network.csr"));
+    }
+
+    public File getTweetsDir() {
+	return new File(configuration.getProperty("dataset.twitter.tweets.dir"));
+    }
+
+    /**
+     * @return The dir of the tweets packed by TweetsCompactor, or null if the
+     *         tweets are read from the tweets dir.
+     */
+    public File getTweetsSegmentsDir() {
+	String segmentsDir = configuration
+		.getProperty("dataset.twitter.tweets.segments.dir");
+	if (segmentsDir == null || segmentsDir.trim().isEmpty()) {
+	    return null;
+	}
+	return new File(segmentsDir.trim());
+    }
+
+    /**
+     * @return If the profiles file is parsed by the streaming, parallel
+     *         parser instead of being read to lines first.
+     */
+    public boolean isStreamingProfilesEnabled() {
+	return Boolean.parseBoolean(configuration.getProperty(
+		"dataset.twitter.profiles.streaming", "true"));
+    }
+
+    /**
+     * @return Number of worker threads for parsing and ingest, default to the
+     *         number of processors.
+     */
+    public int getNumThreads() {
+	return getIntProperty("dataset.analysis.threads", Runtime.getRuntime()
+		.availableProcessors());
+    }
+
+    /**
+     * @return If the analyses run in the approximate mode, which streams the
+     *         data sets once to fixed size sketches. The default is the exact
+     *         mode.
+     */
+    public boolean isApproximateMode() {
+	return "approximate".equalsIgnoreCase(configuration.getProperty(
+		"dataset.analysis.mode", "exact").trim());
+    }
+
+    /**
+     * @return Max number of files read at the same time by the tweets scan,
+     *         default to 4 reads per thread to keep the disk queue full.
+     */
+    public int getMaxInFlightReads() {
+	return Math.max(getIntProperty("dataset.tweets.inflight.reads",
+		4 * getNumThreads()), 1);
+    }
+
+    /**
+     * @return If the exact network analyses group the follower network with
+     *         an external sort instead of loading the graph to the heap.
+     */
+    public boolean isExternalSortEnabled() {
+	return Boolean.parseBoolean(configuration.getProperty(
+		"dataset.analysis.external.sort", "false"));
+    }
+
+    /**
+     * @return If the profiles and the follower network are processed as
+     *         concurrent stages connected by bounded queues, instead of one
+     *         stage after the other.
+     */
+    public boolean isPipelineEnabled() {
+	return Boolean.parseBoolean(configuration.getProperty(
+		"dataset.analysis.pipeline", "false"));
+    }
+
+    /**
+     * @return Max number of batches queued between two pipeline stages,
+     *         default to 16 batches of 64K edges.
+     */
+    public int getPipelineQueueBatches() {
+	return Math.max(getIntProperty("dataset.analysis.pipeline.queue.batches",
+		16), 1);
+    }
+
+    /**
+     * @return Bytes of heap the external sort buffers before it spills to
+     *         the tmp dir, default to 256MB.
+     */
+    public long getMemoryBudget() {
+	return getIntProperty("dataset.analysis.memory.budget.mb", 256)
+		* 1024L * 1024L;
+    }
+
+    /**
+     * @return Dir of the temporary files, default to java.io.tmpdir.
+     */
+    public File getTmpDir() {
+	String tmpDir = configuration.getProperty("dataset.analysis.tmp.dir");
+	if (tmpDir == null || tmpDir.trim().isEmpty()) {
+	    return new File(System.getProperty("java.io.tmpdir"));
+	}
+	return new File(tmpDir.trim());
+    }
+
+    /**
+     * @return Size in degrees of the grid cells of the follower dispersion,
+     *         default to half a degree, about 55km of latitude.
+     */
+    public double getDispersionCellDegrees() {
+	String value = configuration
+		.getProperty("dataset.analysis.dispersion.cell.degrees");
+	if (value == null || value.trim().isEmpty()) {
+	    return 0.5;
+	}
+	try {
+	    double degrees = Double.parseDouble(value.trim());
+	    if (degrees > 0) {
+		return degrees;
+	    }
+	} catch (NumberFormatException ex) {
+	    // Fall through to the warning.
+	}
+	logger.warn("Invalid value of dataset.analysis.dispersion.cell.degrees: "
+		+ value);
+	return 0.5;
+    }
+
+    /**
+     * @return Number of threads rendering the charts in the background,
+     *         default to half of the processors. 0 renders the charts on the
+     *         thread of the analysis.
+     */
+    public int getChartRenderThreads() {
+	return Math.max(getIntProperty("dataset.chart.render.threads", Math
+		.max(Runtime.getRuntime().availableProcessors() / 2, 1)), 0);
+    }
+
+    /**
+     * @return The Prometheus text file the metrics of the run are dumped to.
+     */
+    public File getMetricsFile() {
+	return new File(configuration.getProperty("dataset.metrics.file",
+		"output" + File.separator + "metrics.prom"));
+    }
+
+    /**
+     * @return Port of the analysis server on the loopback address, default
+     *         to 8765.
+     */
+    public int getServerPort() {
+	return getIntProperty("dataset.server.port", 8765);
+    }
+
+    /**
+     * @return Number of threads answering the queries of the analysis
+     *         server, default to 4.
+     */
+    public int getServerThreads() {
+	return Math.max(getIntProperty("dataset.server.threads", 4), 1);
+    }
+
+    private int getIntProperty(String key, int defaultValue) {
+	String value = configuration.getProperty(key);
+	if (value == null || value.trim().isEmpty()) {
+	    return defaultValue;
+	}
+	try {
+	    return Integer.parseInt(value.trim());
+	} catch (NumberFormatException ex) {
+	    logger.warn("Invalid value of " + key + ": " + value);
+	    return defaultValue;
+	}
+    }
+
+    public UserProfileStore getUserProfileStore(
+	    Map<String, String> allCityStateMap) throws Exception {
+	if (profileStore == null) {
+	    File profileFile = getProfilerFile();
+	    if (isStreamingProfilesEnabled()) {
+		profileStore = streamAllUserProfiles(allCityStateMap,
+			profileFile);
+	    } else {
+		profileStore = readAllUserProfiles(allCityStateMap,
+			profileFile);
+	    }
+	} else {
+	    logger.info("Read all user profilers from cache.");
+	}
+
+	return profileStore;
+    }
+
+    /**
+     * Drop the profiles read before, so the next call reads the profiles
+     * file again.
+     */
+    public static void forgetUserProfileStore() {
+	profileStore = null;
+    }
+
+    private UserProfileStore readAllUserProfiles(
+	    Map<String, String> allCityStateMap, File profileFile)
+	    throws IOException {
+	logger.debug("Start to read profile file at: " + new Date());
+	Metrics.Timer readTimer = Metrics.start("profiles.read");
+	List<String> allLines;
+	try {
+	    allLines = Files.readLines(profileFile, Charset.defaultCharset());
+	    readTimer.stop(allLines.size());
+	} finally {
+	    readTimer.stop();
+	}
+	logger.debug("Done read profile file at: " + new Date());
+	Metrics.Timer parseTimer = Metrics.start("profiles.parse");
+	UserProfileStore store = new UserProfileStore(allLines.size());
+	try {
+	    parseAllUserProfilesToState(allCityStateMap, allLines, store);
+	    store.trimToSize();
+	    parseTimer.stop(store.size(), allLines.size() - store.size());
+	} finally {
+	    parseTimer.stop();
+	}
+
+	logger.info("Analyzed " + store.size() + " user profilers from "
+		+ allLines.size() + " records.");
+	return store;
+    }
+
+    private UserProfileStore streamAllUserProfiles(
+	    Map<String, String> allCityStateMap, File profileFile)
+	    throws IOException {
+	logger.debug("Start to stream profile file at: " + new Date());
+	Metrics.Timer parseTimer = Metrics.start("profiles.parse");
+	UserProfileParser parser = new UserProfileParser(allCityStateMap,
+		getNumThreads());
+	UserProfileStore store;
+	try {
+	    store = parser.parse(profileFile);
+	    parseTimer.stop(store.size(), parser.getRejectedRows());
+	} finally {
+	    parseTimer.stop();
+	}
+	logger.debug("Done stream profile file at: " + new Date());
+
+	logger.info("Analyzed " + store.size() + " user profilers, rejected "
+		+ parser.getRejectedRows() + " records.");
+	return store;
+    }
+
+    private void parseAllUserProfilesToState(
+	    Map<String, String> allCityStateMap, List<String> allLines,
+	    UserProfileStore store) {
+	for (String line : allLines) {
+	    try {
+		store.add(new UserProfiler(line, allCityStateMap));
+		// System.out.println("User "+ profiler.id
+		// +" followers "+profiler.followers+
+		// " location "+profiler.location);
+	    } catch (Exception ex) {
+		// logger.fatal(ex);
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,155 @@
+package dataset.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A cheap fingerprint of the inputs of an analyze. Files are fingerprinted by
+ * size, modified time and a hash of a few sampled blocks. Directories are
+ * fingerprinted by the size and modified time of all files below them plus
+ * the sampled hash of some of the files, so the content of every file is
+ * never read.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class InputFingerprint {
+    private static final Logger logger = LogManager
+	    .getLogger(InputFingerprint.class);
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final int NUM_SAMPLES = 16;
+    private static final int SAMPLE_SIZE = 4096;
+    // The inputs do not change during a run, so each one is hashed once. A
+    // long running process forgets them before it checks for changes.
+    private static final Map<String, HashCode> inputHashes = Maps
+	    .newConcurrentMap();
+
+    private final Hasher hasher;
+
+    public InputFingerprint() {
+	hasher = HASH_FUNCTION.newHasher();
+    }
+
+    public InputFingerprint addFile(File file) throws IOException {
+	hasher.putString("file:").putString(file.getPath());
+	HashCode hash = inputHashes.get(file.getAbsolutePath());
+	if (hash == null) {
+	    Hasher fileHasher = HASH_FUNCTION.newHasher();
+	    hashFile(file, fileHasher, true);
+	    hash = fileHasher.hash();
+	    inputHashes.put(file.getAbsolutePath(), hash);
+	}
+	hasher.putBytes(hash.asBytes());
+	return this;
+    }
+
+    public InputFingerprint addDir(File dir) throws IOException {
+	hasher.putString("dir:").putString(dir.getPath());
+	HashCode hash = inputHashes.get(dir.getAbsolutePath());
+	if (hash == null) {
+	    long startTime = System.currentTimeMillis();
+	    Hasher dirHasher = HASH_FUNCTION.newHasher();
+	    long[] numFiles = new long[1];
+	    hashDir(dir, dirHasher, numFiles);
+	    hash = dirHasher.hash();
+	    inputHashes.put(dir.getAbsolutePath(), hash);
+	    logger.debug("Fingerprinted " + numFiles[0] + " files of " + dir
+		    + " in " + (System.currentTimeMillis() - startTime) + "ms");
+	}
+	hasher.putBytes(hash.asBytes());
+	return this;
+    }
+
+    /**
+     * Forget the hashes of the inputs, so they are hashed again by the next
+     * fingerprints.
+     */
+    public static void forgetInputs() {
+	inputHashes.clear();
+    }
+
+    /**
+     * Add a parameter of the analyze, like the aggregation factor or the
+     * version of the algorithm.
+     */
+    public InputFingerprint addParam(String name, Object value) {
+	hasher.putString("param:").putString(name).putString("=")
+		.putString(String.valueOf(value));
+	return this;
+    }
+
+    /**
+     * @return The fingerprint as hex string. The fingerprint could not be
+     *         changed after this is called.
+     */
+    public String build() {
+	return hasher.hash().toString();
+    }
+
+    private static void hashDir(File dir, Hasher dirHasher, long[] numFiles)
+	    throws IOException {
+	File[] children = dir.listFiles();
+	if (children == null) {
+	    dirHasher.putString("missing");
+	    return;
+	}
+	Arrays.sort(children);
+	// Sample the content of a few files spread over the dir.
+	int sampleStep = Math.max(children.length / NUM_SAMPLES, 1);
+	for (int i = 0; i < children.length; i++) {
+	    File child = children[i];
+	    dirHasher.putString(child.getName());
+	    if (child.isDirectory()) {
+		hashDir(child, dirHasher, numFiles);
+	    } else {
+		numFiles[0]++;
+		hashFile(child, dirHasher, i % sampleStep == 0);
+	    }
+	}
+    }
+
+    private static void hashFile(File file, Hasher fileHasher,
+	    boolean sampleContent) throws IOException {
+	if (!file.exists()) {
+	    fileHasher.putString("missing");
+	    return;
+	}
+	long size = file.length();
+	fileHasher.putLong(size).putLong(file.lastModified());
+	if (!sampleContent || size == 0) {
+	    return;
+	}
+
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    byte[] sample = new byte[SAMPLE_SIZE];
+	    if (size <= (long) SAMPLE_SIZE * NUM_SAMPLES) {
+		// Small files are hashed completely.
+		int length;
+		while ((length = raf.read(sample)) > 0) {
+		    fileHasher.putBytes(sample, 0, length);
+		}
+		return;
+	    }
+	    for (int i = 0; i < NUM_SAMPLES; i++) {
+		raf.seek((size - SAMPLE_SIZE) / (NUM_SAMPLES - 1) * i);
+		raf.readFully(sample);
+		fileHasher.putBytes(sample);
+	    }
+	} finally {
+	    raf.close();
+	}
+    }
+}
@@ -0,0 +1,177 @@
+package dataset.utils;
+
+/**
+ * Open addressing hash map from int keys to int values. It is used instead of
+ * Map<Integer, Integer> on the hot paths to avoid boxing every key and value.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class IntIntMap {
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    // The key 0 is used to mark free slots, so its value is kept aside.
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    /**
+     * @param expectedSize
+     *            The expected number of entries.
+     * @param missingValue
+     *            The value returned by get() for an absent key.
+     */
+    public IntIntMap(int expectedSize, int missingValue) {
+	this.missingValue = missingValue;
+	int capacity = tableSizeFor((int) (Math.max(expectedSize, 2) / LOAD_FACTOR));
+	allocate(capacity);
+    }
+
+    public int get(int key) {
+	if (key == FREE_KEY) {
+	    return hasFreeKey ? freeKeyValue : missingValue;
+	}
+	int slot = mix(key) & mask;
+	while (true) {
+	    int current = keys[slot];
+	    if (current == key) {
+		return values[slot];
+	    }
+	    if (current == FREE_KEY) {
+		return missingValue;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+    }
+
+    public boolean containsKey(int key) {
+	if (key == FREE_KEY) {
+	    return hasFreeKey;
+	}
+	int slot = mix(key) & mask;
+	while (true) {
+	    int current = keys[slot];
+	    if (current == key) {
+		return true;
+	    }
+	    if (current == FREE_KEY) {
+		return false;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+    }
+
+    public void put(int key, int value) {
+	if (key == FREE_KEY) {
+	    if (!hasFreeKey) {
+		size++;
+	    }
+	    hasFreeKey = true;
+	    freeKeyValue = value;
+	    return;
+	}
+	int slot = mix(key) & mask;
+	while (true) {
+	    int current = keys[slot];
+	    if (current == key) {
+		values[slot] = value;
+		return;
+	    }
+	    if (current == FREE_KEY) {
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size >= threshold) {
+		    rehash(keys.length * 2);
+		}
+		return;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+    }
+
+    /**
+     * Add delta to the value of the key, the missing value is treated as 0.
+     * 
+     * @return The new value.
+     */
+    public int addTo(int key, int delta) {
+	if (key == FREE_KEY) {
+	    int value = hasFreeKey ? freeKeyValue + delta : delta;
+	    put(key, value);
+	    return value;
+	}
+	int slot = mix(key) & mask;
+	while (true) {
+	    int current = keys[slot];
+	    if (current == key) {
+		values[slot] += delta;
+		return values[slot];
+	    }
+	    if (current == FREE_KEY) {
+		keys[slot] = key;
+		values[slot] = delta;
+		if (++size >= threshold) {
+		    rehash(keys.length * 2);
+		}
+		return delta;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+    }
+
+    public int size() {
+	return size;
+    }
+
+    /**
+     * @return All keys in the map, in no particular order.
+     */
+    public int[] keys() {
+	int[] result = new int[size];
+	int index = 0;
+	if (hasFreeKey) {
+	    result[index++] = FREE_KEY;
+	}
+	for (int key : keys) {
+	    if (key != FREE_KEY) {
+		result[index++] = key;
+	    }
+	}
+	return result;
+    }
+
+    private void allocate(int capacity) {
+	keys = new int[capacity];
+	values = new int[capacity];
+	mask = capacity - 1;
+	threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int newCapacity) {
+	int[] oldKeys = keys;
+	int[] oldValues = values;
+	allocate(newCapacity);
+	size = hasFreeKey ? 1 : 0;
+	for (int i = 0; i < oldKeys.length; i++) {
+	    if (oldKeys[i] != FREE_KEY) {
+		put(oldKeys[i], oldValues[i]);
+	    }
+	}
+    }
+
+    private static int mix(int key) {
+	int h = key * 0x9E3779B9;
+	return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int n) {
+	int capacity = Integer.highestOneBit(Math.max(n, 4) - 1) << 1;
+	return capacity > 0 ? capacity : 1 << 30;
+    }
+}
@@ -0,0 +1,111 @@
+package dataset.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Cache of the analyzed results. A cached result file is only valid if it was
+ * saved with the same InputFingerprint, the fingerprint is kept in a
+ * ".fingerprint" file next to the result. The fingerprint is committed only
+ * after the result is saved, and a valid result which can not be read is a
+ * miss, so a broken result is computed again instead of failing every run.
+ * A null fingerprint stands for inputs which can not be fingerprinted, their
+ * results are never read from nor committed to the cache.
+ * 
+ * @author qinjin.wang
+ *
+ */
+public class ResultCache {
+    private static final Logger logger = LogManager
+	    .getLogger(ResultCache.class);
+    private static final Charset CHARSET = Charsets.UTF_8;
+    private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+
+    /**
+     * @return If the result file was saved from the inputs of the
+     *         fingerprint, false for a null fingerprint.
+     */
+    public static boolean isValid(File resultFile, String fingerprint) {
+	if (fingerprint == null) {
+	    return false;
+	}
+	File fingerprintFile = getFingerprintFile(resultFile);
+	if (!resultFile.exists() || !fingerprintFile.exists()) {
+	    return false;
+	}
+	try {
+	    String cached = Files.toString(fingerprintFile, CHARSET).trim();
+	    if (cached.equals(fingerprint)) {
+		return true;
+	    }
+	    logger.info("Cached result " + resultFile
+		    + " is stale, the inputs are changed.");
+	} catch (IOException e) {
+	    logger.warn("Can not read fingerprint of " + resultFile + ": "
+		    + e.getMessage());
+	}
+	return false;
+    }
+
+    /**
+     * @return The cached series if it is valid for the fingerprint, null
+     *         otherwise. A valid result which can not be read is
+     *         invalidated.
+     */
+    public static ResultSeries readSeries(File resultFile, String fingerprint) {
+	if (!isValid(resultFile, fingerprint)) {
+	    return null;
+	}
+	try {
+	    return ResultFile.readSeries(resultFile);
+	} catch (IOException e) {
+	    logger.warn("Can not read cached result " + resultFile
+		    + ", it is computed again: " + e.getMessage());
+	    invalidate(resultFile);
+	    return null;
+	}
+    }
+
+    /**
+     * Delete the result file and its fingerprint before the result is saved
+     * again.
+     */
+    public static void invalidate(File resultFile) {
+	File fingerprintFile = getFingerprintFile(resultFile);
+	if (fingerprintFile.exists() && !fingerprintFile.delete()) {
+	    logger.warn("Can not delete " + fingerprintFile);
+	}
+	if (resultFile.exists() && !resultFile.delete()) {
+	    logger.warn("Can not delete " + resultFile);
+	}
+    }
+
+    /**
+     * Mark the saved result file as valid for the fingerprint, only called
+     * after the result is saved completely.
+     */
+    public static void commit(File resultFile, String fingerprint) {
+	if (fingerprint == null) {
+	    logger.warn("Result " + resultFile
+		    + " is not cached, the inputs are not fingerprinted.");
+	    return;
+	}
+	try {
+	    Files.write(fingerprint, getFingerprintFile(resultFile), CHARSET);
+	} catch (IOException e) {
+	    logger.warn("Can not save fingerprint of " + resultFile + ": "
+		    + e.getMessage());
+	}
+    }
+
+    private static File getFingerprintFile(File resultFile) {
+	return new File(resultFile.getPath() + FINGERPRINT_SUFFIX);
+    }
+}
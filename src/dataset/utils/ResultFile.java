@@ -0,0 +1,419 @@
+package dataset.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Binary format of the analyzed [Integer, value] results. The file is
+ *
+ * <pre>
+ * header: magic, version, value type, number of entries
+ * key block: block length, int keys
+ * value block: block length, int or double values, or for BigDecimal the
+ *              scale and the length prefixed unscaled bytes of each value
+ * trailer: CRC32 of all bytes before it
+ * </pre>
+ *
+ * The file is written through one buffered channel to a ".tmp" file, which
+ * replaces the result file only when it is complete, and read back by memory
+ * mapping it.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ResultFile {
+    private static final int MAGIC = 0x44535231; // "DSR1"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_POSITION = 12;
+    // The keys follow the header and the length of the key block.
+    private static final int KEYS_POSITION = HEADER_SIZE + 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    public static enum ValueType {
+	INTEGER(1), DOUBLE(2), BIG_DECIMAL(3);
+
+	private final int code;
+
+	private ValueType(int code) {
+	    this.code = code;
+	}
+
+	static ValueType valueOf(int code) throws IOException {
+	    for (ValueType type : values()) {
+		if (type.code == code) {
+		    return type;
+		}
+	    }
+	    throw new IOException("Unknown value type " + code);
+	}
+    }
+
+    public static void writeIntegers(Map<Integer, Integer> dataSet, File file)
+	    throws IOException {
+	write(dataSet, ValueType.INTEGER, file);
+    }
+
+    public static void writeDoubles(Map<Integer, Double> dataSet, File file)
+	    throws IOException {
+	write(dataSet, ValueType.DOUBLE, file);
+    }
+
+    public static void writeBigDecimals(Map<Integer, BigDecimal> dataSet,
+	    File file) throws IOException {
+	write(dataSet, ValueType.BIG_DECIMAL, file);
+    }
+
+    public static Map<Integer, Integer> readIntegers(File file)
+	    throws IOException {
+	return read(file, ValueType.INTEGER);
+    }
+
+    public static Map<Integer, Double> readDoubles(File file)
+	    throws IOException {
+	return read(file, ValueType.DOUBLE);
+    }
+
+    public static Map<Integer, BigDecimal> readBigDecimals(File file)
+	    throws IOException {
+	return read(file, ValueType.BIG_DECIMAL);
+    }
+
+    /**
+     * Write the series with INTEGER or DOUBLE values, in the order of the
+     * keys.
+     */
+    public static void writeSeries(ResultSeries series, ValueType type,
+	    File file) throws IOException {
+	if (type == ValueType.BIG_DECIMAL) {
+	    throw new IllegalArgumentException("Can not write " + type
+		    + " values of a series");
+	}
+	Files.createParentDirs(file);
+	File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+	RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+	boolean written = false;
+	try {
+	    raf.setLength(0);
+	    ChecksumWriter writer = new ChecksumWriter(raf.getChannel());
+	    int count = series.size();
+	    writer.putInt(MAGIC);
+	    writer.putInt(FORMAT_VERSION);
+	    writer.putInt(type.code);
+	    writer.putInt(count);
+
+	    writer.putInt(4 * count);
+	    for (int i = 0; i < count; i++) {
+		writer.putInt(series.getKey(i));
+	    }
+	    writer.putInt((type == ValueType.INTEGER ? 4 : 8) * count);
+	    for (int i = 0; i < count; i++) {
+		if (type == ValueType.INTEGER) {
+		    writer.putInt((int) series.getValue(i));
+		} else {
+		    writer.putDouble(series.getValue(i));
+		}
+	    }
+	    writer.finish();
+	    written = true;
+	} finally {
+	    raf.close();
+	    if (!written) {
+		tmpFile.delete();
+	    }
+	}
+	replace(tmpFile, file);
+    }
+
+    private static void write(Map<Integer, ? extends Number> dataSet,
+	    ValueType type, File file) throws IOException {
+	Files.createParentDirs(file);
+	File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+	RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+	boolean written = false;
+	try {
+	    raf.setLength(0);
+	    ChecksumWriter writer = new ChecksumWriter(raf.getChannel());
+	    int count = dataSet.size();
+	    writer.putInt(MAGIC);
+	    writer.putInt(FORMAT_VERSION);
+	    writer.putInt(type.code);
+	    writer.putInt(count);
+
+	    writer.putInt(4 * count);
+	    for (Map.Entry<Integer, ? extends Number> entry : dataSet
+		    .entrySet()) {
+		writer.putInt(entry.getKey());
+	    }
+
+	    // The values are written in the same order as the keys.
+	    writer.putInt(valueBlockLength(dataSet, type));
+	    for (Map.Entry<Integer, ? extends Number> entry : dataSet
+		    .entrySet()) {
+		Number value = entry.getValue();
+		switch (type) {
+		case INTEGER:
+		    writer.putInt(value.intValue());
+		    break;
+		case DOUBLE:
+		    writer.putDouble(value.doubleValue());
+		    break;
+		default:
+		    BigDecimal decimal = (BigDecimal) value;
+		    byte[] unscaled = decimal.unscaledValue().toByteArray();
+		    writer.putInt(decimal.scale());
+		    writer.putInt(unscaled.length);
+		    writer.putBytes(unscaled);
+		}
+	    }
+	    writer.finish();
+	    written = true;
+	} finally {
+	    raf.close();
+	    if (!written) {
+		tmpFile.delete();
+	    }
+	}
+	replace(tmpFile, file);
+    }
+
+    private static void replace(File tmpFile, File file) throws IOException {
+	if (file.exists() && !file.delete()) {
+	    tmpFile.delete();
+	    throw new IOException("Can not replace result file " + file);
+	}
+	if (!tmpFile.renameTo(file)) {
+	    tmpFile.delete();
+	    throw new IOException("Can not rename result file to " + file);
+	}
+    }
+
+    private static int valueBlockLength(Map<Integer, ? extends Number> dataSet,
+	    ValueType type) throws IOException {
+	switch (type) {
+	case INTEGER:
+	    return 4 * dataSet.size();
+	case DOUBLE:
+	    return 8 * dataSet.size();
+	default:
+	    long length = 0;
+	    for (Number value : dataSet.values()) {
+		length += 8 + ((BigDecimal) value).unscaledValue().bitLength()
+			/ 8 + 1;
+	    }
+	    if (length > Integer.MAX_VALUE) {
+		throw new IOException("Too many values for one result file");
+	    }
+	    return (int) length;
+	}
+    }
+
+    /**
+     * Read a result file of any value type to a series, the BigDecimal
+     * values are read as doubles.
+     */
+    public static ResultSeries readSeries(File file) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    MappedByteBuffer buffer = map(raf, file);
+	    ValueType type = readHeader(buffer, null, file);
+	    int count = buffer.getInt(COUNT_POSITION);
+	    int[] keys = new int[count];
+	    double[] values = new double[count];
+	    for (int i = 0; i < count; i++) {
+		keys[i] = buffer.getInt(KEYS_POSITION + 4 * i);
+		switch (type) {
+		case INTEGER:
+		    values[i] = buffer.getInt();
+		    break;
+		case DOUBLE:
+		    values[i] = buffer.getDouble();
+		    break;
+		default:
+		    values[i] = readBigDecimal(buffer).doubleValue();
+		}
+	    }
+	    return new ResultSeries(keys, values);
+	} finally {
+	    raf.close();
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Map<Integer, V> read(File file, ValueType expectedType)
+	    throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    MappedByteBuffer buffer = map(raf, file);
+	    ValueType type = readHeader(buffer, expectedType, file);
+	    int count = buffer.getInt(COUNT_POSITION);
+	    Map<Integer, Object> dataSet = Maps.newHashMapWithExpectedSize(count);
+	    for (int i = 0; i < count; i++) {
+		int key = buffer.getInt(KEYS_POSITION + 4 * i);
+		switch (type) {
+		case INTEGER:
+		    dataSet.put(key, buffer.getInt());
+		    break;
+		case DOUBLE:
+		    dataSet.put(key, buffer.getDouble());
+		    break;
+		default:
+		    dataSet.put(key, readBigDecimal(buffer));
+		}
+	    }
+	    return (Map<Integer, V>) dataSet;
+	} finally {
+	    raf.close();
+	}
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile raf, File file)
+	    throws IOException {
+	FileChannel channel = raf.getChannel();
+	long size = channel.size();
+	if (size < HEADER_SIZE + 12 || size > Integer.MAX_VALUE) {
+	    throw new IOException("Invalid result file size " + size + ": "
+		    + file);
+	}
+	MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+		size);
+	verifyChecksum(buffer, file);
+	return buffer;
+    }
+
+    /**
+     * Check the header and the blocks, the buffer is left at the first
+     * value.
+     *
+     * @param expectedType
+     *            The value type of the file, or null for any type.
+     */
+    private static ValueType readHeader(MappedByteBuffer buffer,
+	    ValueType expectedType, File file) throws IOException {
+	if (buffer.getInt() != MAGIC) {
+	    throw new IOException("Not a result file: " + file);
+	}
+	int version = buffer.getInt();
+	if (version != FORMAT_VERSION) {
+	    throw new IOException("Unsupported result file version " + version
+		    + ": " + file);
+	}
+	ValueType type = ValueType.valueOf(buffer.getInt());
+	if (expectedType != null && type != expectedType) {
+	    throw new IOException("Result file " + file + " has " + type
+		    + " values instead of " + expectedType);
+	}
+	int count = buffer.getInt();
+
+	int keyBlockLength = buffer.getInt();
+	if (keyBlockLength != 4 * count) {
+	    throw new IOException("Corrupted key block: " + file);
+	}
+	buffer.position(KEYS_POSITION + keyBlockLength);
+	int valueBlockLength = buffer.getInt();
+	if (valueBlockLength != buffer.remaining() - 4) {
+	    throw new IOException("Corrupted value block: " + file);
+	}
+	return type;
+    }
+
+    private static BigDecimal readBigDecimal(MappedByteBuffer buffer) {
+	int scale = buffer.getInt();
+	byte[] unscaled = new byte[buffer.getInt()];
+	buffer.get(unscaled);
+	return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static void verifyChecksum(MappedByteBuffer buffer, File file)
+	    throws IOException {
+	int checksumPosition = buffer.limit() - 4;
+	CRC32 crc = new CRC32();
+	byte[] chunk = new byte[BUFFER_SIZE];
+	buffer.position(0);
+	while (buffer.position() < checksumPosition) {
+	    int length = Math.min(chunk.length,
+		    checksumPosition - buffer.position());
+	    buffer.get(chunk, 0, length);
+	    crc.update(chunk, 0, length);
+	}
+	if ((int) crc.getValue() != buffer.getInt(checksumPosition)) {
+	    throw new IOException("Checksum mismatch of result file " + file);
+	}
+	buffer.position(0);
+    }
+
+    /**
+     * Buffered writer which keeps the CRC32 of everything written.
+     */
+    private static class ChecksumWriter {
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CRC32 crc;
+
+	ChecksumWriter(FileChannel channel) {
+	    this.channel = channel;
+	    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	    this.crc = new CRC32();
+	}
+
+	void putInt(int value) throws IOException {
+	    ensureRemaining(4);
+	    buffer.putInt(value);
+	}
+
+	void putDouble(double value) throws IOException {
+	    ensureRemaining(8);
+	    buffer.putDouble(value);
+	}
+
+	void putBytes(byte[] bytes) throws IOException {
+	    for (int offset = 0; offset < bytes.length;) {
+		ensureRemaining(1);
+		int length = Math.min(buffer.remaining(), bytes.length - offset);
+		buffer.put(bytes, offset, length);
+		offset += length;
+	    }
+	}
+
+	/**
+	 * Write the checksum, flush the buffer and force the file to disk.
+	 */
+	void finish() throws IOException {
+	    flush();
+	    buffer.putInt((int) crc.getValue());
+	    buffer.flip();
+	    while (buffer.hasRemaining()) {
+		channel.write(buffer);
+	    }
+	    buffer.clear();
+	    channel.force(false);
+	}
+
+	private void ensureRemaining(int length) throws IOException {
+	    if (buffer.remaining() < length) {
+		flush();
+	    }
+	}
+
+	private void flush() throws IOException {
+	    crc.update(buffer.array(), 0, buffer.position());
+	    buffer.flip();
+	    while (buffer.hasRemaining()) {
+		channel.write(buffer);
+	    }
+	    buffer.clear();
+	}
+    }
+}
@@ -0,0 +1,276 @@
+package dataset.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An analyzed [Integer, value] result as two primitive arrays sorted by the
+ * key, which is handed to the charts without boxing every point.
+ * <p>
+ * A series could be a view of another one, like keysBelow(2000) for the
+ * chart of the small keys. A view shares the arrays: the key range is found
+ * by binary search, and a value bound only indexes the matching positions
+ * when the view is first read and some value is out of the bound.
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ResultSeries {
+    private final int[] keys;
+    private final double[] values;
+    // Range of the positions in the arrays, to exclusive.
+    private final int from;
+    private final int to;
+    // Exclusive value bounds, NaN for no bound.
+    private final double valueMin;
+    private final double valueMax;
+    // Positions of the values in the bounds, null before they are indexed
+    // or if all values in the range are in the bounds.
+    private int[] positions;
+    private volatile boolean indexed;
+
+    public ResultSeries() {
+	this(new int[0], new double[0]);
+    }
+
+    /**
+     * Wrap the arrays without copying them, they are sorted by the keys if
+     * they are not sorted yet.
+     */
+    public ResultSeries(int[] keys, double[] values) {
+	if (keys.length != values.length) {
+	    throw new IllegalArgumentException(keys.length + " keys but "
+		    + values.length + " values");
+	}
+	this.keys = keys;
+	this.values = values;
+	this.from = 0;
+	this.to = keys.length;
+	this.valueMin = Double.NaN;
+	this.valueMax = Double.NaN;
+	this.indexed = true;
+	sort();
+    }
+
+    private ResultSeries(ResultSeries series, int from, int to,
+	    double valueMin, double valueMax) {
+	this.keys = series.keys;
+	this.values = series.values;
+	this.from = from;
+	this.to = Math.max(to, from);
+	this.valueMin = valueMin;
+	this.valueMax = valueMax;
+	this.indexed = Double.isNaN(valueMin) && Double.isNaN(valueMax);
+    }
+
+    /**
+     * Copy the map to a series.
+     */
+    public static ResultSeries of(Map<Integer, ? extends Number> dataSet) {
+	int[] keys = new int[dataSet.size()];
+	double[] values = new double[keys.length];
+	int i = 0;
+	for (Map.Entry<Integer, ? extends Number> entry : dataSet.entrySet()) {
+	    keys[i] = entry.getKey();
+	    values[i] = entry.getValue().doubleValue();
+	    i++;
+	}
+	return new ResultSeries(keys, values);
+    }
+
+    /**
+     * @return A view of the keys smaller than the key.
+     */
+    public ResultSeries keysBelow(int key) {
+	return new ResultSeries(this, from, lowerBound(key), valueMin,
+		valueMax);
+    }
+
+    /**
+     * @return A view of the keys larger than the key.
+     */
+    public ResultSeries keysAbove(int key) {
+	if (key == Integer.MAX_VALUE) {
+	    return new ResultSeries(this, to, to, valueMin, valueMax);
+	}
+	return new ResultSeries(this, lowerBound(key + 1), to, valueMin,
+		valueMax);
+    }
+
+    /**
+     * @return A view of the values smaller than the value.
+     */
+    public ResultSeries valuesBelow(double value) {
+	double max = Double.isNaN(valueMax) ? value : Math.min(valueMax, value);
+	return new ResultSeries(this, from, to, valueMin, max);
+    }
+
+    /**
+     * @return A view of the values larger than the value.
+     */
+    public ResultSeries valuesAbove(double value) {
+	double min = Double.isNaN(valueMin) ? value : Math.max(valueMin, value);
+	return new ResultSeries(this, from, to, min, valueMax);
+    }
+
+    public int size() {
+	int[] matching = getPositions();
+	return matching == null ? to - from : matching.length;
+    }
+
+    public int getKey(int index) {
+	return keys[positionOf(index)];
+    }
+
+    public double getValue(int index) {
+	return values[positionOf(index)];
+    }
+
+    /**
+     * @return The index of the key, or a negative number as
+     *         Arrays.binarySearch() if the key is not in the series.
+     */
+    public int indexOf(int key) {
+	int[] matching = getPositions();
+	if (matching == null) {
+	    int position = Arrays.binarySearch(keys, from, to, key);
+	    return position >= 0 ? position - from : position + from;
+	}
+	int low = 0;
+	int high = matching.length - 1;
+	while (low <= high) {
+	    int middle = (low + high) >>> 1;
+	    int middleKey = keys[matching[middle]];
+	    if (middleKey < key) {
+		low = middle + 1;
+	    } else if (middleKey > key) {
+		high = middle - 1;
+	    } else {
+		return middle;
+	    }
+	}
+	return -(low + 1);
+    }
+
+    /**
+     * @return The value of the key, or the default value if the key is not
+     *         in the series.
+     */
+    public double get(int key, double defaultValue) {
+	int index = indexOf(key);
+	return index < 0 ? defaultValue : getValue(index);
+    }
+
+    /**
+     * The sorted keys, which must not be changed. A view copies its keys.
+     */
+    public int[] keys() {
+	if (isWhole()) {
+	    return keys;
+	}
+	int[] copy = new int[size()];
+	for (int i = 0; i < copy.length; i++) {
+	    copy[i] = getKey(i);
+	}
+	return copy;
+    }
+
+    /**
+     * The values in the order of the keys, which must not be changed. A view
+     * copies its values.
+     */
+    public double[] values() {
+	if (isWhole()) {
+	    return values;
+	}
+	double[] copy = new double[size()];
+	for (int i = 0; i < copy.length; i++) {
+	    copy[i] = getValue(i);
+	}
+	return copy;
+    }
+
+    private boolean isWhole() {
+	return from == 0 && to == keys.length && getPositions() == null;
+    }
+
+    private int positionOf(int index) {
+	int[] matching = getPositions();
+	if (matching != null) {
+	    return matching[index];
+	}
+	if (index < 0 || index >= to - from) {
+	    throw new IndexOutOfBoundsException("No item " + index);
+	}
+	return from + index;
+    }
+
+    // The first position of the range whose key is not smaller than the key.
+    private int lowerBound(int key) {
+	int position = Arrays.binarySearch(keys, from, to, key);
+	if (position < 0) {
+	    return -position - 1;
+	}
+	while (position > from && keys[position - 1] == key) {
+	    position--;
+	}
+	return position;
+    }
+
+    private int[] getPositions() {
+	if (!indexed) {
+	    index();
+	}
+	return positions;
+    }
+
+    private synchronized void index() {
+	if (!indexed) {
+	    int size = 0;
+	    for (int position = from; position < to; position++) {
+		if (matches(values[position])) {
+		    size++;
+		}
+	    }
+	    if (size < to - from) {
+		int[] matching = new int[size];
+		int i = 0;
+		for (int position = from; position < to; position++) {
+		    if (matches(values[position])) {
+			matching[i++] = position;
+		    }
+		}
+		positions = matching;
+	    }
+	    indexed = true;
+	}
+    }
+
+    private boolean matches(double value) {
+	return (Double.isNaN(valueMin) || value > valueMin)
+		&& (Double.isNaN(valueMax) || value < valueMax);
+    }
+
+    private void sort() {
+	int size = keys.length;
+	boolean sorted = true;
+	for (int i = 1; i < size && sorted; i++) {
+	    sorted = keys[i - 1] <= keys[i];
+	}
+	if (sorted) {
+	    return;
+	}
+	// Sort the [key, index] pairs packed to longs, then move the values.
+	long[] order = new long[size];
+	for (int i = 0; i < size; i++) {
+	    order[i] = ((long) keys[i] << 32) | i;
+	}
+	Arrays.sort(order);
+	double[] sortedValues = new double[size];
+	for (int i = 0; i < size; i++) {
+	    keys[i] = (int) (order[i] >> 32);
+	    sortedValues[i] = values[(int) order[i]];
+	}
+	System.arraycopy(sortedValues, 0, values, 0, size);
+    }
+}
@@ -0,0 +1,53 @@
+package dataset.utils;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Tests of ResultSeries and its views, which are behind
+ * AnalyzeUtils.simplefilter().
+ *
+ * @author qinjin.wang
+ *
+ */
+public class ResultSeriesTest {
+
+    @Test
+    public void testOf() {
+	Map<Integer, Integer> dataSet = Maps.newHashMap();
+	dataSet.put(300, 3);
+	dataSet.put(-5, 1);
+	dataSet.put(Integer.MAX_VALUE, 4);
+	dataSet.put(7, 2);
+	ResultSeries series = ResultSeries.of(dataSet);
+	Assert.assertArrayEquals(new int[] { -5, 7, 300, Integer.MAX_VALUE },
+		series.keys());
+	Assert.assertArrayEquals(new double[] { 1, 2, 3, 4 }, series.values(),
+		0);
+	Assert.assertEquals(3, series.get(300, 0), 0);
+	Assert.assertEquals(-1, series.get(8, -1), 0);
+    }
+
+    @Test
+    public void testViews() {
+	ResultSeries series = new ResultSeries(new int[] { 0, 1, 2, 3, 5, 8,
+		2000, 3000 }, new double[] { 1, 5, 1, 7, 2, 1, 9, 4 });
+	ResultSeries below = series.keysBelow(2000);
+	Assert.assertEquals(6, below.size());
+	Assert.assertEquals(8, below.getKey(5));
+	Assert.assertEquals(-1, below.get(2000, -1), 0);
+
+	ResultSeries above = below.keysAbove(0).valuesAbove(1);
+	Assert.assertArrayEquals(new int[] { 1, 3, 5 }, above.keys());
+	Assert.assertArrayEquals(new double[] { 5, 7, 2 }, above.values(), 0);
+	Assert.assertEquals(1, above.indexOf(3));
+	Assert.assertEquals(-3, above.indexOf(4));
+	Assert.assertEquals(0, above.valuesBelow(2).size());
+	Assert.assertEquals(0, series.keysAbove(Integer.MAX_VALUE).size());
+	Assert.assertEquals(8, series.keysAbove(-1).keysBelow(4000).size());
+    }
+}